@@ -0,0 +1,54 @@
+package org.snrg_nyc.model;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Thrown when rows of conditional distributions added together are
+ * rejected.  Every row is checked before any are added, so this holds the
+ * error for each bad row, rather than just the first one.
+ * @see PropertiesEditor#scratch_addConditionalDistributions
+ * @author Devin Hastings
+ */
+public class DistributionImportException extends EditorException {
+	private static final long serialVersionUID = 1L;
+
+	/** The most row errors listed in the message */
+	private static final int maxListed = 20;
+
+	private final SortedMap<Integer, String> rowErrors;
+
+	DistributionImportException(Map<Integer, String> rowErrors){
+		super(message(rowErrors));
+		this.rowErrors = Collections.unmodifiableSortedMap(
+				new TreeMap<>(rowErrors));
+	}
+
+	private static String
+	message(Map<Integer, String> rowErrors){
+		StringBuilder msg = new StringBuilder();
+		msg.append(rowErrors.size())
+			.append(rowErrors.size() == 1 ? " row was" : " rows were")
+			.append(" rejected, so no distributions were added:");
+		int listed = 0;
+		for(Map.Entry<Integer, String> e : new TreeMap<>(rowErrors).entrySet()){
+			if(listed++ == maxListed){
+				msg.append("\n...");
+				break;
+			}
+			msg.append("\nRow ").append(e.getKey())
+				.append(": ").append(e.getValue());
+		}
+		return msg.toString();
+	}
+
+	/**
+	 * @return The error for each rejected row, by row index
+	 */
+	public SortedMap<Integer, String>
+	getRowErrors(){
+		return rowErrors;
+	}
+}
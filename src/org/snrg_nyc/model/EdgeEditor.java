@@ -14,6 +14,7 @@ class EdgeEditor extends PropertiesEditor_Impl {
 	EdgeEditor(NodeEditor parent, NodeLayer layer){
 		super();
 		this.parent = parent;
+		names = parent.names;
 		settings = new EdgeSettings(layer.getName());
 		settings.setPropertyDefinitionList(properties);
 	}
@@ -23,11 +24,19 @@ class EdgeEditor extends PropertiesEditor_Impl {
 	{
 		super();
 		this.parent = parent;
+		names = parent.names;
 		this.settings = settings;
 		properties = settings.getPropertyDefinitionList();
+		names.addEditor(this);
 		loadDistributions(objects);
 	}
 	
+	@Override
+	public boolean 
+	isLazyLoading(){
+		return parent.isLazyLoading();
+	}
+	
 	@Override
 	public boolean 
 	test_nodePropNameIsUnique(String name) {
@@ -1,5 +1,11 @@
 package org.snrg_nyc.model;
 
+import java.util.function.Function;
+
+import org.snrg_nyc.model.internal.NodeProperty;
+import org.snrg_nyc.persistence.ExperimentSerializer;
+
+import com.google.gson.GsonBuilder;
 
 /**
  * An interface extending {@link PropertiesEditor} with some methods
@@ -24,4 +30,25 @@ public interface EditorTester extends PropertiesEditor {
 	 */
 	public void 
 	utest_loadWithMessages(String name) throws EditorException;
+	
+	/**
+	 * Replace the serializer used by {@link PropertiesEditor#save(String)}
+	 * and {@link PropertiesEditor#load(String)}, such as to compare 
+	 * different storage settings.
+	 * @param factory A function creating the new serializer from a 
+	 * {@link GsonBuilder} that already has the editor's type adapters
+	 */
+	public void 
+	utest_setSerializer(Function<GsonBuilder, ExperimentSerializer> factory);
+	
+	/**
+	 * Get a committed node property itself, rather than its settings, such
+	 * as to change one of its distributions in place
+	 * @param pid The ID of the node property
+	 * @return The node property
+	 * @throws EditorException Thrown if the ID does not point to a node
+	 * property
+	 */
+	public NodeProperty 
+	utest_getNodeProperty(int pid) throws EditorException;
 }
@@ -0,0 +1,517 @@
+package org.snrg_nyc.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.snrg_nyc.model.internal.CompiledDistributions;
+import org.snrg_nyc.model.internal.NodeProperty;
+import org.snrg_nyc.model.internal.NodeProperty.DistType;
+import org.snrg_nyc.model.internal.ValuesListProperty;
+
+/**
+ * Works out the marginal distribution of a ranged property exactly, by
+ * summing its distributions over every assignment of the properties it
+ * depends on, directly or through other properties.
+ * <p>
+ * Only a property's ancestors affect its marginal, so the rest are never
+ * looked at.  The ancestors are added to a joint distribution one at a
+ * time, each after its dependencies, and a property is summed out of the
+ * joint as soon as everything in the ancestry that depends on it has been
+ * added, since the properties left are independent of it given the
+ * joint.  A chain of dependencies therefore never holds more than two
+ * properties at once, however deep it is.
+ * <p>
+ * The marginal of every property added on the way is kept, along with the
+ * compiled distributions of its ancestors that it was worked out from
+ * (see {@link ValuesListProperty#getCompiledDistributions()}), and is
+ * reused until one of them changes.  So is the joint left after each
+ * property is added, by the set of properties added so far, which is
+ * always closed under ancestry.  Working out another marginal starts from
+ * the largest such set of its own ancestors whose joint still holds every
+ * property it needs, so properties that share ancestors only sum them out
+ * once.
+ * @see PropertiesEditor#nodeProp_getMarginalDistribution(int)
+ * @author Devin Hastings
+ */
+class MarginalInference {
+	/** The most cells a joint distribution can have */
+	static final int maxCells = 1 << 22;
+	/** The most cells a joint can have to be kept */
+	private static final int maxKeptCells = 1 << 16;
+
+	private final PropertiesEditor_Impl editor;
+	private final Map<NodeProperty, Memo> memos = new IdentityHashMap<>();
+	/**
+	 * The joints kept so far, by the sum of the identity hash codes of the
+	 * properties that were added to them
+	 */
+	private final Map<Integer, List<Kept>> kept = new HashMap<>();
+	/** The number of cells in the kept joints */
+	private long keptCells = 0;
+
+	/**
+	 * A marginal, and what it was worked out from
+	 */
+	private static class Memo {
+		final double[] marginal;
+		final ValuesListProperty<?>[] ancestors;
+		final CompiledDistributions[] compiled;
+
+		Memo(double[] marginal, ValuesListProperty<?>[] ancestors,
+				CompiledDistributions[] compiled)
+		{
+			this.marginal = marginal;
+			this.ancestors = ancestors;
+			this.compiled = compiled;
+		}
+
+		boolean
+		isCurrent() throws EditorException {
+			return current(ancestors, compiled);
+		}
+	}
+
+	/**
+	 * The joint left after adding a set of properties, where each property
+	 * in the joint is known by the property itself rather than a local
+	 * index
+	 */
+	private static class Kept {
+		/** The properties that were added, each after its dependencies */
+		final ValuesListProperty<?>[] added;
+		final CompiledDistributions[] compiled;
+		/** The property of each of the joint's local indices */
+		final ValuesListProperty<?>[] vars;
+		final Joint joint;
+
+		Kept(ValuesListProperty<?>[] added, CompiledDistributions[] compiled,
+				ValuesListProperty<?>[] vars, Joint joint)
+		{
+			this.added = added;
+			this.compiled = compiled;
+			this.vars = vars;
+			this.joint = joint;
+		}
+
+		/**
+		 * @return If the properties added are the first <code>count</code>
+		 * of an order, in any order
+		 */
+		boolean
+		addedFirst(Map<NodeProperty, Integer> local, int count){
+			if(added.length != count){
+				return false;
+			}
+			for(ValuesListProperty<?> vlp : added){
+				Integer v = local.get(vlp);
+				if(v == null || v >= count){
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * @return If none of the properties has compiled its distributions
+	 * again since they were recorded
+	 */
+	private static boolean
+	current(ValuesListProperty<?>[] props, CompiledDistributions[] compiled)
+			throws EditorException
+	{
+		for(int i = 0; i < props.length; i++){
+			if(props[i].getCompiledDistributions() != compiled[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A distribution over several properties, with the range ID of the
+	 * first property as the lowest digit of the index
+	 */
+	private static class Joint {
+		/** The local index of each property */
+		final int[] vars;
+		final int[] radices;
+		final double[] p;
+
+		Joint(int[] vars, int[] radices, double[] p){
+			this.vars = vars;
+			this.radices = radices;
+			this.p = p;
+		}
+
+		int
+		position(int var){
+			for(int i = 0; i < vars.length; i++){
+				if(vars[i] == var){
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * @return The marginal of one of the properties
+		 */
+		double[]
+		marginal(int var){
+			int i = position(var);
+			int stride = 1;
+			for(int k = 0; k < i; k++){
+				stride *= radices[k];
+			}
+			double[] out = new double[radices[i]];
+			for(int c = 0; c < p.length; c++){
+				out[(c / stride) % radices[i]] += p[c];
+			}
+			return out;
+		}
+
+		/**
+		 * @return The joint of the other properties
+		 */
+		Joint
+		sumOut(int var){
+			int i = position(var);
+			int stride = 1;
+			for(int k = 0; k < i; k++){
+				stride *= radices[k];
+			}
+			int r = radices[i];
+			int[] vs = new int[vars.length - 1];
+			int[] rs = new int[vars.length - 1];
+			for(int k = 0, j = 0; k < vars.length; k++){
+				if(k != i){
+					vs[j] = vars[k];
+					rs[j++] = radices[k];
+				}
+			}
+			double[] out = new double[p.length / r];
+			for(int c = 0; c < p.length; c++){
+				int low = c % stride;
+				int high = c / (stride * r);
+				out[high * stride + low] += p[c];
+			}
+			return new Joint(vs, rs, out);
+		}
+
+		/**
+		 * @return The same distribution, with each property's local index
+		 * changed
+		 */
+		Joint
+		relabel(int[] newVars){
+			return new Joint(newVars, radices, p);
+		}
+	}
+
+	MarginalInference(PropertiesEditor_Impl editor){
+		this.editor = editor;
+	}
+
+	/**
+	 * @param target A committed ranged property, with its distributions
+	 * attached
+	 * @return The probability of each range ID of the property
+	 * @throws EditorException Thrown if the property or an ancestor has no
+	 * distribution, or one with no weight that applies to an assignment
+	 * that can happen, if it depends on a property that is not ranged, or
+	 * if the joint distribution would be too large
+	 */
+	double[]
+	marginal(ValuesListProperty<?> target) throws EditorException {
+		Memo memo = memos.get(target);
+		if(memo != null && memo.isCurrent()){
+			return memo.marginal;
+		}
+		//Put the ancestors in an order where each one comes after its
+		//dependencies; the graph has already been checked for cycles
+		List<ValuesListProperty<?>> order = new ArrayList<>();
+		Map<NodeProperty, Integer> local = new IdentityHashMap<>();
+		addAncestors(target, order, local);
+
+		int n = order.size();
+		int[][] parents = new int[n][];
+		//The last property in the order that depends on each one
+		int[] lastChild = new int[n];
+		BitSet[] ancestry = new BitSet[n];
+		CompiledDistributions[] compiled = new CompiledDistributions[n];
+		//The key of the properties up to each one in the order
+		int[] keys = new int[n];
+		for(int v = 0; v < n; v++){
+			ValuesListProperty<?> vlp = order.get(v);
+			compiled[v] = vlp.getCompiledDistributions();
+			int parentCount = usesDependencies(vlp) 
+					? vlp.getDependencyCount() 
+					: 0;
+			parents[v] = new int[parentCount];
+			ancestry[v] = new BitSet(n);
+			ancestry[v].set(v);
+			lastChild[v] = v;
+			for(int i = 0; i < parents[v].length; i++){
+				NodeProperty dep = editor.properties.get(vlp.getDependency(i));
+				parents[v][i] = local.get(dep);
+				lastChild[parents[v][i]] = v;
+				ancestry[v].or(ancestry[parents[v][i]]);
+			}
+			keys[v] = (v > 0 ? keys[v - 1] : 0) + System.identityHashCode(vlp);
+		}
+
+		//Start from the most ancestors whose joint is kept
+		Joint joint = new Joint(new int[0], new int[0], new double[]{1});
+		int first = 0;
+		for(int v = n - 2; v >= 0 && first == 0; v--){
+			Joint reused = reuse(order, local, compiled, keys[v], v, lastChild);
+			if(reused != null){
+				joint = reused;
+				first = v + 1;
+			}
+		}
+		int[] children = new int[n];
+		for(int v = first; v < n; v++){
+			for(int parent : parents[v]){
+				children[parent]++;
+			}
+		}
+
+		for(int v = first; v < n; v++){
+			ValuesListProperty<?> vlp = order.get(v);
+			joint = extend(joint, v, vlp, parents[v], compiled[v]);
+			double[] marginal = joint.marginal(v);
+			Memo old = memos.get(vlp);
+			if(v == n - 1 || old == null || !old.isCurrent()){
+				BitSet ancestors = ancestry[v];
+				int count = ancestors.cardinality();
+				ValuesListProperty<?>[] as = new ValuesListProperty<?>[count];
+				CompiledDistributions[] cs = new CompiledDistributions[count];
+				int k = 0;
+				for(int a = ancestors.nextSetBit(0); a >= 0; 
+						a = ancestors.nextSetBit(a + 1))
+				{
+					as[k] = order.get(a);
+					cs[k] = compiled[a];
+					k++;
+				}
+				memos.put(vlp, new Memo(marginal, as, cs));
+			}
+			for(int parent : parents[v]){
+				if(--children[parent] == 0){
+					joint = joint.sumOut(parent);
+				}
+			}
+			keep(order, local, compiled, keys[v], v, joint);
+		}
+		return memos.get(target).marginal;
+	}
+
+	/**
+	 * Find a kept joint of the first properties in an order, and sum out
+	 * the properties that nothing later in the order depends on
+	 * @param key The key of the properties
+	 * @param last The index of the last of them
+	 * @param lastChild The index of the last property that depends on each
+	 * one
+	 * @return The joint, with the local indices of the order, or null if
+	 * there is no current joint that holds every property later ones need
+	 */
+	private Joint
+	reuse(List<ValuesListProperty<?>> order, Map<NodeProperty, Integer> local,
+			CompiledDistributions[] compiled, int key, int last, 
+			int[] lastChild) throws EditorException
+	{
+		List<Kept> candidates = kept.get(key);
+		if(candidates == null){
+			return null;
+		}
+		for(Iterator<Kept> it = candidates.iterator(); it.hasNext();){
+			Kept k = it.next();
+			if(!k.addedFirst(local, last + 1)){
+				continue;
+			}
+			if(!current(k.added, k.compiled)){
+				it.remove();
+				keptCells -= k.joint.p.length;
+				continue;
+			}
+			int[] vars = new int[k.vars.length];
+			for(int i = 0; i < vars.length; i++){
+				vars[i] = local.get(k.vars[i]);
+			}
+			for(int v = 0; v <= last; v++){
+				if(lastChild[v] > last && !contains(vars, v)){
+					return null;
+				}
+			}
+			Joint joint = k.joint.relabel(vars);
+			for(int var : vars){
+				if(lastChild[var] <= last){
+					joint = joint.sumOut(var);
+				}
+			}
+			return joint;
+		}
+		return null;
+	}
+
+	/**
+	 * Keep the joint of the first properties in an order, unless it is too
+	 * large
+	 * @param key The key of the properties
+	 * @param last The index of the last of them
+	 */
+	private void
+	keep(List<ValuesListProperty<?>> order, Map<NodeProperty, Integer> local,
+			CompiledDistributions[] compiled, int key, int last, Joint joint)
+	{
+		if(joint.p.length > maxKeptCells){
+			return;
+		}
+		if(keptCells + joint.p.length > maxCells){
+			kept.clear();
+			keptCells = 0;
+		}
+		List<Kept> candidates = 
+				kept.computeIfAbsent(key, k -> new ArrayList<>());
+		for(Iterator<Kept> it = candidates.iterator(); it.hasNext();){
+			Kept k = it.next();
+			if(k.addedFirst(local, last + 1)){
+				it.remove();
+				keptCells -= k.joint.p.length;
+			}
+		}
+		ValuesListProperty<?>[] vars = 
+				new ValuesListProperty<?>[joint.vars.length];
+		for(int i = 0; i < vars.length; i++){
+			vars[i] = order.get(joint.vars[i]);
+		}
+		ValuesListProperty<?>[] added = order.subList(0, last + 1)
+				.toArray(new ValuesListProperty<?>[0]);
+		candidates.add(new Kept(added, Arrays.copyOf(compiled, last + 1), 
+				vars, joint));
+		keptCells += joint.p.length;
+	}
+
+	private static boolean
+	contains(int[] values, int value){
+		for(int v : values){
+			if(v == value){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Add a property and its ancestors to the order, after the ancestors
+	 */
+	private void
+	addAncestors(ValuesListProperty<?> vlp, List<ValuesListProperty<?>> order,
+			Map<NodeProperty, Integer> local) throws EditorException
+	{
+		if(local.containsKey(vlp)){
+			return;
+		}
+		if(usesDependencies(vlp)){
+			for(int i = 0; i < vlp.getDependencyCount(); i++){
+				int pid = vlp.getDependency(i);
+				NodeProperty dep = pid >= 0 && pid < editor.properties.size()
+						? editor.properties.get(pid) : null;
+				if(dep == null){
+					throw new EditorException("Property '"+vlp.getName()
+							+"' depends on a property that does not exist: "
+							+pid);
+				}
+				dep = editor.attached(dep);
+				if(!(dep instanceof ValuesListProperty)){
+					throw new EditorException("Property '"+vlp.getName()
+							+"' depends on a property that is not ranged: "
+							+dep.getName());
+				}
+				addAncestors((ValuesListProperty<?>) dep, order, local);
+			}
+		}
+		local.put(vlp, order.size());
+		order.add(vlp);
+	}
+
+	/**
+	 * @return If the property's distribution depends on its dependencies,
+	 * which a uniform distribution does not
+	 */
+	private static boolean
+	usesDependencies(ValuesListProperty<?> vlp){
+		return vlp.getDistributionType() == DistType.UNIVARIAT;
+	}
+
+	/**
+	 * Multiply a joint by the distribution of a property given its
+	 * dependencies, which must all be in the joint
+	 * @return The joint with the property added as its highest digit
+	 */
+	private static Joint
+	extend(Joint joint, int var, ValuesListProperty<?> vlp, int[] parents,
+			CompiledDistributions compiled) throws EditorException
+	{
+		int r = vlp.getRangeIDBound();
+		if((long) joint.p.length * r > maxCells){
+			throw new EditorException("Too many combinations of ranges to "
+					+"work out the marginal of property '"+vlp.getName()
+					+"' exactly");
+		}
+		int n = joint.vars.length;
+		int[] vars = new int[n + 1];
+		int[] radices = new int[n + 1];
+		System.arraycopy(joint.vars, 0, vars, 0, n);
+		System.arraycopy(joint.radices, 0, radices, 0, n);
+		vars[n] = var;
+		radices[n] = r;
+		double[] out = new double[joint.p.length * r];
+
+		int[] at = new int[parents.length];
+		for(int i = 0; i < parents.length; i++){
+			at[i] = joint.position(parents[i]);
+		}
+		int[] rids = new int[parents.length];
+		int[] depRadices = new int[parents.length];
+		for(int i = 0; i < parents.length; i++){
+			depRadices[i] = joint.radices[at[i]];
+		}
+		int[] digits = new int[n];
+		for(int c = 0; c < joint.p.length; c++){
+			if(joint.p[c] != 0){
+				int index = 0;
+				if(parents.length > 0){
+					for(int i = 0; i < parents.length; i++){
+						rids[i] = digits[at[i]];
+					}
+					int cid = vlp.getMatchingConditional(rids, depRadices);
+					index = compiled.indexOf(cid);
+				}
+				if(compiled.getTotal(index) == 0){
+					throw new EditorException("Property '"+vlp.getName()
+							+"' has a distribution with no weight for ranges "
+							+"of its dependencies that can happen");
+				}
+				for(int rid = 0; rid < r; rid++){
+					out[rid * joint.p.length + c] = joint.p[c]
+							* compiled.getProbability(index, rid);
+				}
+			}
+			//Count up, with the first property as the lowest digit
+			for(int i = 0; i < n && ++digits[i] == joint.radices[i]; i++){
+				digits[i] = 0;
+			}
+		}
+		return new Joint(vars, radices, out);
+	}
+}
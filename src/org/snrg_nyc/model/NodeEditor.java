@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
 
 import org.snrg_nyc.model.internal.AttachmentProperty;
 import org.snrg_nyc.model.internal.BooleanProperty;
@@ -11,11 +13,15 @@ import org.snrg_nyc.model.internal.EnumeratorProperty;
 import org.snrg_nyc.model.internal.ExperimentInfo;
 import org.snrg_nyc.model.internal.FractionProperty;
 import org.snrg_nyc.model.internal.IntegerRangeProperty;
+import org.snrg_nyc.model.internal.NodeProperty;
+import org.snrg_nyc.persistence.ExperimentSerializer;
 import org.snrg_nyc.persistence.JsonExperimentPrinter;
 import org.snrg_nyc.persistence.JsonFileSerializer;
 import org.snrg_nyc.persistence.PersistenceException;
 import org.snrg_nyc.persistence.Transferable;
 
+import com.google.gson.GsonBuilder;
+
 
 /**
  * An editor class for creating node properties.
@@ -142,6 +148,7 @@ public class NodeEditor extends PropertiesEditor_Impl implements EditorTester {
 		expInfo.defaults();
 		pathogens.clear();
 		edges.clear();
+		names.clear();
 	}
 	
 	@Override
@@ -186,6 +193,7 @@ public class NodeEditor extends PropertiesEditor_Impl implements EditorTester {
 		
 		layers = nodeSettings.getLayerAttributesList();
 		properties = nodeSettings.getPropertyDefinitionList();
+		names.addEditor(this);
 		
 
 		if(debug){
@@ -288,17 +296,8 @@ public class NodeEditor extends PropertiesEditor_Impl implements EditorTester {
 	@Override
 	public boolean 
 	test_nodePropNameIsUnique(String name) {
-		for(PathogenEditor path : pathogens){
-			if(path != null && !path.uniquePropName(name)){
-				return false;
-			}
-		}
-		for(EdgeEditor edge : edges){
-			if(edge != null && !edge.uniquePropName(name)){
-				return false;
-			}
-		}
-		return uniquePropName(name);
+		//The pathogen and edge editors share the name index
+		return !names.contains(name);
 	}
 
 	@Override
@@ -318,6 +317,16 @@ public class NodeEditor extends PropertiesEditor_Impl implements EditorTester {
 		}
 		return ids;
 	}
+	
+	@Override
+	public void 
+	pathogen_forEachPathogenID(IntConsumer action) throws EditorException {
+		for(int i = 0; i < pathogens.size(); i++){
+			if(pathogens.get(i) != null){
+				action.accept(i);
+			}
+		}
+	}
 
 	@Override
 	public String 
@@ -366,10 +375,14 @@ public class NodeEditor extends PropertiesEditor_Impl implements EditorTester {
 			edges.add(new EdgeEditor(this, layers.get(lid)));
 		}
 		else if(lid < edges.size()){
+			if(edges.get(lid) != null){
+				names.removeEditor(edges.get(lid));
+			}
 			edges.set(lid, new EdgeEditor(this, layers.get(lid)));
 		}
 		else {
 			layers.set(lid, null);
+			layerSlots().free(lid);
 			throw new EditorException("A layer was improperly added to the node settings, "
 					+ "and now a new layer cannot be properly added.");
 		}
@@ -402,6 +415,19 @@ public class NodeEditor extends PropertiesEditor_Impl implements EditorTester {
 	public void utest_loadWithMessages(String name) throws EditorException {
 		load(name, true);
 	}
+	
+	@Override
+	public void 
+	utest_setSerializer(Function<GsonBuilder, ExperimentSerializer> factory){
+		this.serializer = factory.apply(jsonConfig());
+	}
+	
+	@Override
+	public NodeProperty 
+	utest_getNodeProperty(int pid) throws EditorException {
+		assert_validPID(pid);
+		return attached(properties.get(pid));
+	}
 
 	@Override
 	public boolean allowsLayers() {
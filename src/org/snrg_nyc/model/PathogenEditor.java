@@ -46,6 +46,7 @@ class PathogenEditor extends PropertiesEditor_Impl{
 	public PathogenEditor(NodeEditor parent, String pathogen) throws EditorException{
 		super();
 		this.parent = parent;
+		names = parent.names;
 		
 		pathSettings = new PathogenSettings(pathogen);
 		
@@ -64,11 +65,19 @@ class PathogenEditor extends PropertiesEditor_Impl{
 	{
 		super();
 		this.parent = parent;
+		names = parent.names;
 		pathSettings = settings;
 		layers = settings.getLayerAttributesList();
 		properties = settings.getPropertyDefinitionList();
+		names.addEditor(this);
 		loadDistributions(objects);
 	}
+	@Override
+	public boolean 
+	isLazyLoading(){
+		return parent.isLazyLoading();
+	}
+	
 	public String getPathogen(){
 		return pathSettings.getName();
 	}
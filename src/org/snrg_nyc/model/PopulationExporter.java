@@ -0,0 +1,446 @@
+package org.snrg_nyc.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.snrg_nyc.model.PopulationStore.ColumnType;
+
+/**
+ * Writes a population to a file while it is being sampled, a block of
+ * nodes at a time, so the population never has to fit in memory.
+ * <p>
+ * Worker threads each draw a block with
+ * {@link PopulationSampler#sampleBlock(long, long, int, int[], int)} and
+ * encode it into a buffer, and the calling thread writes the buffers to
+ * the channel in block order.  Only a few buffers for each thread exist at
+ * once, and they are reused, so a file is written at the speed of the
+ * slower of the disk and the samplers.  The same seed gives the same file
+ * for any number of threads.
+ * <p>
+ * The columns are the sampler's columns followed by its fraction and
+ * boolean properties, as in a {@link PopulationStore}, and are named after
+ * their properties.  Two formats are written:
+ * <ul>
+ * <li>{@link Format#CSV}: a header row of property names, then a row for
+ * each node with the label of each range, the fraction as a decimal and
+ * booleans as <code>true</code> or <code>false</code>.  Fields are quoted
+ * when they hold a comma, a quote or a line break.</li>
+ * <li>{@link Format#BINARY}: a header, then a fixed-width row for each
+ * node.  The header is the ASCII bytes <code>SNRGPOP</code> and a version
+ * byte of 1, the column count, and for each column its name, a type
+ * byte (0 for a byte range ID, 1 for a short, 2 for an int, 3 for a float
+ * and 4 for a boolean byte) and the number of range labels followed by
+ * the labels, indexed by range ID.  The node count and the width of a row
+ * in bytes follow.  Numbers are little-endian, counts are ints, except
+ * the node count, which is a long, and strings are an int byte length
+ * and UTF-8 bytes.</li>
+ * </ul>
+ * @author Devin Hastings
+ */
+public class PopulationExporter {
+	/**
+	 * The file formats a population can be written in
+	 */
+	public enum Format {
+		CSV, BINARY
+	}
+
+	private static final byte[] magic = 
+			"SNRGPOP".getBytes(StandardCharsets.US_ASCII);
+	private static final byte version = 1;
+
+	private final PopulationSampler sampler;
+	private int threadCount = 1;
+
+	/**
+	 * @param sampler The sampler to draw the population from
+	 * @see PropertiesEditor#population_newSampler()
+	 */
+	public PopulationExporter(PopulationSampler sampler){
+		this.sampler = sampler;
+	}
+
+	/**
+	 * Set how many threads sample and encode blocks while the calling
+	 * thread writes them
+	 * @param threads The number of threads, 1 to do everything on the
+	 * calling thread
+	 */
+	public void
+	setThreadCount(int threads){
+		if(threads < 1){
+			throw new IllegalArgumentException(
+					"The thread count must be positive: "+threads);
+		}
+		threadCount = threads;
+	}
+
+	public int
+	getThreadCount(){
+		return threadCount;
+	}
+
+	/**
+	 * Write a population to a file, replacing it
+	 * @param seed The seed of the population, as in
+	 * {@link PopulationSampler#sample(long, int, int)}
+	 * @param nodes The number of nodes
+	 * @param format The format to write
+	 * @param file The file, whose directory is made if it does not exist
+	 * @return The number of bytes written
+	 * @throws IOException Thrown if the file cannot be written
+	 * @throws InterruptedException Thrown if the thread is interrupted
+	 * while waiting for a block
+	 */
+	public long
+	export(long seed, long nodes, Format format, Path file)
+			throws IOException, InterruptedException
+	{
+		if(file.getParent() != null){
+			Files.createDirectories(file.getParent());
+		}
+		try(FileChannel channel = FileChannel.open(file, 
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, 
+				StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			return export(seed, nodes, format, channel);
+		}
+	}
+
+	/**
+	 * Write a population to a channel, which is left open
+	 * @see #export(long, long, Format, Path)
+	 */
+	public long
+	export(long seed, long nodes, Format format, WritableByteChannel channel)
+			throws IOException, InterruptedException
+	{
+		if(nodes < 0){
+			throw new IllegalArgumentException("Negative node count: "+nodes);
+		}
+		Encoder encoder = format == Format.CSV 
+				? new CsvEncoder() 
+				: new BinaryEncoder();
+		long written = write(channel, encoder.header(nodes));
+		int blockSize = PopulationSampler.blockSize;
+		long blocks = (nodes + blockSize - 1) / blockSize;
+		int window = threadCount == 1 ? 1 : threadCount * 2;
+		BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(window);
+		for(int i = 0; i < window; i++){
+			free.add(ByteBuffer.allocate(encoder.blockBytes())
+					.order(ByteOrder.LITTLE_ENDIAN));
+		}
+		int width = sampler.columnCount();
+		ThreadLocal<int[]> scratch = ThreadLocal.withInitial(
+				() -> new int[blockSize * width]);
+
+		if(threadCount == 1){
+			for(long b = 0; b < blocks; b++){
+				ByteBuffer buf = encodeBlock(seed, b, nodes, encoder, 
+						scratch.get(), free.take());
+				written += write(channel, buf);
+				free.add(buf);
+			}
+			return written;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+		try {
+			ArrayDeque<Future<ByteBuffer>> pending = new ArrayDeque<>(window);
+			for(long b = 0; b < blocks || !pending.isEmpty(); b++){
+				if(pending.size() == window || b >= blocks){
+					ByteBuffer buf = pending.poll().get();
+					written += write(channel, buf);
+					free.add(buf);
+				}
+				if(b < blocks){
+					long block = b;
+					pending.add(pool.submit(() -> encodeBlock(seed, block, 
+							nodes, encoder, scratch.get(), free.take())));
+				}
+			}
+		}
+		catch(ExecutionException e){
+			if(e.getCause() instanceof RuntimeException){
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		return written;
+	}
+
+	/**
+	 * Draw a block and encode it into an empty buffer
+	 * @return The buffer, ready to be written
+	 */
+	private ByteBuffer
+	encodeBlock(long seed, long block, long nodes, Encoder encoder, int[] rows,
+			ByteBuffer buf)
+	{
+		long first = block * PopulationSampler.blockSize;
+		int count = (int) Math.min(PopulationSampler.blockSize, nodes - first);
+		sampler.sampleBlock(seed, block, count, rows, 0);
+		buf.clear();
+		encoder.encode(rows, count, buf);
+		buf.flip();
+		return buf;
+	}
+
+	private static long
+	write(WritableByteChannel channel, ByteBuffer buf) throws IOException {
+		long n = buf.remaining();
+		while(buf.hasRemaining()){
+			channel.write(buf);
+		}
+		return n;
+	}
+
+	/**
+	 * Turns the rows of a block into bytes
+	 */
+	private interface Encoder {
+		ByteBuffer header(long nodes);
+		/** @return The most bytes a full block can take */
+		int blockBytes();
+		void encode(int[] rows, int count, ByteBuffer out);
+	}
+
+	/**
+	 * Encodes rows with every field already turned into bytes, so that a
+	 * row is only copied together from arrays
+	 */
+	private class CsvEncoder implements Encoder {
+		/**
+		 * The bytes of each range label of each column, with the comma or
+		 * line break after it
+		 */
+		final byte[][][] fields;
+		/** The fraction and boolean columns, the same for every node */
+		final byte[] constants;
+		final int maxRow;
+
+		CsvEncoder(){
+			int width = sampler.columnCount();
+			int values = sampler.valueColumnCount();
+			fields = new byte[width][][];
+			int row = 0;
+			for(int c = 0; c < width; c++){
+				boolean last = c == width - 1 && values == 0;
+				String[] labels = sampler.rangeLabels(c);
+				fields[c] = new byte[labels.length][];
+				int longest = 0;
+				for(int rid = 0; rid < labels.length; rid++){
+					String label = labels[rid] != null 
+							? labels[rid] 
+							: Integer.toString(rid);
+					fields[c][rid] = field(label, last);
+					longest = Math.max(longest, fields[c][rid].length);
+				}
+				row += longest;
+			}
+			StringBuilder sb = new StringBuilder();
+			for(int v = 0; v < values; v++){
+				Object init = sampler.getValueColumnInit(v);
+				if(init == null){
+					boolean fraction = 
+							sampler.getValueColumnType(v) == ColumnType.FLOAT;
+					init = fraction ? 0f : false;
+				}
+				sb.append(escape(init.toString()))
+						.append(v == values - 1 ? '\n' : ',');
+			}
+			constants = sb.toString().getBytes(StandardCharsets.UTF_8);
+			maxRow = row + constants.length;
+		}
+
+		private byte[]
+		field(String value, boolean last){
+			String field = escape(value) + (last ? '\n' : ',');
+			return field.getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public ByteBuffer
+		header(long nodes){
+			StringBuilder sb = new StringBuilder();
+			int width = sampler.columnCount();
+			int total = width + sampler.valueColumnCount();
+			for(int c = 0; c < total; c++){
+				String name = c < width ? sampler.getColumnName(c)
+				                        : sampler.getValueColumnName(c - width);
+				sb.append(escape(name)).append(c == total - 1 ? '\n' : ',');
+			}
+			byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+			return ByteBuffer.wrap(bytes);
+		}
+
+		@Override
+		public int
+		blockBytes(){
+			return PopulationSampler.blockSize * maxRow;
+		}
+
+		@Override
+		public void
+		encode(int[] rows, int count, ByteBuffer out){
+			int width = fields.length;
+			byte[] array = out.array();
+			int pos = out.arrayOffset() + out.position();
+			for(int node = 0; node < count; node++){
+				int row = node * width;
+				for(int c = 0; c < width; c++){
+					byte[] f = fields[c][rows[row + c]];
+					System.arraycopy(f, 0, array, pos, f.length);
+					pos += f.length;
+				}
+				System.arraycopy(constants, 0, array, pos, constants.length);
+				pos += constants.length;
+			}
+			out.position(pos - out.arrayOffset());
+		}
+	}
+
+	/**
+	 * Quote a CSV field if it needs it
+	 */
+	private static String
+	escape(String field){
+		if(field.indexOf(',') < 0 && field.indexOf('"') < 0
+		   && field.indexOf('\n') < 0 && field.indexOf('\r') < 0)
+		{
+			return field;
+		}
+		return '"' + field.replace("\"", "\"\"") + '"';
+	}
+
+	private class BinaryEncoder implements Encoder {
+		/** The type code of each ranged column */
+		final byte[] types;
+		/** The fraction and boolean columns, the same for every node */
+		final byte[] constants;
+		final int rowBytes;
+
+		BinaryEncoder(){
+			int width = sampler.columnCount();
+			int values = sampler.valueColumnCount();
+			types = new byte[width];
+			int row = 0;
+			for(int c = 0; c < width; c++){
+				int ranges = sampler.rangeLabels(c).length;
+				ColumnType type = ColumnType.forRangeIDBound(ranges);
+				types[c] = (byte) type.ordinal();
+				row += (int) type.bytes(1);
+			}
+			ByteBuffer buf = ByteBuffer.allocate(values * 4)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			for(int v = 0; v < values; v++){
+				Object init = sampler.getValueColumnInit(v);
+				if(sampler.getValueColumnType(v) == ColumnType.FLOAT){
+					buf.putFloat(init != null ? (Float) init : 0f);
+				}
+				else {
+					buf.put((byte) (Boolean.TRUE.equals(init) ? 1 : 0));
+				}
+			}
+			constants = new byte[buf.position()];
+			buf.flip();
+			buf.get(constants);
+			rowBytes = row + constants.length;
+		}
+
+		@Override
+		public ByteBuffer
+		header(long nodes){
+			int width = sampler.columnCount();
+			int values = sampler.valueColumnCount();
+			byte[][] names = new byte[width + values][];
+			int size = magic.length + 1 + 4 + 8 + 4;
+			for(int c = 0; c < names.length; c++){
+				String name = c < width ? sampler.getColumnName(c)
+				                        : sampler.getValueColumnName(c - width);
+				names[c] = name.getBytes(StandardCharsets.UTF_8);
+				size += 4 + names[c].length + 1 + 4;
+			}
+			byte[][][] labels = new byte[width][][];
+			for(int c = 0; c < width; c++){
+				String[] ls = sampler.rangeLabels(c);
+				labels[c] = new byte[ls.length][];
+				for(int rid = 0; rid < ls.length; rid++){
+					String label = ls[rid] != null 
+							? ls[rid] 
+							: Integer.toString(rid);
+					labels[c][rid] = label.getBytes(StandardCharsets.UTF_8);
+					size += 4 + labels[c][rid].length;
+				}
+			}
+			ByteBuffer buf = ByteBuffer.allocate(size)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			buf.put(magic).put(version);
+			buf.putInt(names.length);
+			for(int c = 0; c < names.length; c++){
+				buf.putInt(names[c].length).put(names[c]);
+				if(c < width){
+					buf.put(types[c]);
+					buf.putInt(labels[c].length);
+					for(byte[] label : labels[c]){
+						buf.putInt(label.length).put(label);
+					}
+				}
+				else {
+					boolean fraction = sampler.getValueColumnType(c - width) 
+							== ColumnType.FLOAT;
+					buf.put((byte) (fraction ? 3 : 4));
+					buf.putInt(0);
+				}
+			}
+			buf.putLong(nodes);
+			buf.putInt(rowBytes);
+			buf.flip();
+			return buf;
+		}
+
+		@Override
+		public int
+		blockBytes(){
+			return PopulationSampler.blockSize * rowBytes;
+		}
+
+		@Override
+		public void
+		encode(int[] rows, int count, ByteBuffer out){
+			int width = types.length;
+			for(int node = 0; node < count; node++){
+				int row = node * width;
+				for(int c = 0; c < width; c++){
+					switch(types[c]){
+					case 0:
+						out.put((byte) rows[row + c]);
+						break;
+					case 1:
+						out.putShort((short) rows[row + c]);
+						break;
+					default:
+						out.putInt(rows[row + c]);
+					}
+				}
+				out.put(constants);
+			}
+		}
+	}
+}
@@ -0,0 +1,558 @@
+package org.snrg_nyc.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.snrg_nyc.model.PopulationStore.ColumnType;
+import org.snrg_nyc.model.internal.BooleanProperty;
+import org.snrg_nyc.model.internal.CompiledDistributions;
+import org.snrg_nyc.model.internal.FractionProperty;
+import org.snrg_nyc.model.internal.NodeProperty;
+import org.snrg_nyc.model.internal.NodeProperty.DistType;
+import org.snrg_nyc.model.internal.ValuesListProperty;
+import org.snrg_nyc.util.AliasTable;
+
+/**
+ * Draws synthetic nodes from the distributions of an editor's ranged
+ * properties, to show the population an experiment describes without
+ * running the simulator.
+ * <p>
+ * Each node has a range ID for every ranged property, including the ones in
+ * layers, in the editor's evaluation order (see
+ * {@link PropertiesEditor#nodeProp_getEvaluationOrder()}), so a property's
+ * dependencies are drawn before it.  A property's range is drawn from its
+ * first conditional distribution that matches the node's dependency
+ * ranges, or from its default distribution.  Properties with an initial
+ * value rather than a distribution are not sampled, though a
+ * {@link PopulationStore} also has a column for each fraction and boolean
+ * property, where every node has the property's initial value.
+ * <p>
+ * Nodes are drawn in blocks of {@link #blockSize}, and each block has its
+ * own random number stream made from the seed and the block's index, so
+ * the same seed gives the same nodes however many threads are used.  The
+ * sampler takes everything it needs from the editor when it is made,
+ * sharing each property's compiled distributions (see
+ * {@link ValuesListProperty#getCompiledDistributions()}), and does not see
+ * later changes.
+ * @see PropertiesEditor#population_newSampler()
+ * @author Devin Hastings
+ */
+public class PopulationSampler {
+	/** The number of nodes drawn from each random number stream */
+	public static final int blockSize = 4096;
+
+	/**
+	 * The most dependency assignments a property can have before its
+	 * distributions are found by checking each conditional in turn
+	 */
+	private static final int maxCells = 1 << 22;
+
+	private final List<PropertyID> ids = new ArrayList<>();
+	private final List<String> names = new ArrayList<>();
+	private final Column[] columns;
+	/** The range ID bound of each column's property */
+	private final int[] bounds;
+	/** The label of each range of each column, indexed by range ID */
+	private final String[][] labels;
+
+	/**
+	 * The fraction and boolean properties, with their initial values, or
+	 * null for properties without one
+	 */
+	private final List<PropertyID> valueIDs = new ArrayList<>();
+	private final List<String> valueNames = new ArrayList<>();
+	private final List<ColumnType> valueTypes = new ArrayList<>();
+	private final List<Object> valueInits = new ArrayList<>();
+
+	/**
+	 * How to draw one property: which distribution applies to each
+	 * assignment of its dependencies, and an alias table holding the
+	 * distributions, where 0 is the default.  By default a column only
+	 * uses its first distribution.
+	 */
+	private static class Column {
+		/** The column of each dependency */
+		int[] deps = {};
+		/** The multiplier of each dependency's range in {@link #cells} */
+		int[] strides = {};
+		/**
+		 * The distribution to use for each assignment, or null to use
+		 * {@link #conditions}
+		 */
+		int[] cells = {0};
+		/** The range each conditional needs for each dependency, or -1 */
+		int[][] conditions;
+		AliasTable table;
+
+		/**
+		 * @return The distribution to use for the node starting at 
+		 * <code>row</code>, whose dependencies are already drawn
+		 */
+		int
+		distribution(int[] out, int row){
+			if(cells != null){
+				int c = 0;
+				for(int i = 0; i < deps.length; i++){
+					c += out[row + deps[i]] * strides[i];
+				}
+				return cells[c];
+			}
+			for(int k = 0; k < conditions.length; k++){
+				int[] cond = conditions[k];
+				boolean match = true;
+				for(int i = 0; i < cond.length; i++){
+					if(cond[i] != -1 && cond[i] != out[row + deps[i]]){
+						match = false;
+						break;
+					}
+				}
+				if(match){
+					return k + 1;
+				}
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * Make a sampler for the committed properties of an editor
+	 * @param editor The editor
+	 * @throws EditorException Thrown if the dependencies are not valid, or
+	 * if a ranged property does not have a distribution to draw from
+	 */
+	PopulationSampler(PropertiesEditor_Impl editor) throws EditorException {
+		List<ValuesListProperty<?>> props = new ArrayList<>();
+		Map<Integer, Integer> globalColumns = new HashMap<>();
+		for(PropertyID id : editor.nodeProp_getEvaluationOrder()){
+			NodeProperty np = id.usesLayer()
+					? editor.layers.get(id.lid()).getProperty(id.pid())
+					: editor.properties.get(id.pid());
+			if(np instanceof FractionProperty || np instanceof BooleanProperty){
+				valueIDs.add(id);
+				valueNames.add(np.getName());
+				valueTypes.add(np instanceof FractionProperty
+						? ColumnType.FLOAT : ColumnType.BIT);
+				valueInits.add(np instanceof FractionProperty
+						? ((FractionProperty) np).getInitValue()
+						: ((BooleanProperty) np).getInitValue());
+			}
+			if(!(np instanceof ValuesListProperty)){
+				continue;
+			}
+			if(!id.usesLayer()){
+				globalColumns.put(id.pid(), props.size());
+			}
+			props.add((ValuesListProperty<?>) editor.attached(np));
+			ids.add(id);
+			names.add(np.getName());
+		}
+		columns = new Column[props.size()];
+		bounds = new int[props.size()];
+		labels = new String[props.size()][];
+		for(int c = 0; c < columns.length; c++){
+			ValuesListProperty<?> vlp = props.get(c);
+			columns[c] = column(vlp, editor, globalColumns);
+			bounds[c] = vlp.getRangeIDBound();
+			labels[c] = new String[bounds[c]];
+			for(int rid : vlp.getUnSortedRangeIDs()){
+				String label = vlp.getRangeLabel(rid);
+				labels[c][rid] = label != null ? label : Integer.toString(rid);
+			}
+		}
+	}
+
+	private static Column
+	column(ValuesListProperty<?> vlp, PropertiesEditor_Impl editor,
+			Map<Integer, Integer> globalColumns) throws EditorException
+	{
+		Column col = new Column();
+		CompiledDistributions compiled = vlp.getCompiledDistributions();
+		col.table = compiled.getTable();
+		if(vlp.getDistributionType() == DistType.UNIFORM){
+			return col;
+		}
+		List<Integer> order = vlp.getOrderedConditions();
+
+		int n = vlp.getDependencyCount();
+		col.deps = new int[n];
+		col.strides = new int[n];
+		int[] radices = new int[n];
+		long cells = 1;
+		for(int i = 0; i < n; i++){
+			Integer dep = globalColumns.get(vlp.getDependency(i));
+			if(dep == null){
+				throw new EditorException("Property '"+vlp.getName()
+						+"' depends on a property that is not ranged: "
+						+vlp.getDependency(i));
+			}
+			col.deps[i] = dep;
+			radices[i] = ((ValuesListProperty<?>) editor.properties
+					.get(vlp.getDependency(i))).getRangeIDBound();
+			col.strides[i] = (int) Math.min(cells, Integer.MAX_VALUE);
+			cells *= radices[i];
+		}
+		if(order.isEmpty()){
+			col.deps = new int[0];
+			col.strides = new int[0];
+		}
+		else if(cells <= maxCells){
+			col.cells = new int[(int) cells];
+			int[] rids = new int[n];
+			for(int c = 0; c < cells; c++){
+				int cid = vlp.getMatchingConditional(rids, radices);
+				col.cells[c] = compiled.indexOf(cid);
+				//Count up, with the first dependency as the lowest digit
+				for(int i = 0; i < n && ++rids[i] == radices[i]; i++){
+					rids[i] = 0;
+				}
+			}
+		}
+		else {
+			col.cells = null;
+			col.conditions = new int[order.size()][n];
+			for(int k = 0; k < order.size(); k++){
+				int[] cond = col.conditions[k];
+				Arrays.fill(cond, -1);
+				for(Map.Entry<Integer, Integer> e :
+					vlp.getConDistributionConditions(order.get(k)).entrySet())
+				{
+					cond[vlp.dependencyIndex(e.getKey())] = e.getValue();
+				}
+			}
+		}
+		return col;
+	}
+
+	/**
+	 * @return The number of sampled properties, which is the number of
+	 * values in each node
+	 */
+	public int
+	columnCount(){
+		return columns.length;
+	}
+
+	/**
+	 * @param column The index of a value in each node
+	 * @return The ID of the property the value is for, with a layer ID if
+	 * it is a layer property
+	 */
+	public PropertyID
+	getColumnID(int column){
+		return ids.get(column);
+	}
+
+	/**
+	 * @param column The index of a value in each node
+	 * @return The name of the property the value is for
+	 */
+	public String
+	getColumnName(int column){
+		return names.get(column);
+	}
+
+	/**
+	 * @param column The index of a value in each node
+	 * @param rid A range ID of the column's property
+	 * @return The label of the range, or the range ID if it has no label
+	 */
+	public String
+	getRangeLabel(int column, int rid){
+		return labels[column][rid];
+	}
+
+	/**
+	 * @return The labels of a column's ranges, indexed by range ID, which
+	 * must not be changed
+	 */
+	String[]
+	rangeLabels(int column){
+		return labels[column];
+	}
+
+	/**
+	 * @return The number of fraction and boolean properties, which come
+	 * after the sampled columns in a store or an export
+	 */
+	int
+	valueColumnCount(){
+		return valueIDs.size();
+	}
+
+	String
+	getValueColumnName(int v){
+		return valueNames.get(v);
+	}
+
+	ColumnType
+	getValueColumnType(int v){
+		return valueTypes.get(v);
+	}
+
+	/**
+	 * @return The initial value of a fraction or boolean property, or null
+	 * if it has none
+	 */
+	Object
+	getValueColumnInit(int v){
+		return valueInits.get(v);
+	}
+
+	/**
+	 * Draw the nodes of one block.  A block always starts with the same
+	 * nodes, so drawing fewer than {@link #blockSize} nodes gives the start
+	 * of the full block.
+	 * @param seed The seed of the population
+	 * @param block The index of the block
+	 * @param nodes The number of nodes to draw, up to {@link #blockSize}
+	 * @param out The array to write the nodes to, one after another, with
+	 * {@link #columnCount()} range IDs for each
+	 * @param offset The index in <code>out</code> to write the first node at
+	 * @throws IllegalStateException Thrown if a node needs a distribution
+	 * whose weights are all zero
+	 */
+	public void
+	sampleBlock(long seed, long block, int nodes, int[] out, int offset){
+		if(nodes < 0 || nodes > blockSize){
+			throw new IllegalArgumentException(
+					"Blocks have up to "+blockSize+" nodes, not "+nodes);
+		}
+		SplittableRandom random = blockRandom(seed, block);
+		int width = columns.length;
+		int c = 0;
+		try {
+			for(int node = 0; node < nodes; node++){
+				int row = offset + node * width;
+				for(c = 0; c < width; c++){
+					Column col = columns[c];
+					int d = col.distribution(out, row);
+					out[row + c] = col.table.sample(d, random);
+				}
+			}
+		}
+		catch(IllegalStateException e){
+			throw new IllegalStateException("Property '"+names.get(c)
+					+"' cannot be drawn for a node: "+e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return The random number stream for a block, which only depends on
+	 * the seed and the block index.  Both are hashed, rather than combined
+	 * linearly, so that no two pairs of them share a stream.
+	 */
+	private static SplittableRandom
+	blockRandom(long seed, long block){
+		return new SplittableRandom(mix(mix(seed) + block));
+	}
+
+	/**
+	 * @return A 64 bit hash of a number, which is a bijection, so
+	 * different numbers never give the same hash (Stafford's variant 13 of
+	 * the MurmurHash3 finalizer)
+	 */
+	private static long
+	mix(long z){
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Draw a population
+	 * @param seed The seed, which gives the same nodes for any number of
+	 * threads
+	 * @param nodes The number of nodes to draw
+	 * @param threads The number of threads to draw them with
+	 * @return The nodes, one after another, with {@link #columnCount()}
+	 * range IDs for each, in the order of the columns
+	 * @throws InterruptedException Thrown if the thread is interrupted
+	 * while waiting for the others
+	 * @throws IllegalStateException Thrown if a node needs a distribution
+	 * whose weights are all zero
+	 */
+	public int[]
+	sample(long seed, int nodes, int threads) throws InterruptedException {
+		if(nodes < 0 || (long) nodes * columns.length > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("Cannot hold "+nodes
+					+" nodes of "+columns.length+" values in an array");
+		}
+		int[] out = new int[nodes * columns.length];
+		forEachBlock(nodes, threads, 0, (block, first, count, scratch) ->
+			sampleBlock(seed, block, count, out, (int) first * columns.length)
+		);
+		return out;
+	}
+
+	/**
+	 * Make an empty store for this sampler's population, held in direct
+	 * buffers
+	 * @param nodes The number of nodes
+	 * @return The store, which has a column for each of this sampler's
+	 * columns, in the same order, followed by a column for each fraction and
+	 * boolean property.  Properties without an initial value are left at 0
+	 * or false.
+	 * @throws IllegalArgumentException Thrown if there are too many nodes
+	 * for a column
+	 */
+	public PopulationStore
+	newStore(long nodes){
+		try {
+			return newStore(nodes, null);
+		}
+		catch(IOException e){
+			//Nothing is read or written without a file
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Make an empty store for this sampler's population, mapped from a file
+	 * @param nodes The number of nodes
+	 * @param file The file, which is replaced and deleted when the store is
+	 * closed, or null to hold the columns in direct buffers
+	 * @return The store
+	 * @throws IOException Thrown if the file cannot be made or mapped
+	 * @throws IllegalArgumentException Thrown if there are too many nodes
+	 * for a column
+	 * @see #newStore(long)
+	 */
+	public PopulationStore
+	newStore(long nodes, Path file) throws IOException {
+		List<PropertyID> storeIDs = new ArrayList<>(ids);
+		List<String> storeNames = new ArrayList<>(names);
+		List<ColumnType> types = new ArrayList<>();
+		for(int bound : bounds){
+			types.add(ColumnType.forRangeIDBound(bound));
+		}
+		storeIDs.addAll(valueIDs);
+		storeNames.addAll(valueNames);
+		types.addAll(valueTypes);
+		return new PopulationStore(nodes, storeIDs, storeNames, types, file);
+	}
+
+	/**
+	 * Draw a population into a store, with the same nodes as
+	 * {@link #sample(long, int, int)} gives for the same seed.  Each thread
+	 * draws a block at a time into its own array, then copies each value
+	 * into its column.
+	 * @param seed The seed
+	 * @param store A store made by this sampler
+	 * @param threads The number of threads to draw the nodes with
+	 * @throws InterruptedException Thrown if the thread is interrupted
+	 * while waiting for the others
+	 * @throws IllegalArgumentException Thrown if the store has different
+	 * columns
+	 * @throws IllegalStateException Thrown if a node needs a distribution
+	 * whose weights are all zero
+	 */
+	public void
+	sample(long seed, PopulationStore store, int threads)
+			throws InterruptedException
+	{
+		int width = columns.length;
+		if(store.columnCount() != width + valueIDs.size()){
+			throw new IllegalArgumentException("The store has "
+					+store.columnCount()+" columns, rather than "
+					+(width + valueIDs.size()));
+		}
+		forEachBlock(store.size(), threads, blockSize * width,
+			(block, first, count, scratch) -> {
+				sampleBlock(seed, block, count, scratch, 0);
+				for(int c = 0; c < width; c++){
+					store.putRangeIDs(c, first, scratch, c, width, count);
+				}
+				for(int v = 0; v < valueInits.size(); v++){
+					Object init = valueInits.get(v);
+					if(init instanceof Float){
+						store.fillFraction(width + v, first, count,
+								(Float) init);
+					}
+					else if(init instanceof Boolean){
+						store.fillBoolean(width + v, first, count,
+								(Boolean) init);
+					}
+				}
+			}
+		);
+	}
+
+	/**
+	 * Work done on one block of nodes
+	 */
+	private interface BlockTask {
+		/**
+		 * @param block The index of the block
+		 * @param first The index of its first node
+		 * @param count The number of nodes in it
+		 * @param scratch An array the thread can reuse between blocks
+		 */
+		void run(long block, long first, int count, int[] scratch);
+	}
+
+	/**
+	 * Run a task on every block of a population, each block once, on a
+	 * number of threads that take the index of their next block from a
+	 * shared counter
+	 * @param nodes The number of nodes in the population
+	 * @param threads The number of threads
+	 * @param scratchSize The size of each thread's scratch array
+	 * @param task The task
+	 * @throws InterruptedException Thrown if the thread is interrupted
+	 * while waiting for the others
+	 */
+	private static void
+	forEachBlock(long nodes, int threads, int scratchSize, BlockTask task)
+			throws InterruptedException
+	{
+		long blocks = (nodes + blockSize - 1) / blockSize;
+		AtomicLong next = new AtomicLong();
+		Runnable worker = () -> {
+			int[] scratch = new int[scratchSize];
+			for(long b = next.getAndIncrement(); b < blocks; 
+					b = next.getAndIncrement())
+			{
+				long first = b * blockSize;
+				int count = (int) Math.min(blockSize, nodes - first);
+				task.run(b, first, count, scratch);
+			}
+		};
+		if(threads <= 1 || blocks <= 1){
+			worker.run();
+			return;
+		}
+		int workerCount = (int) Math.min(threads, blocks);
+		ExecutorService pool = Executors.newFixedThreadPool(workerCount);
+		try {
+			List<Callable<Object>> workers = new ArrayList<>();
+			for(int t = 0; t < workerCount; t++){
+				workers.add(Executors.callable(worker));
+			}
+			for(Future<Object> f : pool.invokeAll(workers)){
+				f.get();
+			}
+		}
+		catch(ExecutionException e){
+			if(e.getCause() instanceof RuntimeException){
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,479 @@
+package org.snrg_nyc.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds a sampled population outside of the heap, with one compact column
+ * for each property rather than an object for each node.
+ * <p>
+ * A ranged property keeps a byte for each node when its range IDs are below
+ * 256, or a short when they are below 65536, a fraction property keeps a
+ * float, and a boolean property keeps a bit.  The columns are direct
+ * buffers, or are mapped from a single file so that populations larger
+ * than memory can be paged in and out by the operating system.  The file
+ * is only scratch space: it has no header describing the columns, and is
+ * deleted when the store is closed.
+ * <p>
+ * {@link #column(int)} gives a read-only view of a column's buffer, so the
+ * nodes can be scanned without copying them.  A store holds up to
+ * 2<sup>31</sup>-1 nodes, and each column up to as many bytes, as that is
+ * the largest buffer Java can address.
+ * @see PopulationSampler#newStore(long)
+ * @see PropertiesEditor#population_sample(long, long, int, Path)
+ * @author Devin Hastings
+ */
+public class PopulationStore implements Closeable {
+	/** The columns of a mapped file start on multiples of this many bytes */
+	private static final int alignment = 64;
+
+	/**
+	 * The ways a column can store its values
+	 */
+	public enum ColumnType {
+		/** An unsigned byte range ID */
+		BYTE,
+		/** An unsigned short range ID */
+		SHORT,
+		/**
+		 * An int range ID, for properties with more ranges than fit in a short
+		 */
+		INT,
+		/** A float, for fraction properties */
+		FLOAT,
+		/** A bit, for boolean properties */
+		BIT;
+
+		/**
+		 * @param nodes A number of nodes
+		 * @return The number of bytes a column of this type needs for them
+		 */
+		public long
+		bytes(long nodes){
+			switch(this){
+			case BYTE:
+				return nodes;
+			case SHORT:
+				return nodes * 2;
+			case BIT:
+				return (nodes + 7) / 8;
+			default:
+				return nodes * 4;
+			}
+		}
+
+		/**
+		 * @return If the column holds range IDs
+		 */
+		public boolean
+		isRanged(){
+			return this == BYTE || this == SHORT || this == INT;
+		}
+
+		/**
+		 * @param bound One more than the highest range ID of a property
+		 * @return The smallest type that can hold its range IDs
+		 */
+		public static ColumnType
+		forRangeIDBound(int bound){
+			if(bound <= 1 << 8){
+				return BYTE;
+			}
+			if(bound <= 1 << 16){
+				return SHORT;
+			}
+			return INT;
+		}
+	}
+
+	private final long size;
+	private final List<PropertyID> ids;
+	private final List<String> names;
+	private final ColumnType[] types;
+	private final ByteBuffer[] columns;
+	/** The file the columns are mapped from, or null if they are in memory */
+	private final Path file;
+	private final FileChannel channel;
+
+	/**
+	 * Make a store with every value set to zero or false
+	 * @param nodes The number of nodes
+	 * @param ids The property of each column
+	 * @param names The name of each column's property
+	 * @param types The type of each column
+	 * @param file The file to map the columns from, which is replaced and
+	 * deleted when the store is closed, or null to keep them in direct 
+	 * buffers
+	 * @throws IOException Thrown if the file cannot be made or mapped
+	 * @throws IllegalArgumentException Thrown if there are too many nodes,
+	 * or a column would be too big for a buffer
+	 */
+	PopulationStore(long nodes, List<PropertyID> ids, List<String> names,
+			List<ColumnType> types, Path file) throws IOException
+	{
+		if(nodes < 0 || nodes > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("Cannot store "+nodes+" nodes");
+		}
+		this.size = nodes;
+		this.ids = Collections.unmodifiableList(new ArrayList<>(ids));
+		this.names = Collections.unmodifiableList(new ArrayList<>(names));
+		this.types = types.toArray(new ColumnType[types.size()]);
+		this.columns = new ByteBuffer[this.types.length];
+		for(int c = 0; c < this.types.length; c++){
+			if(this.types[c].bytes(nodes) > Integer.MAX_VALUE){
+				throw new IllegalArgumentException("The column for '"
+						+names.get(c)+"' cannot hold "+nodes
+						+" nodes in one buffer");
+			}
+		}
+		this.file = file;
+		if(file == null){
+			channel = null;
+			for(int c = 0; c < columns.length; c++){
+				int bytes = (int) this.types[c].bytes(nodes);
+				columns[c] = ByteBuffer.allocateDirect(bytes)
+						.order(ByteOrder.nativeOrder());
+			}
+			return;
+		}
+		if(file.getParent() != null){
+			Files.createDirectories(file.getParent());
+		}
+		channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.DELETE_ON_CLOSE);
+		try {
+			long offset = 0;
+			for(int c = 0; c < columns.length; c++){
+				long bytes = this.types[c].bytes(nodes);
+				columns[c] = channel
+						.map(FileChannel.MapMode.READ_WRITE, offset, bytes)
+						.order(ByteOrder.nativeOrder());
+				offset += (bytes + alignment - 1) / alignment * alignment;
+			}
+		}
+		catch(IOException | RuntimeException e){
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return The number of nodes
+	 */
+	public long
+	size(){
+		return size;
+	}
+
+	/**
+	 * @return The number of columns, one for each stored property
+	 */
+	public int
+	columnCount(){
+		return columns.length;
+	}
+
+	/**
+	 * @param column The index of a column
+	 * @return The ID of the column's property, with a layer ID if it is a
+	 * layer property
+	 */
+	public PropertyID
+	getColumnID(int column){
+		return ids.get(column);
+	}
+
+	/**
+	 * @param column The index of a column
+	 * @return The name of the column's property
+	 */
+	public String
+	getColumnName(int column){
+		return names.get(column);
+	}
+
+	/**
+	 * @param column The index of a column
+	 * @return How the column stores its values
+	 */
+	public ColumnType
+	getColumnType(int column){
+		return types[column];
+	}
+
+	/**
+	 * @return The file the columns are mapped from, or null if they are
+	 * held in memory
+	 */
+	public Path
+	getFile(){
+		return file;
+	}
+
+	/**
+	 * Get a column without copying it.  Range IDs are unsigned, so a byte
+	 * column's values should be read with <code>get(i) &amp; 0xFF</code>, and
+	 * a short column's with <code>getShort(2*i) &amp; 0xFFFF</code>.  In a bit
+	 * column, node <code>i</code> is bit <code>i % 8</code> of byte
+	 * <code>i / 8</code>.
+	 * @param column The index of a column
+	 * @return A read-only view of the column, in the platform's byte order,
+	 * with its own position and limit
+	 */
+	public ByteBuffer
+	column(int column){
+		return columns[column].asReadOnlyBuffer()
+				.order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * @param column The index of a ranged column
+	 * @param node The index of a node
+	 * @return The node's range ID
+	 * @throws IllegalArgumentException Thrown if the column does not hold
+	 * range IDs
+	 */
+	public int
+	getRangeID(int column, long node){
+		ByteBuffer buf = columns[column];
+		int i = index(node);
+		switch(types[column]){
+		case BYTE:
+			return buf.get(i) & 0xFF;
+		case SHORT:
+			return buf.getShort(i * 2) & 0xFFFF;
+		case INT:
+			return buf.getInt(i * 4);
+		default:
+			throw wrongType(column, "range IDs");
+		}
+	}
+
+	/**
+	 * @param column The index of a fraction column
+	 * @param node The index of a node
+	 * @return The node's value
+	 * @throws IllegalArgumentException Thrown if the column does not hold
+	 * fractions
+	 */
+	public float
+	getFraction(int column, long node){
+		if(types[column] != ColumnType.FLOAT){
+			throw wrongType(column, "fractions");
+		}
+		return columns[column].getFloat(index(node) * 4);
+	}
+
+	/**
+	 * @param column The index of a boolean column
+	 * @param node The index of a node
+	 * @return The node's value
+	 * @throws IllegalArgumentException Thrown if the column does not hold
+	 * booleans
+	 */
+	public boolean
+	getBoolean(int column, long node){
+		if(types[column] != ColumnType.BIT){
+			throw wrongType(column, "booleans");
+		}
+		int i = index(node);
+		return (columns[column].get(i >>> 3) & (1 << (i & 7))) != 0;
+	}
+
+	/**
+	 * Count the nodes in each range of a ranged column, or the false and
+	 * true nodes of a boolean column, in one pass over the column
+	 * @param column The index of a column
+	 * @return The number of nodes with each range ID, indexed by range ID,
+	 * or by 0 for false and 1 for true
+	 * @throws IllegalArgumentException Thrown if the column holds fractions
+	 */
+	public long[]
+	countValues(int column){
+		ByteBuffer buf = columns[column];
+		int n = (int) size;
+		long[] counts;
+		switch(types[column]){
+		case BYTE:
+			counts = new long[1 << 8];
+			for(int i = 0; i < n; i++){
+				counts[buf.get(i) & 0xFF]++;
+			}
+			break;
+		case SHORT:
+			counts = new long[1 << 16];
+			for(int i = 0; i < n; i++){
+				counts[buf.getShort(i * 2) & 0xFFFF]++;
+			}
+			break;
+		case INT: {
+			int max = -1;
+			for(int i = 0; i < n; i++){
+				max = Math.max(max, buf.getInt(i * 4));
+			}
+			counts = new long[max + 1];
+			for(int i = 0; i < n; i++){
+				counts[buf.getInt(i * 4)]++;
+			}
+			break;
+		}
+		case BIT: {
+			long ones = 0;
+			int fullBytes = n >>> 3;
+			for(int i = 0; i < fullBytes; i++){
+				ones += Integer.bitCount(buf.get(i) & 0xFF);
+			}
+			if((n & 7) != 0){
+				int tail = (1 << (n & 7)) - 1;
+				ones += Integer.bitCount(buf.get(fullBytes) & tail);
+			}
+			return new long[]{n - ones, ones};
+		}
+		default:
+			throw wrongType(column, "range IDs or booleans");
+		}
+		//Trim the counts to the highest range that was seen
+		int used = counts.length;
+		while(used > 0 && counts[used - 1] == 0){
+			used--;
+		}
+		long[] trimmed = new long[used];
+		System.arraycopy(counts, 0, trimmed, 0, used);
+		return trimmed;
+	}
+
+	/**
+	 * Write the range IDs of consecutive nodes into a ranged column
+	 * @param column The index of the column
+	 * @param first The index of the first node
+	 * @param values The range IDs
+	 * @param offset The index of the first node's range ID in
+	 * <code>values</code>
+	 * @param stride The distance between the range IDs of two nodes in
+	 * <code>values</code>
+	 * @param count The number of nodes
+	 */
+	void
+	putRangeIDs(int column, long first, int[] values, int offset, int stride,
+			int count)
+	{
+		ByteBuffer buf = columns[column];
+		int start = index(first);
+		switch(types[column]){
+		case BYTE:
+			for(int i = 0; i < count; i++){
+				buf.put(start + i, (byte) values[offset + i * stride]);
+			}
+			break;
+		case SHORT:
+			for(int i = 0; i < count; i++){
+				short rid = (short) values[offset + i * stride];
+				buf.putShort((start + i) * 2, rid);
+			}
+			break;
+		case INT:
+			for(int i = 0; i < count; i++){
+				buf.putInt((start + i) * 4, values[offset + i * stride]);
+			}
+			break;
+		default:
+			throw wrongType(column, "range IDs");
+		}
+	}
+
+	/**
+	 * Give consecutive nodes the same value in a fraction column
+	 */
+	void
+	fillFraction(int column, long first, int count, float value){
+		if(types[column] != ColumnType.FLOAT){
+			throw wrongType(column, "fractions");
+		}
+		ByteBuffer buf = columns[column];
+		int start = index(first);
+		for(int i = 0; i < count; i++){
+			buf.putFloat((start + i) * 4, value);
+		}
+	}
+
+	/**
+	 * Give consecutive nodes the same value in a boolean column.  The first
+	 * node must start a byte, so that threads filling different ranges
+	 * never write to the same byte.
+	 */
+	void
+	fillBoolean(int column, long first, int count, boolean value){
+		if(types[column] != ColumnType.BIT){
+			throw wrongType(column, "booleans");
+		}
+		int start = index(first);
+		if((start & 7) != 0){
+			throw new IllegalArgumentException("Node "+first
+					+" does not start a byte");
+		}
+		ByteBuffer buf = columns[column];
+		byte fill = value ? (byte) 0xFF : 0;
+		int fullBytes = count >>> 3;
+		for(int i = 0; i < fullBytes; i++){
+			buf.put((start >>> 3) + i, fill);
+		}
+		if((count & 7) != 0){
+			int mask = (1 << (count & 7)) - 1;
+			int b = (start >>> 3) + fullBytes;
+			buf.put(b, (byte) (value ? buf.get(b) | mask : buf.get(b) & ~mask));
+		}
+	}
+
+	private int
+	index(long node){
+		if(node < 0 || node >= size){
+			throw new IndexOutOfBoundsException("Node "+node+", with "+size
+					+" nodes");
+		}
+		return (int) node;
+	}
+
+	private IllegalArgumentException
+	wrongType(int column, String expected){
+		return new IllegalArgumentException("Column '"+names.get(column)
+				+"' holds "+types[column]+" values, not "+expected);
+	}
+
+	/**
+	 * Write the columns to their file, if they are mapped from one.
+	 * @throws IOException Thrown if the file cannot be written
+	 */
+	public void
+	flush() throws IOException {
+		if(channel != null){
+			for(ByteBuffer buf : columns){
+				((MappedByteBuffer) buf).force();
+			}
+		}
+	}
+
+	/**
+	 * Close the file the columns are mapped from, if there is one, which 
+	 * deletes it.  The columns stay readable until the store is garbage 
+	 * collected.
+	 */
+	@Override
+	public void
+	close() throws IOException {
+		if(channel != null){
+			channel.close();
+		}
+	}
+}
@@ -1,7 +1,9 @@
 package org.snrg_nyc.model;
 
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.function.IntConsumer;
 
 /**
  * The public-facing business logic for use by the user interface of an SNRG frontend.
@@ -37,6 +39,28 @@ public interface PropertiesEditor {
 	 */
 	public void load(String experimentName) throws EditorException;
 	
+	/**
+	 * Set if loading defers reading each property's distribution until it 
+	 * is first used.
+	 * <p>
+	 * With lazy loading, the settings of an experiment are loaded 
+	 * immediately, but each property's distribution and dependencies are 
+	 * only attached to it the first time they are read, such as through 
+	 * {@link PropertiesEditor#nodeProp_getDefaultDistribution(int)} or 
+	 * {@link PropertiesEditor#nodeProp_getConditionalDistributionIDs(int)}.
+	 * Errors in a distribution are then reported when it is first used 
+	 * instead of when the experiment is loaded.
+	 * @param lazy True to attach distributions when they are first used, 
+	 * false to attach all of them while loading
+	 */
+	public void setLazyLoading(boolean lazy);
+	
+	/**
+	 * @return True if distributions are attached when they are first used
+	 * @see PropertiesEditor#setLazyLoading(boolean)
+	 */
+	public boolean isLazyLoading();
+	
 	/**
 	 * Clear the experiment of all properties and settings, leaving the UI in its initial state
 	 */
@@ -48,6 +72,16 @@ public interface PropertiesEditor {
 	 */
 	public List<String> getExperimentNames();
 	
+	/**
+	 * Describe a saved experiment without loading it, such as its user name,
+	 * description, size and when it was last saved.  
+	 * @param experimentName The name of a saved experiment, from 
+	 * {@link PropertiesEditor#getExperimentNames()}
+	 * @return A description of the saved experiment, one detail per line,
+	 * or an empty string if nothing is known about it
+	 */
+	public String getExperimentSummary(String experimentName);
+	
 	/**
 	 * If the given instance of {@link PropertiesEditor} can use layers.
 	 * @return True if layers are allowed, otherwise false
@@ -169,6 +203,15 @@ public interface PropertiesEditor {
 	 */
 	public Integer search_nodePropWithName(String name, int lid) throws EditorException;
 	
+	/**
+	 * Search for a property with the given name in every editor of the
+	 * experiment: the node editor, its pathogen editors and its edge editors
+	 * @param name The name of the property
+	 * @return The editor and ID of the matching property, or null if there was
+	 * no match
+	 */
+	public PropertyLocation search_propertyLocation(String name);
+	
 	/**
 	 * Search for a range in the given property with the given label
 	 * @param pid The ID of the property to search in
@@ -178,6 +221,39 @@ public interface PropertiesEditor {
 	 */
 	public Integer search_rangeWithLabel(int pid, String label) throws EditorException;
 	
+	/**
+	 * Find the conditional distribution that applies to a node, given the range
+	 * it has in each of the property's dependencies: the first distribution in
+	 * the property's condition order whose conditions are all met.
+	 * @param pid The ID of the property
+	 * @param dependencyRanges A map of each dependency's property ID to a range
+	 * ID in that property
+	 * @return The ID of the conditional distribution, or null if the default
+	 * distribution applies
+	 * @throws EditorException Thrown if the property does not exist or does not
+	 * use distributions, or if the map does not have a valid range for every
+	 * dependency
+	 */
+	public Integer search_conditionalDistribution(int pid, 
+			Map<Integer, Integer> dependencyRanges) throws EditorException;
+	
+	/**
+	 * Find the conditional distribution that applies to a node for a layer
+	 * property
+	 * @param lid The layer ID of the property
+	 * @param pid The ID of the property
+	 * @param dependencyRanges A map of each dependency's property ID to a range
+	 * ID in that property
+	 * @return The ID of the conditional distribution, or null if the default
+	 * distribution applies
+	 * @throws EditorException Thrown if the property does not exist or does not
+	 * use distributions, or if the map does not have a valid range for every
+	 * dependency
+	 * @see PropertiesEditor#search_conditionalDistribution(int, Map)
+	 */
+	public Integer search_conditionalDistribution(int lid, int pid, 
+			Map<Integer, Integer> dependencyRanges) throws EditorException;
+	
 	/*                       *\
 	 * Node Property Getters *
 	\*                       */
@@ -223,6 +299,54 @@ public interface PropertiesEditor {
 	 */
 	public List<Integer> nodeProp_getRangeItemIDs(int lid, int pid) throws EditorException;
 	
+	/**
+	 * Visit the IDs of all the node properties, in the same order as
+	 * {@link PropertiesEditor#nodeProp_getPropertyIDs()}, without boxing them
+	 * or building a list.
+	 * <p>
+	 * This and the other <i>forEach</i> methods read the editor while they
+	 * visit the IDs, so the action must not add or remove any of the items
+	 * being visited.
+	 * @param action The action to run on each node property ID
+	 */
+	public void nodeProp_forEachPropertyID(IntConsumer action);
+	
+	/**
+	 * Visit the node property IDs for a layer
+	 * @param lid The ID of the layer
+	 * @param action The action to run on each ID, in the order of
+	 * {@link PropertiesEditor#nodeProp_getPropertyIDs(int)}
+	 * @throws EditorException Thrown if the layer ID is not valid
+	 * @see PropertiesEditor#nodeProp_forEachPropertyID(IntConsumer)
+	 */
+	public void nodeProp_forEachPropertyID(int lid, IntConsumer action)
+			throws EditorException;
+	
+	/**
+	 * Visit the range IDs of a ranged node property
+	 * @param pid The ID of the node property
+	 * @param action The action to run on each ID, in the order of
+	 * {@link PropertiesEditor#nodeProp_getRangeItemIDs(int)}
+	 * @throws EditorException Thrown if the pid is invalid, or if the property
+	 * given is not ranged.
+	 * @see PropertiesEditor#nodeProp_forEachPropertyID(IntConsumer)
+	 */
+	public void nodeProp_forEachRangeItemID(int pid, IntConsumer action)
+			throws EditorException;
+	
+	/**
+	 * Visit the range IDs of a ranged node property within a layer
+	 * @param lid The ID of the layer
+	 * @param pid The ID of the node property
+	 * @param action The action to run on each ID, in the order of
+	 * {@link PropertiesEditor#nodeProp_getRangeItemIDs(int, int)}
+	 * @throws EditorException Thrown if the lid or pid is invalid, or if 
+	 * the property linked to is not a ranged property
+	 * @see PropertiesEditor#nodeProp_forEachPropertyID(IntConsumer)
+	 */
+	public void nodeProp_forEachRangeItemID(
+			int lid, int pid, IntConsumer action) throws EditorException;
+	
 	/**
 	 * Get the label on a node property's range
 	 * @param pid The ID of the node property, it must be a ranged property
@@ -356,6 +480,120 @@ public interface PropertiesEditor {
 	 */
 	public int nodeProp_getDependencyLevel(int lid, int pid) throws EditorException;
 	
+	/**
+	 * Get the lowest dependency level a node property could have given its
+	 * dependencies: 0 if it has none, or one more than the highest minimum
+	 * level of its dependencies. Unlike
+	 * {@link PropertiesEditor#nodeProp_getDependencyLevel(int)}, this is worked
+	 * out from the dependencies rather than set by hand.
+	 * @param pid The ID of the node property, should be from
+	 * {@link PropertiesEditor#nodeProp_getPropertyIDs()}
+	 * @return The minimum dependency level
+	 * @throws EditorException Thrown if the ID does not point to a valid node
+	 * property, or if the dependencies of the properties are not valid (see
+	 * {@link PropertiesEditor#nodeProp_getEvaluationOrder()}).
+	 */
+	public int nodeProp_getMinimumDependencyLevel(int pid)
+			throws EditorException;
+	
+	/**
+	 * Get the lowest dependency level a node property in a layer could have
+	 * @param lid The ID of the layer, from
+	 * {@link PropertiesEditor#layer_getLayerIDs()}
+	 * @param pid The ID of the node property, from
+	 * {@link PropertiesEditor#nodeProp_getPropertyIDs(int)}.
+	 * @return The minimum dependency level of the given layer property.
+	 * @throws EditorException Thrown if the layer or property ID does not point
+	 * to a non-null item, or if the dependencies of the properties are not
+	 * valid.
+	 * @see PropertiesEditor#nodeProp_getMinimumDependencyLevel(int)
+	 */
+	public int nodeProp_getMinimumDependencyLevel(int lid, int pid)
+			throws EditorException;
+	
+	/**
+	 * Get every committed property in this editor, including the layer
+	 * properties, in an order where each property comes after all of the
+	 * properties it depends on. This is the order to evaluate the properties
+	 * in, such as when sampling or exporting nodes.
+	 * <p>
+	 * The order is kept as properties are committed, rather than sorted each
+	 * time.
+	 * @return The IDs of the properties, where the layer properties have a
+	 * layer ID
+	 * @throws EditorException Thrown if a property depends on one that does not
+	 * exist, or if the dependencies make a cycle, which can happen in an
+	 * experiment loaded from a file.
+	 */
+	public List<PropertyID> nodeProp_getEvaluationOrder()
+			throws EditorException;
+	
+	/**
+	 * Work out the share of nodes in each range of a ranged property, without
+	 * sampling, by applying its default and conditional distributions to the
+	 * marginals of the properties it depends on, all the way up the dependency
+	 * chain. The weights of each distribution are normalized first, so they do
+	 * not need to add up to one.
+	 * <p>
+	 * Results are kept and reused until a distribution they were worked out
+	 * from changes.
+	 * @param pid The ID of the ranged property, should be from
+	 * {@link PropertiesEditor#nodeProp_getPropertyIDs()}
+	 * @return A map of each range ID to the share of nodes in that range, which
+	 * add up to one
+	 * @throws EditorException Thrown if the ID does not point to a ranged
+	 * property, if the property or a property it depends on has no distribution
+	 * or depends on a property that is not ranged, if the dependencies are not
+	 * valid, or if the properties it depends on have too many combinations of
+	 * ranges between them to be worked out exactly.
+	 */
+	public Map<Integer, Float> nodeProp_getMarginalDistribution(int pid)
+			throws EditorException;
+	
+	/**
+	 * Identical to
+	 * {@link PropertiesEditor#nodeProp_getMarginalDistribution(int)}, but for
+	 * layer properties.
+	 * @param lid The layer ID
+	 * @param pid The ID of the ranged property in the layer
+	 * @return A map of each range ID to the share of nodes in that range
+	 * @throws EditorException Thrown if the layer or property ID is not valid,
+	 * or if the marginal cannot be worked out.
+	 */
+	public Map<Integer, Float> nodeProp_getMarginalDistribution(
+			int lid, int pid) throws EditorException;
+	
+	/**
+	 * Make a sampler that draws synthetic nodes from the distributions of the
+	 * committed ranged properties in this editor, to see the population they
+	 * describe. The sampler is a copy, so later edits do not change it.
+	 * @return The sampler
+	 * @throws EditorException Thrown if the dependencies are not valid, or if a
+	 * ranged property has no distribution to sample from.
+	 * @see PopulationSampler
+	 */
+	public PopulationSampler population_newSampler() throws EditorException;
+	
+	/**
+	 * Draw a population into a {@link PopulationStore}, which keeps each
+	 * property in a compact column outside of the heap, so that tens of
+	 * millions of nodes can be previewed.
+	 * @param seed The seed, which gives the same nodes for any number of
+	 * threads
+	 * @param nodes The number of nodes to draw
+	 * @param threads The number of threads to draw them with
+	 * @param spillDir A directory, such as a temporary one, to map the columns
+	 * from a new scratch file in rather than holding them in memory, or null to
+	 * hold them in memory. The file is deleted when the population is closed.
+	 * @return The population, which should be closed when it is no longer
+	 * needed
+	 * @throws EditorException Thrown if the properties cannot be sampled, if
+	 * the file cannot be written, or if the thread is interrupted.
+	 * @see PopulationSampler#sample(long, PopulationStore, int)
+	 */
+	public PopulationStore population_sample(long seed, long nodes, int threads,
+			Path spillDir) throws EditorException;
+	
 	/**
 	 * Get the initial value of a fraction node property (the same value given in 
 	 * {@link PropertiesEditor#scratch_setFractionInitValue(float)}
@@ -413,7 +651,8 @@ public interface PropertiesEditor {
 	/**
 	 * Get a list of the pIDs for the given node property's dependencies.
 	 * @param pid The ID of the node property, should be from {@link PropertiesEditor#nodeProp_getPropertyIDs()} 
-	 * @return A list of PIDs added to the node property as dependencies
+	 * @return A read-only list of PIDs added to the node property as
+	 * dependencies
 	 * @throws EditorException Thrown if the ID does not point to a valid node property.
 	 */
 	public List<Integer> nodeProp_getDependencyIDs(int pid) throws EditorException;
@@ -423,7 +662,8 @@ public interface PropertiesEditor {
 	 * dependency level.  Currently, layer properties cannot be used as dependencies.
 	 * @param lid The layer ID of the property in question.
 	 * @param pid The property ID of the property in question.
-	 * @return A list of property IDs used as dependencies in the node property.
+	 * @return A read-only list of property IDs used as dependencies in the node
+	 * property.
 	 * @throws EditorException Thrown if the combination if layer and property IDs does not
 	 * point to a valid node property.
 	 */
@@ -505,6 +745,31 @@ public interface PropertiesEditor {
 	 */
 	public List<Integer> nodeProp_getConditionalDistributionIDs(int lid, int pid) throws EditorException;
 	
+	/**
+	 * Visit the conditional distribution IDs of a node property
+	 * @param pid The ID of the node property
+	 * @param action The action to run on each ID, in the order of
+	 * {@link PropertiesEditor#nodeProp_getConditionalDistributionIDs(int)}
+	 * @throws EditorException Thrown if the node property does not exist, or if
+	 * it does not use distributions
+	 * @see PropertiesEditor#nodeProp_forEachPropertyID(IntConsumer)
+	 */
+	public void nodeProp_forEachConditionalDistributionID(
+			int pid, IntConsumer action) throws EditorException;
+	
+	/**
+	 * Visit the conditional distribution IDs of a layer property
+	 * @param lid The layer ID of the property
+	 * @param pid The property ID
+	 * @param action The action to run on each ID, in the order of
+	 * {@link PropertiesEditor#nodeProp_getConditionalDistributionIDs(int, int)}
+	 * @throws EditorException Thrown if the node property does not exist, or if
+	 * it does not use distributions
+	 * @see PropertiesEditor#nodeProp_forEachPropertyID(IntConsumer)
+	 */
+	public void nodeProp_forEachConditionalDistributionID(
+			int lid, int pid, IntConsumer action) throws EditorException;
+	
 	/**
 	 * Get the dependency conditions for the given conditional distribution
 	 * @param pid The ID of the Node Property to check
@@ -575,6 +840,30 @@ public interface PropertiesEditor {
 	 * {@link PropertiesEditor#nodeProp_getDefaultDistribution(int)}
 	 */
 	public Map<Integer, Float> nodeProp_getDefaultDistribution(int lid, int pid) throws EditorException;
+	
+	/**
+	 * Store a property's conditional distributions as one dense table, with a
+	 * row of probabilities for each assignment of ranges to its dependencies,
+	 * rather than as a list. This takes much less memory for properties with a
+	 * conditional distribution for (nearly) every assignment. While the table
+	 * is used, the conditional distribution IDs are table rows, and each has a
+	 * condition on every dependency.
+	 * @param pid The ID of the property
+	 * @throws EditorException Thrown if the property does not exist or does not
+	 * use a univariat distribution, or if the table would be too large
+	 */
+	public void nodeProp_useProbabilityTable(int pid) throws EditorException;
+	
+	/**
+	 * Store a layer property's conditional distributions as one dense table
+	 * @param lid The layer ID of the property
+	 * @param pid The ID of the property
+	 * @throws EditorException Thrown if the layer or property does not exist,
+	 * or for the reasons listed in
+	 * {@link PropertiesEditor#nodeProp_useProbabilityTable(int)}
+	 */
+	public void nodeProp_useProbabilityTable(int lid, int pid)
+			throws EditorException;
 
 	
 	/*                          *\
@@ -588,6 +877,17 @@ public interface PropertiesEditor {
 	 */
 	public List<Integer> pathogen_getPathogenIDs() throws EditorException;
 	
+	/**
+	 * Visit the valid pathogen IDs
+	 * @param action The action to run on each ID, in the order of
+	 * {@link PropertiesEditor#pathogen_getPathogenIDs()}
+	 * @throws EditorException Thrown if you are editing a 
+	 * pathogen, which does not have embedded pathogens.
+	 * @see PropertiesEditor#nodeProp_forEachPropertyID(IntConsumer)
+	 */
+	public void pathogen_forEachPathogenID(IntConsumer action)
+			throws EditorException;
+	
 	/**
 	 * Get the name of a pathogen
 	 * @param pathID The pathogen ID, from 
@@ -843,7 +1143,8 @@ public interface PropertiesEditor {
 	
 	/**
 	 * Get all the added dependencies of the scratch object.
-	 * @return A list of the node property IDs added as dependencies in the scratch object.
+	 * @return A read-only list of the node property IDs added as dependencies
+	 * in the scratch object.
 	 * @throws EditorException Thrown if the scratch property is currently null, which means
 	 *  {@link PropertiesEditor#scratch_new(String, String, String)} needs to be called.
 	 */
@@ -867,7 +1168,37 @@ public interface PropertiesEditor {
 	public int scratch_addConditionalDistribution
 		(Map<Integer, Integer> dependencyConditions, Map<Integer, Float> probabilities)
 		throws EditorException;
-	
+
+	/**
+	 * Add many conditional distributions to the scratch property at once, given
+	 * as a table such as one read from a CSV file. Each row is a conditional
+	 * distribution, added in order, with the same requirements as
+	 * {@link PropertiesEditor#scratch_addConditionalDistribution}.
+	 * <p>
+	 * The headers are checked once, then every row is checked before any are
+	 * added, so either all of the rows are added or none are.
+	 * @param dependencyIDs The condition columns: a property ID from
+	 * {@link PropertiesEditor#scratch_getDependencies()} for each column, each
+	 * used once
+	 * @param rangeIDs The probability columns: every range ID of the scratch
+	 * property, each used once, in any order
+	 * @param conditions For each row, the range ID in each dependency column,
+	 * or -1 if the row has no condition on that dependency. Each row needs at
+	 * least one condition.
+	 * @param probabilities For each row, the probability in each range column
+	 * @return The IDs of the new conditional distributions, in order of row
+	 * @throws DistributionImportException Thrown if any rows are not valid,
+	 * with the error for every bad row
+	 * @throws EditorException Thrown if the headers are not valid, if the
+	 * tables do not have the same number of rows, or if the scratch property is
+	 * currently null, which means
+	 * {@link PropertiesEditor#scratch_new(String, String, String)} needs to be
+	 * called.
+	 */
+	public List<Integer> scratch_addConditionalDistributions
+		(int[] dependencyIDs, int[] rangeIDs, int[][] conditions, 
+		float[][] probabilities) throws EditorException;
+
 	/**
 	 * This removes a conditional distribution from the scratch property.
 	 * @param cid The ID of the conditional distribution, as received from 
@@ -1061,6 +1392,14 @@ public interface PropertiesEditor {
 	 */
 	public List<Integer> layer_getLayerIDs();
 	
+	/**
+	 * Visit the IDs of the node layers
+	 * @param action The action to run on each ID, in the order of
+	 * {@link PropertiesEditor#layer_getLayerIDs()}
+	 * @see PropertiesEditor#nodeProp_forEachPropertyID(IntConsumer)
+	 */
+	public void layer_forEachLayerID(IntConsumer action);
+	
 	/**
 	 * Get the name of a layer
 	 * @param lid The ID, from {@link PropertiesEditor#layer_getLayerIDs()}
@@ -1,16 +1,24 @@
 package org.snrg_nyc.model;
 
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.function.IntConsumer;
 
 import org.snrg_nyc.model.internal.AttachmentProperty;
+import org.snrg_nyc.model.internal.BivariatDistributionSettings;
 import org.snrg_nyc.model.internal.BooleanProperty;
+import org.snrg_nyc.model.internal.ConditionalProbabilityTable;
 import org.snrg_nyc.model.internal.DistributionJsonAdapter;
+import org.snrg_nyc.model.internal.ExperimentInfo;
 import org.snrg_nyc.model.internal.FractionProperty;
 import org.snrg_nyc.model.internal.IntegerRangeProperty;
 import org.snrg_nyc.model.internal.NodeLayer;
@@ -23,8 +31,11 @@ import org.snrg_nyc.model.internal.ValuesListProperty;
 import org.snrg_nyc.model.internal.ValuesListProperty.ConditionalDistribution;
 import org.snrg_nyc.model.internal.ValuesListProperty.Distribution;
 import org.snrg_nyc.persistence.ExperimentSerializer;
+import org.snrg_nyc.persistence.ExperimentSummary;
 import org.snrg_nyc.persistence.JsonFileSerializer;
 import org.snrg_nyc.persistence.Transferable;
+import org.snrg_nyc.persistence.TransferableTypes;
+import org.snrg_nyc.util.SlotAllocator;
 
 import com.google.gson.GsonBuilder;
 
@@ -52,8 +63,53 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 	
 	protected Integer scratchLayerID;
 	
+	/** 
+	 * The free and live IDs of the properties and layers, built from the 
+	 * lists when they are first needed
+	 */
+	private SlotAllocator propertySlots, layerSlots;
+	
+	/** The order of the committed properties, built when it is first needed */
+	private PropertyDependencyGraph dependencyGraph;
+	
+	/** The marginal distributions worked out so far, made when first needed */
+	private MarginalInference marginals;
+	
 	protected ExperimentSerializer serializer;
 	
+	/** 
+	 * The names of the committed properties, shared with the node editor 
+	 * and its pathogen and edge editors
+	 */
+	protected PropertyNameIndex names = new PropertyNameIndex();
+	
+	/** 
+	 * Distributions that were loaded lazily, by the property they have not 
+	 * been attached to yet
+	 */
+	protected Map<NodeProperty, UnivariatDistributionSettings> 
+		pendingDistributions = new IdentityHashMap<>();
+	
+	/** 
+	 * The fewest conditional distributions a loaded property needs before 
+	 * they are stored in a {@link ConditionalProbabilityTable}
+	 */
+	private static final int minTableRows = 16;
+	
+	private boolean lazyLoading = false;
+	
+	static {
+		//Stored objects are looked up by name when loading an experiment
+		TransferableTypes.register(
+				NodeSettings.class,
+				PathogenSettings.class,
+				EdgeSettings.class,
+				ExperimentInfo.class,
+				UnivariatDistributionSettings.class,
+				BivariatDistributionSettings.class
+			);
+	}
+	
 	/*         *\
 	 * Methods *
 	\*         */
@@ -87,6 +143,7 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 	
 	protected Map<String, Transferable> 
 	getSavedObjects() throws EditorException {
+		attachAllDistributions();
 		Map<String, Transferable> e = new HashMap<>();
 		
 		for(NodeLayer l : layers){
@@ -96,7 +153,7 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 			for(NodeProperty np : l.getProperties()){
 				if(np != null && np instanceof ValuesListProperty
 				   && ((ValuesListProperty<?>) np).getDistributionType() 
-				      == NodeProperty.DistType.UNIVARIAT
+				      == DistType.UNIVARIAT
 				){
 					UnivariatDistributionSettings u = 
 							new UnivariatDistributionSettings(this,np);
@@ -107,7 +164,7 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 		for(NodeProperty np : properties){
 			if(np != null && np instanceof ValuesListProperty
 			   && ((ValuesListProperty<?>) np).getDistributionType() 
-			      == NodeProperty.DistType.UNIVARIAT
+			      == DistType.UNIVARIAT
 			){
 				UnivariatDistributionSettings u = new UnivariatDistributionSettings(this,np);
 				e.put(np.getDistributionID(), u);
@@ -145,20 +202,86 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 						else {
 							np = layers.get(lid).getProperty(pid);
 						}
-						uniD.addToProperty(this, np);
+						loadDistribution(uniD, np);
 					}
 				}
 				else {
-					uniD.addToProperty(this, properties.get(pid));
+					loadDistribution(uniD, properties.get(pid));
 				}
 			}
 		}
 	}
 	
+	private void 
+	loadDistribution(UnivariatDistributionSettings uniD, NodeProperty np) 
+			throws EditorException
+	{
+		if(isLazyLoading()){
+			pendingDistributions.put(np, uniD);
+		}
+		else {
+			uniD.addToProperty(this, np);
+			compactDistributions(np);
+		}
+	}
+	
+	/**
+	 * Attach a property's distribution if it was loaded lazily and has not
+	 * been attached yet.  This must be called before reading a property's
+	 * distributions or dependencies.
+	 * @param np The property to attach the distribution to
+	 * @return The same property
+	 * @throws EditorException Thrown if the distribution does not match 
+	 * the property or the other properties in the editor
+	 */
+	protected <T extends NodeProperty> T 
+	attached(T np) throws EditorException {
+		UnivariatDistributionSettings uniD = pendingDistributions.remove(np);
+		if(uniD != null){
+			try {
+				uniD.addToProperty(this, np);
+				compactDistributions(np);
+			}
+			catch(IllegalArgumentException e){
+				throw new EditorException("Error in the distribution of '"
+						+np.getName()+"': "+e.getMessage());
+			}
+		}
+		return np;
+	}
+	
+	/**
+	 * Attach every distribution that was loaded lazily
+	 * @throws EditorException Thrown if any distribution does not match its
+	 * property
+	 * @see PropertiesEditor_Impl#attached(NodeProperty)
+	 */
+	protected void 
+	attachAllDistributions() throws EditorException {
+		for(NodeProperty np : new ArrayList<>(pendingDistributions.keySet())){
+			attached(np);
+		}
+	}
+	
+	@Override
+	public void 
+	setLazyLoading(boolean lazy){
+		lazyLoading = lazy;
+	}
+	
+	@Override
+	public boolean 
+	isLazyLoading(){
+		return lazyLoading;
+	}
+	
 	protected void 
 	validateLoadedObjects() throws EditorException {
 		for(NodeProperty p : properties){
-			if(p instanceof ValuesListProperty){
+			//Lazily loaded distributions are checked when they are attached
+			if(p instanceof ValuesListProperty 
+			   && !pendingDistributions.containsKey(p))
+			{
 				ValuesListProperty<?> en = (ValuesListProperty<?>)p;
 				if(en.getDistributionType() == DistType.UNIVARIAT){
 					en.getDefaultDistribution();
@@ -305,7 +428,7 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 				throw new EditorException("Error while adding distribution:"
 						+ " there are null values");
 			}
-			if(entry.getValue() < 0){
+			if(entry.getValue() < 0 || entry.getValue().isNaN()){
 				throw new EditorException("Error while adding distribution:"
 						+ " probabilities must be equal to "
 						+ "or greater than zero, found pair ("
@@ -350,21 +473,7 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 	 */
 	protected boolean 
 	uniquePropName(String name){
-		for(NodeProperty p : properties){
-			if(p != null && p.getName().equals(name)){
-				return false;
-			}
-		}
-		for(NodeLayer l : layers){
-			if(l != null){
-				for(NodeProperty p : l.getProperties()){
-					if(p != null && p.getName().equals(name)){
-						return false;
-					}
-				}
-			}
-		}
-		return true;
+		return !names.contains(name, this);
 	}
 	
 	
@@ -378,6 +487,13 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 		scratch_clear();
 		properties.clear();
 		layers.clear();
+		//The lists may be replaced after this, such as when loading
+		propertySlots = null;
+		layerSlots = null;
+		dependencyGraph = null;
+		marginals = null;
+		pendingDistributions.clear();
+		names.removeEditor(this);
 	}
 	
 	@Override
@@ -385,6 +501,34 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 	getExperimentNames(){
 		return serializer.savedExperiments();
 	}
+	
+	@Override
+	public String 
+	getExperimentSummary(String experimentName){
+		for(ExperimentSummary s : serializer.experimentSummaries()){
+			if(!s.getName().equals(experimentName)){
+				continue;
+			}
+			StringBuilder text = new StringBuilder();
+			if(s.getUser() != null){
+				text.append("User: ").append(s.getUser()).append('\n');
+			}
+			if(s.getDescription() != null && !s.getDescription().isEmpty()){
+				text.append("Description: ")
+				    .append(s.getDescription()).append('\n');
+			}
+			if(s.getEntryCount() >= 0){
+				text.append(String.format("Entries: %d (%.1f KB)\n", 
+						s.getEntryCount(), s.getByteSize() / 1024.0));
+			}
+			if(s.getLastModified() >= 0){
+				text.append(String.format("Last saved: %tF %<tR\n", 
+						s.getLastModified()));
+			}
+			return text.toString().trim();
+		}
+		return "";
+	}
 
 	@Override
 	public boolean 
@@ -473,13 +617,29 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 	@Override
 	public List<Integer> 
 	nodeProp_getPropertyIDs() {
-		ArrayList<Integer> ls = new ArrayList<>();
-		for(int i = 0; i < properties.size(); i++){
-			if(properties.get(i)!= null){
-				ls.add(i);
-			}
+		return propertySlots().ids();
+	}
+	
+	@Override
+	public void 
+	nodeProp_forEachPropertyID(IntConsumer action) {
+		propertySlots().forEach(action);
+	}
+	
+	protected SlotAllocator 
+	propertySlots(){
+		if(propertySlots == null){
+			propertySlots = SlotAllocator.of(properties);
 		}
-		return ls;
+		return propertySlots;
+	}
+	
+	protected SlotAllocator 
+	layerSlots(){
+		if(layerSlots == null){
+			layerSlots = SlotAllocator.of(layers);
+		}
+		return layerSlots;
 	}
 
 	@Override
@@ -489,6 +649,17 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 		assert_nodeType(properties.get(pid), ValuesListProperty.class);
 		return ((ValuesListProperty<?>) properties.get(pid)).getSortedRangeIDs();
 	}
+	
+	@Override
+	public void 
+	nodeProp_forEachRangeItemID(int pid, IntConsumer action) 
+			throws EditorException 
+	{
+		assert_validPID(pid);
+		assert_nodeType(properties.get(pid), ValuesListProperty.class);
+		((ValuesListProperty<?>) properties.get(pid))
+				.forEachSortedRangeID(action);
+	}
 
 	@Override
 	public String 
@@ -549,7 +720,7 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 	public List<Integer> 
 	nodeProp_getDependencyIDs(int pid) throws EditorException{
 		assert_validPID(pid);
-		return properties.get(pid).getDependencies();
+		return attached(properties.get(pid)).getDependencies();
 	}
 
 	@Override
@@ -648,16 +819,27 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 		assert_validPID(pid);
 		assert_nodeType(properties.get(pid), ValuesListProperty.class);
 		
-		return ((ValuesListProperty<?>) properties.get(pid))
+		return ((ValuesListProperty<?>) attached(properties.get(pid)))
 				.getOrderedConditions();
 	}
+	
+	@Override
+	public void 
+	nodeProp_forEachConditionalDistributionID(int pid, IntConsumer action) 
+			throws EditorException 
+	{
+		assert_validPID(pid);
+		assert_nodeType(properties.get(pid), ValuesListProperty.class);
+		((ValuesListProperty<?>) attached(properties.get(pid)))
+				.forEachOrderedCondition(action);
+	}
 
 	@Override
 	public Map<Integer, Integer> 
 	nodeProp_getDistributionConditions(int pid,int cid) throws EditorException{
 		assert_validPID(pid);
 		assert_nodeType(properties.get(pid), ValuesListProperty.class);
-		return ((ValuesListProperty<?>) properties.get(pid))
+		return ((ValuesListProperty<?>) attached(properties.get(pid)))
 				.getConDistributionConditions(cid);
 	}
 
@@ -666,7 +848,7 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 	nodeProp_getDistribution(int pid, int cid) throws EditorException {
 		assert_validPID(pid);
 		assert_nodeType(properties.get(pid), ValuesListProperty.class);
-		return ((ValuesListProperty<?>) properties.get(pid))
+		return ((ValuesListProperty<?>) attached(properties.get(pid)))
 				.getConDistributionProbMap(cid);
 	}
 
@@ -676,7 +858,7 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 		assert_validPID(pid);
 		assert_nodeType(properties.get(pid), ValuesListProperty.class);
 		
-		if(!((ValuesListProperty<?>) properties.get(pid))
+		if(!((ValuesListProperty<?>) attached(properties.get(pid)))
 				.hasDefaultDistribution())
 		{
 			throw new EditorException("The default distribution for property '"
@@ -692,6 +874,15 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 		assert_validLID(lid);
 		return layers.get(lid).getPropertyIDs();
 	}
+	
+	@Override
+	public void 
+	nodeProp_forEachPropertyID(int lid, IntConsumer action) 
+			throws EditorException 
+	{
+		assert_validLID(lid);
+		layers.get(lid).getPropertySlots().forEach(action);
+	}
 
 	@Override
 	public List<Integer> 
@@ -701,6 +892,17 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 		assert_nodeType(np, ValuesListProperty.class);
 		return ((ValuesListProperty<?>) np).getSortedRangeIDs();
 	}
+	
+	@Override
+	public void 
+	nodeProp_forEachRangeItemID(int lid, int pid, IntConsumer action) 
+			throws EditorException 
+	{
+		assert_validPID(lid, pid);
+		NodeProperty np = layers.get(lid).getProperty(pid);
+		assert_nodeType(np, ValuesListProperty.class);
+		((ValuesListProperty<?>) np).forEachSortedRangeID(action);
+	}
 
 	@Override
 	public String 
@@ -749,6 +951,140 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 		assert_validPID(lid, pid);
 		return layers.get(lid).getProperty(pid).getDependencyLevel();
 	}
+	
+	@Override
+	public int 
+	nodeProp_getMinimumDependencyLevel(int pid) throws EditorException {
+		assert_validPID(pid);
+		return dependencyGraph().level(properties.get(pid));
+	}
+	
+	@Override
+	public int 
+	nodeProp_getMinimumDependencyLevel(int lid, int pid) 
+			throws EditorException 
+	{
+		assert_validPID(lid, pid);
+		return dependencyGraph().level(layers.get(lid).getProperty(pid));
+	}
+	
+	@Override
+	public List<PropertyID> 
+	nodeProp_getEvaluationOrder() throws EditorException {
+		return dependencyGraph().evaluationOrder();
+	}
+	
+	@Override
+	public Map<Integer, Float> 
+	nodeProp_getMarginalDistribution(int pid) throws EditorException {
+		assert_validPID(pid);
+		return marginalDistribution(properties.get(pid));
+	}
+	
+	@Override
+	public Map<Integer, Float> 
+	nodeProp_getMarginalDistribution(int lid, int pid) throws EditorException {
+		assert_validPID(lid, pid);
+		return marginalDistribution(layers.get(lid).getProperty(pid));
+	}
+	
+	private Map<Integer, Float> 
+	marginalDistribution(NodeProperty np) throws EditorException {
+		assert_nodeType(np, ValuesListProperty.class);
+		//Check the dependencies for cycles before following them
+		dependencyGraph();
+		if(marginals == null){
+			marginals = new MarginalInference(this);
+		}
+		ValuesListProperty<?> vlp = (ValuesListProperty<?>) attached(np);
+		double[] marginal = marginals.marginal(vlp);
+		Map<Integer, Float> map = new HashMap<>();
+		for(int rid : vlp.getUnSortedRangeIDs()){
+			map.put(rid, rid < marginal.length ? (float) marginal[rid] : 0f);
+		}
+		return map;
+	}
+	
+	@Override
+	public PopulationSampler 
+	population_newSampler() throws EditorException {
+		return new PopulationSampler(this);
+	}
+	
+	@Override
+	public PopulationStore 
+	population_sample(long seed, long nodes, int threads, Path spillDir) 
+			throws EditorException 
+	{
+		PopulationSampler sampler = population_newSampler();
+		Path file = null;
+		PopulationStore store;
+		try {
+			if(spillDir != null){
+				file = Files.createTempFile(spillDir, "population-", 
+						".columns");
+			}
+			store = sampler.newStore(nodes, file);
+		}
+		catch(IOException | IllegalArgumentException e){
+			if(file != null){
+				try {
+					Files.deleteIfExists(file);
+				}
+				catch(IOException e2){
+					e2.printStackTrace();
+				}
+			}
+			throw new EditorException("Could not make a store for "+nodes
+					+" nodes: "+e.getMessage());
+		}
+		boolean sampled = false;
+		try {
+			sampler.sample(seed, store, threads);
+			sampled = true;
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new EditorException(
+					"Interrupted while sampling the population");
+		}
+		catch(IllegalStateException e){
+			throw new EditorException("Could not sample the population: "
+					+e.getMessage());
+		}
+		finally {
+			if(!sampled){
+				closeQuietly(store);
+			}
+		}
+		return store;
+	}
+	
+	private static void 
+	closeQuietly(PopulationStore store){
+		try {
+			store.close();
+		}
+		catch(IOException e){
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Get the dependency graph of the committed properties, building it 
+	 * the first time.  This attaches every lazily loaded distribution, 
+	 * since they hold the dependencies.
+	 * @return The graph
+	 * @throws EditorException Thrown if the dependencies are not valid
+	 */
+	protected PropertyDependencyGraph 
+	dependencyGraph() throws EditorException {
+		if(dependencyGraph == null){
+			attachAllDistributions();
+			dependencyGraph = PropertyDependencyGraph.of(properties, layers);
+		}
+		return dependencyGraph;
+	}
 
 	@Override
 	public String 
@@ -769,7 +1105,7 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 	public Map<Integer, Float> 
 	nodeProp_getDefaultDistribution(int lid, int pid) throws EditorException {
 		assert_validPID(lid, pid);
-		NodeProperty np = layers.get(lid).getProperty(pid);
+		NodeProperty np = attached(layers.get(lid).getProperty(pid));
 		assert_nodeType(np, ValuesListProperty.class);
 		return ((ValuesListProperty<?>) np).getDefaultDistribution();
 	}
@@ -778,7 +1114,7 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 	public List<Integer> 
 	nodeProp_getDependencyIDs(int lid, int pid) throws EditorException {
 		assert_validPID(lid, pid);
-		return layers.get(lid).getProperty(pid).getDependencies();
+		return attached(layers.get(lid).getProperty(pid)).getDependencies();
 	}
 
 	@Override
@@ -787,10 +1123,21 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 			throws EditorException 
 	{
 		assert_validPID(lid, pid);
-		NodeProperty np = layers.get(lid).getProperty(pid);
+		NodeProperty np = attached(layers.get(lid).getProperty(pid));
 		assert_nodeType(np, ValuesListProperty.class);
 		return ((ValuesListProperty<?>) np).getOrderedConditions();
 	}
+	
+	@Override
+	public void 
+	nodeProp_forEachConditionalDistributionID(int lid, int pid, 
+			IntConsumer action) throws EditorException 
+	{
+		assert_validPID(lid, pid);
+		NodeProperty np = attached(layers.get(lid).getProperty(pid));
+		assert_nodeType(np, ValuesListProperty.class);
+		((ValuesListProperty<?>) np).forEachOrderedCondition(action);
+	}
 
 	@Override
 	public Map<Integer, Integer> 
@@ -798,7 +1145,7 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 			throws EditorException 
 	{
 		assert_validPID(lid, pid);
-		NodeProperty np = layers.get(lid).getProperty(pid);
+		NodeProperty np = attached(layers.get(lid).getProperty(pid));
 		assert_nodeType(np, ValuesListProperty.class);
 		return((ValuesListProperty<?>) np).getConDistributionConditions(cid);
 	}
@@ -807,7 +1154,7 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 	public Map<Integer, Float> 
 	nodeProp_getDistribution(int lid, int pid, int cid) throws EditorException{
 		assert_validPID(lid, pid);
-		NodeProperty np = layers.get(lid).getProperty(pid);
+		NodeProperty np = attached(layers.get(lid).getProperty(pid));
 		assert_nodeType(np, ValuesListProperty.class);
 		return ((ValuesListProperty<?>) np).getConDistributionProbMap(cid);
 	}
@@ -1072,7 +1419,10 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 					+ "property, as the dependency level has not been set");
 		}
 		List<Integer> deps = new ArrayList<>();
-		for(int pid : nodeProp_getPropertyIDs()){
+		SlotAllocator slots = propertySlots();
+		for(int pid = slots.nextLive(0); pid >= 0; 
+				pid = slots.nextLive(pid + 1))
+		{
 			if(properties.get(pid).getDependencyLevel() 
 					< scratchProperty.getDependencyLevel() 
 					&& properties.get(pid) instanceof ValuesListProperty){
@@ -1149,6 +1499,122 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 
 	}
 
+	@Override
+	public List<Integer> 
+	scratch_addConditionalDistributions(int[] dependencyIDs, int[] rangeIDs,
+			int[][] conditions, float[][] probabilities) throws EditorException
+	{
+		assert_scratchExists();
+		assert_nodeType(scratchProperty, ValuesListProperty.class);
+		ValuesListProperty<?> vlp = (ValuesListProperty<?>) scratchProperty;
+		if(!vlp.rangesAreSet()){
+			throw new EditorException(
+					"Not all ranges are set in this property");
+		}
+		if(conditions.length != probabilities.length){
+			throw new EditorException("Error while adding distributions: "
+					+conditions.length+" rows of conditions, but "
+					+probabilities.length+" rows of probabilities");
+		}
+
+		//Check the headers once, for every row
+		ValuesListProperty<?>[] deps =
+				new ValuesListProperty<?>[dependencyIDs.length];
+		for(int col = 0; col < dependencyIDs.length; col++){
+			int pid = dependencyIDs[col];
+			assert_validPID(pid);
+			assert_nodeType(properties.get(pid), ValuesListProperty.class);
+			if(!vlp.dependsOn(pid)){
+				throw new EditorException(
+						"Error while adding distributions: property ID '"+pid
+						+"' is not in the list of dependencies.");
+			}
+			for(int other = 0; other < col; other++){
+				if(dependencyIDs[other] == pid){
+					throw new EditorException(
+							"Error while adding distributions: property ID '"
+							+pid+"' is in two columns");
+				}
+			}
+			deps[col] = (ValuesListProperty<?>) properties.get(pid);
+		}
+		int bound = vlp.getRangeIDBound();
+		boolean[] seen = new boolean[bound];
+		for(int rid : rangeIDs){
+			if(!vlp.validRID(rid) || seen[rid]){
+				throw new EditorException("Error while adding distributions: "
+						+ "range ID '"+rid+"' is not a range in this property,"
+						+ " or is in two columns");
+			}
+			seen[rid] = true;
+		}
+		if(rangeIDs.length != vlp.getUnSortedRangeIDs().size()){
+			throw new EditorException("Error while adding distributions: "
+					+ "there must be a column for every range in this "
+					+ "property");
+		}
+
+		Map<Integer, String> rowErrors = new HashMap<>();
+		List<ConditionalDistribution> cds = new ArrayList<>(conditions.length);
+		Map<Integer, Integer> conds = new HashMap<>();
+		for(int row = 0; row < conditions.length; row++){
+			String error = null;
+			conds.clear();
+			if(conditions[row] == null 
+					|| conditions[row].length != deps.length)
+			{
+				error = "expected "+deps.length+" conditions";
+			}
+			else {
+				for(int col = 0; col < deps.length; col++){
+					int rid = conditions[row][col];
+					if(rid == -1){
+						continue;
+					}
+					if(!deps[col].validRID(rid)){
+						error = "range ID '"+rid+"' was not found in property '"
+								+deps[col].getName()+"'";
+						break;
+					}
+					conds.put(dependencyIDs[col], rid);
+				}
+			}
+			if(error == null && conds.isEmpty()){
+				error = "the set of dependency conditions cannot be empty";
+			}
+			float[] probs = Distribution.emptyProbabilities(bound);
+			if(error == null){
+				if(probabilities[row] == null
+				   || probabilities[row].length != rangeIDs.length)
+				{
+					error = "expected "+rangeIDs.length+" probabilities";
+				}
+				else {
+					for(int col = 0; col < rangeIDs.length; col++){
+						float p = probabilities[row][col];
+						if(p < 0 || Float.isNaN(p)){
+							error = "probabilities must be equal to or greater "
+									+ "than zero, found "+p+" for range '"
+									+vlp.getRangeLabel(rangeIDs[col])+"'";
+							break;
+						}
+						probs[rangeIDs[col]] = p;
+					}
+				}
+			}
+			if(error != null){
+				rowErrors.put(row, error);
+			}
+			else if(rowErrors.isEmpty()){
+				cds.add(new ConditionalDistribution(conds, probs));
+			}
+		}
+		if(!rowErrors.isEmpty()){
+			throw new DistributionImportException(rowErrors);
+		}
+		return vlp.addConditionalDistributions(cds);
+	}
+
 	@Override
 	public void 
 	scratch_removeConditionalDistribution(int cid) throws EditorException {
@@ -1164,7 +1630,7 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 		assert_scratchExists();
 		assert_nodeType(scratchProperty, ValuesListProperty.class);
 		((ValuesListProperty<?>) scratchProperty)
-		.getConditionalDistributions().clear();
+		.clearConditionalDistributions();
 	}
 
 	@Override
@@ -1216,25 +1682,26 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 					+ "setting its dependency level");
 		}
 		List<NodeProperty> propertyList;
+		SlotAllocator slots;
 		//Add it to a layer if the scratchLayerID is not null
 		if(scratchLayerID != null){
 			assert_validLID(scratchLayerID);
 			propertyList = layers.get(scratchLayerID).getProperties();
+			slots = layers.get(scratchLayerID).getPropertySlots();
 		}
 		else {
 			propertyList = properties;
+			slots = propertySlots();
 		}
-		for(NodeProperty np : propertyList){
-			if(np != null && np.getName() == scratchProperty.getName()){
-				throw new EditorException("Scratch property has the same name"
-						+ " as an existing property: "+np.getName());
-			}
+		if(names.find(scratchProperty.getName(), this, scratchLayerID) != null){
+			throw new EditorException("Scratch property has the same name"
+					+ " as an existing property: "+scratchProperty.getName());
 		}
 		if(scratchProperty instanceof ValuesListProperty){
 			ValuesListProperty<?> vlp = (ValuesListProperty<?>)scratchProperty;
 			
 			if( !vlp.hasDefaultDistribution() && vlp.getDistributionType() 
-					== NodeProperty.DistType.UNIVARIAT )
+					== DistType.UNIVARIAT )
 			{
 				throw new EditorException("Tried to add a scratch property "
 						+ "without a default distribution.");
@@ -1251,17 +1718,17 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 						+ "without an initial value.");
 			}
 		}
-		//Finally, add to the first available spot in the property list
-		for(int i = 0; i < propertyList.size(); i++){
-			if(propertyList.get(i) == null){
-				propertyList.set(i, scratchProperty);
-				scratch_clear();
-				return i;
-			}
-		} 
-		propertyList.add(scratchProperty);
+		//The graph checks the dependencies before anything is changed, so a
+		//property it rejects is not left half committed
+		int pid = slots.next();
+		if(dependencyGraph != null){
+			dependencyGraph.add(scratchProperty, scratchLayerID, pid);
+		}
+		//Finally, add to an available spot in the property list
+		slots.store(propertyList, scratchProperty);
+		names.add(scratchProperty.getName(), this, scratchLayerID, pid);
 		scratch_clear();
-		return propertyList.size()-1;
+		return pid;
 	}
 
 	@Override
@@ -1351,20 +1818,19 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 						"Tried to add layer with duplicate name: "+name);
 			}
 		}
-		layers.add(new NodeLayer(name));
-		return layers.size()-1;
+		return layerSlots().store(layers, new NodeLayer(name));
 	}
 
 	@Override
 	public List<Integer> 
 	layer_getLayerIDs() {
-		List<Integer> layerIDs = new ArrayList<>();
-		for(int i = 0; i < layers.size(); i++){
-			if(layers.get(i) != null){
-				layerIDs.add(i);
-			}
-		}
-		return layerIDs;
+		return layerSlots().ids();
+	}
+	
+	@Override
+	public void 
+	layer_forEachLayerID(IntConsumer action) {
+		layerSlots().forEach(action);
 	}
 	
 	@Override
@@ -1390,24 +1856,20 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 	@Override
 	public Integer 
 	search_nodePropWithName(String name) {
-		for(int i : nodeProp_getPropertyIDs()){
-			if(properties.get(i).getName().equals(name)){
-				return i;
-			}
-		}
-		return null;
+		return names.find(name, this, null);
 	}
 	
 	@Override
 	public Integer 
 	search_nodePropWithName(String name, int lid) throws EditorException {
 		assert_validLID(lid);
-		for(int i : layers.get(lid).getPropertyIDs()){
-			if(layers.get(lid).getProperty(i).getName().equals(name)){
-				return i;
-			}
-		}
-		return null;
+		return names.find(name, this, lid);
+	}
+	
+	@Override
+	public PropertyLocation 
+	search_propertyLocation(String name) {
+		return names.find(name);
 	}
 
 	@Override
@@ -1416,14 +1878,161 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 		assert_validPID(pid);
 		assert_nodeType(properties.get(pid), ValuesListProperty.class);
 		
-		ValuesListProperty<?> en = (ValuesListProperty<?>) properties.get(pid);
-		
-		for(int i:en.getUnSortedRangeIDs()){
-			if(en.getRangeLabel(i).equals(label)){
-				return i;
+		return ((ValuesListProperty<?>) properties.get(pid))
+				.getRangeWithLabel(label);
+	}
+	
+	@Override
+	public Integer 
+	search_conditionalDistribution(int pid, 
+			Map<Integer, Integer> dependencyRanges) throws EditorException
+	{
+		assert_validPID(pid);
+		assert_nodeType(properties.get(pid), ValuesListProperty.class);
+		return matchingConditional(
+				(ValuesListProperty<?>) attached(properties.get(pid)), 
+				dependencyRanges);
+	}
+	
+	@Override
+	public Integer 
+	search_conditionalDistribution(int lid, int pid, 
+			Map<Integer, Integer> dependencyRanges) throws EditorException
+	{
+		assert_validPID(lid, pid);
+		NodeProperty np = layers.get(lid).getProperty(pid);
+		assert_nodeType(np, ValuesListProperty.class);
+		return matchingConditional(
+				(ValuesListProperty<?>) attached(np), dependencyRanges);
+	}
+	
+	@Override
+	public void 
+	nodeProp_useProbabilityTable(int pid) throws EditorException {
+		assert_validPID(pid);
+		assert_nodeType(properties.get(pid), ValuesListProperty.class);
+		NodeProperty np = attached(properties.get(pid));
+		useProbabilityTable((ValuesListProperty<?>) np);
+	}
+	
+	@Override
+	public void 
+	nodeProp_useProbabilityTable(int lid, int pid) throws EditorException {
+		assert_validPID(lid, pid);
+		NodeProperty np = layers.get(lid).getProperty(pid);
+		assert_nodeType(np, ValuesListProperty.class);
+		useProbabilityTable((ValuesListProperty<?>) attached(np));
+	}
+	
+	private void 
+	useProbabilityTable(ValuesListProperty<?> vlp) throws EditorException {
+		if(vlp.getDistributionType() != DistType.UNIVARIAT){
+			throw new EditorException("Property '"+vlp.getName()
+					+"' does not use a univariat distribution");
+		}
+		vlp.useProbabilityTable(dependencyProperties(vlp));
+	}
+	
+	/**
+	 * Store a loaded property's conditional distributions in a table if 
+	 * every one of them gives a range for every dependency, and there is one
+	 * for at least half of the assignments, so the table is no larger than
+	 * the list.
+	 * <p>
+	 * The table lists its rows in order, so the conditionals must already 
+	 * be in order of row, with no assignment repeated; otherwise saving 
+	 * the property again would reorder them or drop the repeats.
+	 * @see PropertiesEditor#nodeProp_useProbabilityTable(int)
+	 */
+	private void 
+	compactDistributions(NodeProperty np) throws EditorException {
+		if(!(np instanceof ValuesListProperty) 
+		   || np.getDistributionType() != DistType.UNIVARIAT)
+		{
+			return;
+		}
+		ValuesListProperty<?> vlp = (ValuesListProperty<?>) np;
+		List<Integer> cids = vlp.getOrderedConditions();
+		if(cids.size() < minTableRows || !vlp.hasDefaultDistribution()){
+			return;
+		}
+		List<ValuesListProperty<?>> depProps = dependencyProperties(vlp);
+		long size = vlp.getRangeIDBound();
+		for(ValuesListProperty<?> dep : depProps){
+			size *= dep.getRangeIDBound();
+		}
+		long lastRow = -1;
+		for(int cid : cids){
+			Map<Integer, Integer> conds = vlp.getConDistributionConditions(cid);
+			if(conds.size() != vlp.getDependencyCount()){
+				return;
+			}
+			long row = 0;
+			for(int i = 0; i < depProps.size(); i++){
+				Integer rid = conds.get(vlp.getDependency(i));
+				if(rid == null){
+					return;
+				}
+				row = row * depProps.get(i).getRangeIDBound() + rid;
+			}
+			if(row <= lastRow){
+				return;
+			}
+			lastRow = row;
+		}
+		if(size <= 2L * cids.size() * vlp.getRangeIDBound()
+		   && size <= ConditionalProbabilityTable.maxSize)
+		{
+			vlp.useProbabilityTable(depProps);
+		}
+	}
+	
+	/**
+	 * @return The properties a property depends on, in the order of its 
+	 * dependency list
+	 * @throws EditorException Thrown if a dependency is not a ranged property
+	 */
+	private List<ValuesListProperty<?>> 
+	dependencyProperties(ValuesListProperty<?> vlp) throws EditorException {
+		List<ValuesListProperty<?>> depProps = new ArrayList<>();
+		for(int i = 0; i < vlp.getDependencyCount(); i++){
+			int dep = vlp.getDependency(i);
+			assert_validPID(dep);
+			assert_nodeType(properties.get(dep), ValuesListProperty.class);
+			depProps.add((ValuesListProperty<?>) properties.get(dep));
+		}
+		return depProps;
+	}
+	
+	/**
+	 * Find the conditional distribution of a property that applies to an
+	 * assignment of ranges to its dependencies
+	 * @see PropertiesEditor#search_conditionalDistribution(int, Map)
+	 */
+	private Integer 
+	matchingConditional(ValuesListProperty<?> vlp, 
+			Map<Integer, Integer> dependencyRanges) throws EditorException
+	{
+		List<ValuesListProperty<?>> depProps = dependencyProperties(vlp);
+		int[] rids = new int[vlp.getDependencyCount()];
+		int[] radices = new int[rids.length];
+		for(int i = 0; i < rids.length; i++){
+			Integer rid = dependencyRanges.get(vlp.getDependency(i));
+			if(rid == null){
+				throw new EditorException("No range given for dependency "
+						+vlp.getDependency(i)+" of property '"+vlp.getName()
+						+"'");
 			}
+			ValuesListProperty<?> depProp = depProps.get(i);
+			if(!depProp.validRID(rid)){
+				throw new EditorException("Range ID '"+rid
+						+"' was not found in property '"+depProp.getName()+"'");
+			}
+			rids[i] = rid;
+			radices[i] = depProp.getRangeIDBound();
 		}
-		return null;
+		int cid = vlp.getMatchingConditional(rids, radices);
+		return cid == ValuesListProperty.DEFAULT_DISTRIBUTION ? null : cid;
 	}
 
 	/*
@@ -1463,6 +2072,12 @@ abstract class PropertiesEditor_Impl implements PropertiesEditor {
 	pathogen_getPathogenIDs() throws EditorException {
 		throw new EditorException(noPathogensMsg);
 	}
+	
+	@Override
+	public void 
+	pathogen_forEachPathogenID(IntConsumer action) throws EditorException {
+		throw new EditorException(noPathogensMsg);
+	}
 	@Override
 	public int nodeProp_getPathogenID(int lid, int pid) throws EditorException {
 		throw new EditorException(noPathogensMsg);
@@ -0,0 +1,155 @@
+package org.snrg_nyc.model;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.snrg_nyc.model.internal.NodeLayer;
+import org.snrg_nyc.model.internal.NodeProperty;
+import org.snrg_nyc.util.DependencyGraph;
+
+/**
+ * The dependencies between the committed properties of one editor, both
+ * the properties outside of layers and the ones in each layer, kept in an
+ * order where every property comes after the properties it depends on.
+ * <p>
+ * Each pathogen editor has its own graph, since its properties only depend
+ * on each other.
+ * @see DependencyGraph
+ * @author Devin Hastings
+ */
+class PropertyDependencyGraph {
+	private final DependencyGraph graph = new DependencyGraph();
+	private final Map<NodeProperty, Integer> vertices = new IdentityHashMap<>();
+	/** The property and ID for each vertex */
+	private final List<NodeProperty> vertexProperties = new ArrayList<>();
+	private final List<PropertyID> vertexIDs = new ArrayList<>();
+	/** The properties outside of layers, which dependencies point to */
+	private final List<NodeProperty> properties;
+
+	private PropertyDependencyGraph(List<NodeProperty> properties){
+		this.properties = properties;
+	}
+
+	/**
+	 * Build the graph for every committed property of an editor.  The
+	 * editor's distributions must all be attached, since they hold the
+	 * dependencies of loaded properties.
+	 * @param properties The properties outside of layers
+	 * @param layers The layers
+	 * @return The graph
+	 * @throws EditorException Thrown if a property depends on one that does
+	 * not exist, or if the dependencies make a cycle
+	 */
+	static PropertyDependencyGraph
+	of(List<NodeProperty> properties, List<NodeLayer> layers)
+			throws EditorException
+	{
+		PropertyDependencyGraph g = new PropertyDependencyGraph(properties);
+		for(int pid = 0; pid < properties.size(); pid++){
+			if(properties.get(pid) != null){
+				g.addVertex(properties.get(pid), new PropertyID(pid));
+			}
+		}
+		for(int lid = 0; lid < layers.size(); lid++){
+			if(layers.get(lid) == null){
+				continue;
+			}
+			List<NodeProperty> layerProps = layers.get(lid).getProperties();
+			for(int pid = 0; pid < layerProps.size(); pid++){
+				if(layerProps.get(pid) != null){
+					g.addVertex(layerProps.get(pid), new PropertyID(lid, pid));
+				}
+			}
+		}
+		for(int v = 0; v < g.vertexProperties.size(); v++){
+			g.addDependencies(v);
+		}
+		return g;
+	}
+
+	/**
+	 * Add a property that is being committed.  Nothing depends on a new
+	 * property, so its dependencies cannot make a cycle, and they are all
+	 * checked before the graph is changed.
+	 * @param np The property
+	 * @param lid The layer it is committed to, or null
+	 * @param pid Its ID
+	 * @throws EditorException Thrown if it depends on a property that does
+	 * not exist, in which case the graph is not changed
+	 */
+	void
+	add(NodeProperty np, Integer lid, int pid) throws EditorException {
+		for(int i = 0; i < np.getDependencyCount(); i++){
+			dependency(np, i);
+		}
+		int v = addVertex(np, lid == null ? new PropertyID(pid)
+		                                  : new PropertyID(lid, pid));
+		addDependencies(v);
+	}
+
+	private int
+	addVertex(NodeProperty np, PropertyID id){
+		int v = graph.addVertex();
+		vertices.put(np, v);
+		vertexProperties.add(np);
+		vertexIDs.add(id);
+		return v;
+	}
+
+	private void
+	addDependencies(int v) throws EditorException {
+		NodeProperty np = vertexProperties.get(v);
+		for(int i = 0; i < np.getDependencyCount(); i++){
+			NodeProperty depProp = dependency(np, i);
+			if(!graph.addEdge(vertices.get(depProp), v)){
+				throw new EditorException("Cyclic dependency: property '"
+						+np.getName()+"' depends on '"+depProp.getName()
+						+"', which already depends on it");
+			}
+		}
+	}
+
+	/**
+	 * @return One of a property's dependencies
+	 * @throws EditorException Thrown if it does not exist, or is not in the
+	 * graph
+	 */
+	private NodeProperty
+	dependency(NodeProperty np, int i) throws EditorException {
+		int dep = np.getDependency(i);
+		if(dep < 0 || dep >= properties.size() || properties.get(dep) == null
+		   || !vertices.containsKey(properties.get(dep)))
+		{
+			throw new EditorException("Property '"+np.getName()
+					+"' depends on a property that does not exist: "+dep);
+		}
+		return properties.get(dep);
+	}
+
+	/**
+	 * @param np A committed property
+	 * @return The lowest dependency level the property could have
+	 * @throws EditorException Thrown if the property is not in the graph
+	 */
+	int
+	level(NodeProperty np) throws EditorException {
+		Integer v = vertices.get(np);
+		if(v == null){
+			throw new EditorException("Property '"+np.getName()
+					+"' is not in the dependency graph");
+		}
+		return graph.level(v);
+	}
+
+	/**
+	 * @return The IDs of every property, each after the ones it depends on
+	 */
+	List<PropertyID>
+	evaluationOrder(){
+		List<PropertyID> ids = new ArrayList<>(graph.size());
+		graph.forEachInOrder(v -> ids.add(vertexIDs.get(v)));
+		return ids;
+	}
+}
@@ -0,0 +1,52 @@
+package org.snrg_nyc.model;
+
+/**
+ * Where a node property is stored: the editor that holds it, and its
+ * property ID (with its layer ID, if it is in a layer).
+ * @see PropertiesEditor#search_propertyLocation(String)
+ * @author Devin Hastings
+ */
+public class PropertyLocation {
+	private final PropertiesEditor editor;
+	private final PropertyID id;
+
+	PropertyLocation(PropertiesEditor editor, Integer lid, int pid){
+		this.editor = editor;
+		this.id = lid == null ? new PropertyID(pid) : new PropertyID(lid, pid);
+	}
+
+	/**
+	 * @return The editor the property is stored in, which may be the
+	 * node editor, a pathogen editor or an edge editor
+	 */
+	public PropertiesEditor
+	getEditor(){
+		return editor;
+	}
+
+	/**
+	 * @return The ID of the property in its editor
+	 */
+	public PropertyID
+	getID(){
+		return id;
+	}
+
+	/**
+	 * @param lid A layer ID, or null for the properties outside of layers
+	 * @return If the property is stored in the given layer
+	 */
+	boolean
+	inLayer(Integer lid){
+		if(lid == null){
+			return !id.usesLayer();
+		}
+		return id.usesLayer() && id.lid().equals(lid);
+	}
+
+	@Override
+	public String
+	toString(){
+		return (id.usesLayer() ? "layer "+id.lid()+", " : "")+"pid "+id.pid();
+	}
+}
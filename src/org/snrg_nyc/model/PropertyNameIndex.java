@@ -0,0 +1,142 @@
+package org.snrg_nyc.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.snrg_nyc.model.internal.NodeLayer;
+import org.snrg_nyc.model.internal.NodeProperty;
+
+/**
+ * An index of the committed property names in a {@link NodeEditor} and
+ * every pathogen and edge editor attached to it, which all share one index.
+ * <p>
+ * Property names are meant to be unique across all of these editors, but
+ * an experiment loaded from a file may break that rule, so each name maps
+ * to every location it is used in.
+ * @author Devin Hastings
+ */
+class PropertyNameIndex {
+	private final Map<String, List<PropertyLocation>> locations = 
+			new HashMap<>();
+
+	/**
+	 * Add a committed property to the index
+	 * @param name The name of the property
+	 * @param editor The editor the property was committed to
+	 * @param lid The layer the property is in, or null
+	 * @param pid The ID of the property
+	 */
+	void
+	add(String name, PropertiesEditor editor, Integer lid, int pid){
+		locations.computeIfAbsent(name, n -> new ArrayList<>(1))
+			.add(new PropertyLocation(editor, lid, pid));
+	}
+
+	/**
+	 * Add every property an editor holds, such as after it is loaded
+	 * @param editor The editor to index
+	 */
+	void
+	addEditor(PropertiesEditor_Impl editor){
+		List<NodeProperty> properties = editor.properties;
+		for(int pid = 0; pid < properties.size(); pid++){
+			if(properties.get(pid) != null){
+				add(properties.get(pid).getName(), editor, null, pid);
+			}
+		}
+		List<NodeLayer> layers = editor.layers;
+		for(int lid = 0; lid < layers.size(); lid++){
+			if(layers.get(lid) == null){
+				continue;
+			}
+			List<NodeProperty> layerProps = layers.get(lid).getProperties();
+			for(int pid = 0; pid < layerProps.size(); pid++){
+				if(layerProps.get(pid) != null){
+					add(layerProps.get(pid).getName(), editor, lid, pid);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove every property of an editor from the index
+	 * @param editor The editor that was cleared or replaced
+	 */
+	void
+	removeEditor(PropertiesEditor editor){
+		Iterator<List<PropertyLocation>> it = locations.values().iterator();
+		while(it.hasNext()){
+			List<PropertyLocation> l = it.next();
+			l.removeIf(loc -> loc.getEditor() == editor);
+			if(l.isEmpty()){
+				it.remove();
+			}
+		}
+	}
+
+	void
+	clear(){
+		locations.clear();
+	}
+
+	/**
+	 * @param name A property name
+	 * @return If any editor sharing the index has a property with the name
+	 */
+	boolean
+	contains(String name){
+		return locations.containsKey(name);
+	}
+
+	/**
+	 * @param name A property name
+	 * @param editor The editor to check
+	 * @return If the given editor has a property with the name, in any layer
+	 */
+	boolean
+	contains(String name, PropertiesEditor editor){
+		List<PropertyLocation> l = locations.get(name);
+		if(l != null){
+			for(PropertyLocation loc : l){
+				if(loc.getEditor() == editor){
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param name A property name
+	 * @return The first location of a property with the name, or null
+	 */
+	PropertyLocation
+	find(String name){
+		List<PropertyLocation> l = locations.get(name);
+		return l == null ? null : l.get(0);
+	}
+
+	/**
+	 * Find a property with a name in one editor and layer
+	 * @param name The property name
+	 * @param editor The editor to search
+	 * @param lid The layer to search, or null for the properties outside
+	 * of layers
+	 * @return The property ID, or null if there is no match
+	 */
+	Integer
+	find(String name, PropertiesEditor editor, Integer lid){
+		List<PropertyLocation> l = locations.get(name);
+		if(l != null){
+			for(PropertyLocation loc : l){
+				if(loc.getEditor() == editor && loc.inLayer(lid)){
+					return loc.getID().pid();
+				}
+			}
+		}
+		return null;
+	}
+}
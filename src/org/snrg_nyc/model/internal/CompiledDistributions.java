@@ -0,0 +1,229 @@
+package org.snrg_nyc.model.internal;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.snrg_nyc.model.EditorException;
+import org.snrg_nyc.model.internal.NodeProperty.DistType;
+import org.snrg_nyc.util.AliasTable;
+
+/**
+ * The distributions of a {@link ValuesListProperty}, normalized and
+ * compiled into an {@link AliasTable}, so that drawing a range or reading
+ * a normalized probability takes constant time.
+ * <p>
+ * The weights of a distribution are stored as they were given, and do not
+ * have to add up to one.  Here each distribution also has its total weight,
+ * and its normalized and cumulative probabilities by range ID.  The table
+ * holds the default distribution (or the uniform one) first, then the
+ * conditionals in the property's condition order, so a table index is
+ * also the rank of a conditional in that order, plus one.
+ * <p>
+ * The editor allows a distribution whose weights are all zero, such as a
+ * conditional for an assignment that can never happen.  It is compiled
+ * with a total of zero and no probability for any range, and drawing from
+ * it throws, so it only matters if a node can reach it.
+ * <p>
+ * A property compiles its distributions when they are first needed, and
+ * throws the compiled form away when they change, so it is always up to
+ * date.  A compiled form does not change once it is made, and can be
+ * shared between threads.
+ * @see ValuesListProperty#getCompiledDistributions()
+ * @author Devin Hastings
+ */
+public class CompiledDistributions {
+	private final AliasTable table;
+	/** The table index of each conditional distribution ID, or -1 */
+	private final int[] indexOfCID;
+	/** The conditional distribution ID of each table index after the first */
+	private final int[] cids;
+	/** The normalized probabilities of each distribution, by range ID */
+	private final float[][] probabilities;
+	/** The normalized cumulative probabilities of each distribution */
+	private final float[][] cumulative;
+	/** The total weight of each distribution */
+	private final double[] totals;
+
+	private CompiledDistributions(List<FloatBuffer> dists, List<Integer> order){
+		table = AliasTable.of(dists);
+		cids = new int[order.size()];
+		int bound = 0;
+		for(int k = 0; k < order.size(); k++){
+			cids[k] = order.get(k);
+			bound = Math.max(bound, cids[k] + 1);
+		}
+		indexOfCID = new int[bound];
+		Arrays.fill(indexOfCID, -1);
+		for(int k = 0; k < cids.length; k++){
+			indexOfCID[cids[k]] = k + 1;
+		}
+		probabilities = new float[dists.size()][];
+		cumulative = new float[dists.size()][];
+		totals = new double[dists.size()];
+		for(int d = 0; d < dists.size(); d++){
+			FloatBuffer weights = dists.get(d);
+			double total = 0;
+			for(int rid = 0; rid < weights.limit(); rid++){
+				if(usable(weights.get(rid))){
+					total += weights.get(rid);
+				}
+			}
+			totals[d] = total;
+			float[] pdf = new float[weights.limit()];
+			float[] cdf = new float[weights.limit()];
+			double sum = 0;
+			for(int rid = 0; rid < cdf.length; rid++){
+				if(usable(weights.get(rid))){
+					pdf[rid] = (float) (weights.get(rid) / total);
+					sum += weights.get(rid);
+				}
+				cdf[rid] = total > 0 ? (float) (sum / total) : 0;
+			}
+			probabilities[d] = pdf;
+			cumulative[d] = cdf;
+		}
+	}
+
+	/**
+	 * Compile the distributions of a property
+	 * @param vlp The property
+	 * @return The compiled distributions
+	 * @throws EditorException Thrown if the property does not have a
+	 * default or uniform distribution
+	 */
+	static CompiledDistributions
+	of(ValuesListProperty<?> vlp) throws EditorException {
+		List<FloatBuffer> dists = new ArrayList<>();
+		List<Integer> order;
+		if(vlp.getDistributionType() == DistType.UNIFORM){
+			float[] weights = new float[vlp.getRangeIDBound()];
+			vlp.forEachSortedRangeID(rid -> weights[rid] = 1);
+			dists.add(FloatBuffer.wrap(weights));
+			order = new ArrayList<>();
+		}
+		else if(vlp.getDistributionType() == DistType.UNIVARIAT
+		        && vlp.hasDefaultDistribution())
+		{
+			order = new ArrayList<>(vlp.getOrderedConditions());
+			dists.add(vlp.getDefaultProbabilities());
+			for(int cid : order){
+				dists.add(vlp.getConDistributionProbabilities(cid));
+			}
+		}
+		else {
+			throw new EditorException("Property '"+vlp.getName()
+					+"' does not have a distribution to compile");
+		}
+		return new CompiledDistributions(dists, order);
+	}
+
+	private static boolean
+	usable(float weight){
+		return weight > 0 && !Float.isInfinite(weight);
+	}
+
+	/**
+	 * @param cid A conditional distribution ID, or
+	 * {@link ValuesListProperty#DEFAULT_DISTRIBUTION}
+	 * @return The index of the distribution in the table, where 0 is the
+	 * default distribution
+	 * @throws IllegalArgumentException Thrown if there is no conditional
+	 * distribution with the ID
+	 */
+	public int
+	indexOf(int cid){
+		if(cid == ValuesListProperty.DEFAULT_DISTRIBUTION){
+			return 0;
+		}
+		if(cid < 0 || cid >= indexOfCID.length || indexOfCID[cid] == -1){
+			throw new IllegalArgumentException(
+					"Invalid Conditional Distribution ID: "+cid);
+		}
+		return indexOfCID[cid];
+	}
+
+	/**
+	 * @param index The index of a distribution in the table
+	 * @return Its conditional distribution ID, or
+	 * {@link ValuesListProperty#DEFAULT_DISTRIBUTION} for index 0
+	 */
+	public int
+	getCID(int index){
+		return index == 0 
+				? ValuesListProperty.DEFAULT_DISTRIBUTION 
+				: cids[index - 1];
+	}
+
+	/**
+	 * @return The alias table, with a distribution for each index
+	 */
+	public AliasTable
+	getTable(){
+		return table;
+	}
+
+	/**
+	 * @return The number of distributions, including the default
+	 */
+	public int
+	distributionCount(){
+		return totals.length;
+	}
+
+	/**
+	 * Draw a range
+	 * @param index The index of the distribution to draw from
+	 * @param random The random number generator
+	 * @return The range ID
+	 * @throws IllegalStateException Thrown if the distribution has no
+	 * range with a positive weight
+	 */
+	public int
+	sample(int index, SplittableRandom random){
+		return table.sample(index, random);
+	}
+
+	/**
+	 * @param index The index of a distribution
+	 * @return The sum of its positive weights, which is 0 if it cannot be
+	 * drawn from
+	 */
+	public double
+	getTotal(int index){
+		return totals[index];
+	}
+
+	/**
+	 * @param index The index of a distribution
+	 * @param rid A range ID
+	 * @return The probability of the range, so that the distribution adds
+	 * up to one, or 0 if the range has no weight
+	 */
+	public float
+	getProbability(int index, int rid){
+		float[] pdf = probabilities[index];
+		return rid < 0 || rid >= pdf.length ? 0 : pdf[rid];
+	}
+
+	/**
+	 * @param index The index of a distribution
+	 * @param rid A range ID
+	 * @return The probability of drawing any range up to and including this
+	 * one, in range ID order, which is always 0 if the distribution has no
+	 * weight
+	 */
+	public float
+	getCumulativeProbability(int index, int rid){
+		float[] cdf = cumulative[index];
+		if(rid < 0){
+			return 0;
+		}
+		if(rid >= cdf.length){
+			return totals[index] > 0 ? 1 : 0;
+		}
+		return cdf[rid];
+	}
+}
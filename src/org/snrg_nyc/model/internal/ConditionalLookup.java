@@ -0,0 +1,231 @@
+package org.snrg_nyc.model.internal;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+import org.snrg_nyc.model.internal.ValuesListProperty.ConditionalDistribution;
+
+/**
+ * A table of which conditional distribution applies to each full assignment
+ * of range IDs to a property's dependencies, so finding it takes a single
+ * array lookup.
+ * <p>
+ * Each cell is one assignment, indexed by treating the range IDs of the
+ * dependencies as the digits of a mixed-radix number, and holds the ID of
+ * the first conditional distribution (in the property's condition order)
+ * whose conditions match the assignment, or
+ * {@link ValuesListProperty#DEFAULT_DISTRIBUTION} if none match.
+ * <p>
+ * Adding a conditional at the end of the order only fills the cells that
+ * its conditions match, and removing or replacing one only recomputes the
+ * cells its conditions matched.
+ * @author Devin Hastings
+ */
+class ConditionalLookup {
+	/** The largest table that will be built, in cells */
+	static final int maxCells = 1 << 22;
+
+	private final int[] deps;
+	private final int[] radices;
+	private final int[] strides;
+	private final int[] table;
+
+	/**
+	 * Create an empty table, where every assignment uses the default
+	 * distribution
+	 * @param deps The IDs of the dependencies, in the order of the range
+	 * IDs in each assignment
+	 * @param radices One more than the highest range ID of each dependency
+	 * @param cells The number of assignments
+	 */
+	private ConditionalLookup(int[] deps, int[] radices, int cells){
+		this.deps = deps;
+		this.radices = radices;
+		strides = new int[deps.length];
+		int stride = 1;
+		for(int i = deps.length - 1; i >= 0; i--){
+			strides[i] = stride;
+			stride *= radices[i];
+		}
+		table = new int[cells];
+		Arrays.fill(table, ValuesListProperty.DEFAULT_DISTRIBUTION);
+	}
+
+	/**
+	 * Build the table for a property's conditional distributions
+	 * @param deps The IDs of the dependencies
+	 * @param radices One more than the highest range ID of each dependency
+	 * @param order The conditional distribution IDs, in order of priority
+	 * @param dists The conditional distributions, by ID
+	 * @return The table, or null if it would have more than
+	 * {@link #maxCells} cells
+	 */
+	static ConditionalLookup
+	build(int[] deps, int[] radices, List<Integer> order,
+			List<ConditionalDistribution> dists)
+	{
+		long cells = 1;
+		for(int r : radices){
+			cells *= Math.max(r, 1);
+			if(cells > maxCells){
+				return null;
+			}
+		}
+		ConditionalLookup lookup = new ConditionalLookup(
+				deps.clone(), radices.clone(), (int) cells);
+		lookup.fill(order, dists);
+		return lookup;
+	}
+
+	/**
+	 * @param np The property the table is for
+	 * @param radices The range ID bound of each dependency
+	 * @return If the table was built for the same dependencies and ranges
+	 */
+	boolean
+	matches(NodeProperty np, int[] radices){
+		if(np.getDependencyCount() != this.deps.length){
+			return false;
+		}
+		for(int i = 0; i < this.deps.length; i++){
+			if(np.getDependency(i) != this.deps[i]){
+				return false;
+			}
+		}
+		return Arrays.equals(radices, this.radices);
+	}
+
+	/**
+	 * @param rids The range ID of each dependency
+	 * @return The ID of the conditional distribution to use, or
+	 * {@link ValuesListProperty#DEFAULT_DISTRIBUTION}
+	 */
+	int
+	get(int[] rids){
+		int index = 0;
+		for(int i = 0; i < rids.length; i++){
+			index += rids[i] * strides[i];
+		}
+		return table[index];
+	}
+
+	/**
+	 * Fill every cell from scratch, such as after the order changes
+	 */
+	void
+	fill(List<Integer> order, List<ConditionalDistribution> dists){
+		Arrays.fill(table, ValuesListProperty.DEFAULT_DISTRIBUTION);
+		for(int cid : order){
+			added(cid, dists.get(cid));
+		}
+	}
+
+	/**
+	 * Update the table after a conditional distribution was added to the
+	 * end of the order: it applies to the cells it matches that no
+	 * earlier conditional matched
+	 */
+	void
+	added(int cid, ConditionalDistribution cd){
+		forEachMatchingCell(cd.conditionsMap(), c -> {
+			if(table[c] == ValuesListProperty.DEFAULT_DISTRIBUTION){
+				table[c] = cid;
+			}
+		});
+	}
+
+	/**
+	 * Recompute the cells that some conditions match, after a conditional
+	 * distribution with those conditions was removed or replaced
+	 * @param conditions The conditions of the distribution that changed
+	 * @param order The conditional distribution IDs, in order of priority
+	 * @param dists The conditional distributions, by ID
+	 */
+	void
+	changed(Map<Integer, Integer> conditions, List<Integer> order,
+			List<ConditionalDistribution> dists)
+	{
+		int[] rids = new int[deps.length];
+		forEachMatchingCell(conditions, c -> {
+			for(int i = 0; i < deps.length; i++){
+				rids[i] = (c / strides[i]) % radices[i];
+			}
+			table[c] = ValuesListProperty.DEFAULT_DISTRIBUTION;
+			for(int cid : order){
+				if(matches(dists.get(cid).conditionsMap(), rids)){
+					table[c] = cid;
+					break;
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return If every condition is met by the assignment
+	 */
+	private boolean
+	matches(Map<Integer, Integer> conditions, int[] rids){
+		for(Map.Entry<Integer, Integer> e : conditions.entrySet()){
+			int i = indexOf(e.getKey());
+			if(i == -1 || rids[i] != e.getValue()){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Visit every cell whose assignment meets a set of conditions.  The
+	 * dependencies without a condition can have any range ID.
+	 */
+	private void
+	forEachMatchingCell(Map<Integer, Integer> conditions, IntConsumer action){
+		int base = 0;
+		boolean[] fixed = new boolean[deps.length];
+		for(Map.Entry<Integer, Integer> e : conditions.entrySet()){
+			int i = indexOf(e.getKey());
+			if(i == -1 || e.getValue() < 0 || e.getValue() >= radices[i]){
+				//Nothing can meet this condition
+				return;
+			}
+			fixed[i] = true;
+			base += e.getValue() * strides[i];
+		}
+		int count = 1;
+		for(int i = 0; i < deps.length; i++){
+			if(!fixed[i]){
+				count *= radices[i];
+			}
+		}
+		int[] digits = new int[deps.length];
+		for(int n = 0; n < count; n++){
+			int c = base;
+			for(int i = 0; i < deps.length; i++){
+				c += digits[i] * strides[i];
+			}
+			action.accept(c);
+			//Count up through the dependencies without conditions
+			for(int i = deps.length - 1; i >= 0; i--){
+				if(fixed[i]){
+					continue;
+				}
+				if(++digits[i] < radices[i]){
+					break;
+				}
+				digits[i] = 0;
+			}
+		}
+	}
+
+	private int
+	indexOf(int pid){
+		for(int i = 0; i < deps.length; i++){
+			if(deps[i] == pid){
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,293 @@
+package org.snrg_nyc.model.internal;
+
+import java.io.Serializable;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.snrg_nyc.model.EditorException;
+import org.snrg_nyc.model.internal.ValuesListProperty.ConditionalDistribution;
+
+/**
+ * The conditional distributions of a property stored as one dense table:
+ * a row of probabilities for every assignment of ranges to the property's
+ * dependencies, in a single float array.
+ * <p>
+ * Rows are indexed by treating the dependencies' range IDs as the digits of
+ * a mixed-radix number, with the last dependency changing fastest, and each
+ * row holds a probability for every range ID of the property (NaN for range
+ * IDs that are not used).  Rows that only repeat the default distribution
+ * are marked as unlisted, so converting back to conditional distributions
+ * does not add a conditional for every assignment.
+ * @see ValuesListProperty#useProbabilityTable(List)
+ * @author Devin Hastings
+ */
+public class ConditionalProbabilityTable implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** The largest table that will be built, in floats */
+	public static final int maxSize = 1 << 24;
+
+	private final int[] deps;
+	private final int[] radices;
+	private final int[] strides;
+	private final int ranges;
+	private final float[] probabilities;
+	private final BitSet listed;
+
+	private ConditionalProbabilityTable(int[] deps, int[] radices, int rows,
+			int ranges)
+	{
+		this.deps = deps;
+		this.radices = radices;
+		this.ranges = ranges;
+		strides = new int[deps.length];
+		int stride = 1;
+		for(int i = deps.length - 1; i >= 0; i--){
+			strides[i] = stride;
+			stride *= radices[i];
+		}
+		probabilities = new float[rows * ranges];
+		listed = new BitSet(rows);
+	}
+
+	/**
+	 * Make the table for a property's current conditional distributions, by
+	 * finding the distribution that applies to each assignment.  Rows for 
+	 * assignments that include a range ID without a range are not listed.
+	 * @param vlp The property, which must have a default distribution
+	 * @param depProps The property's dependencies, in order
+	 * @return The table
+	 * @throws EditorException Thrown if the table would be too large, or if
+	 * the property does not have a univariat distribution
+	 */
+	static ConditionalProbabilityTable
+	of(ValuesListProperty<?> vlp, List<ValuesListProperty<?>> depProps) 
+			throws EditorException 
+	{
+		int[] deps = vlp.getDependencyArray();
+		if(depProps.size() != deps.length){
+			throw new EditorException("Expected "+deps.length
+					+" dependencies for '"+vlp.getName()+"', got "
+					+depProps.size());
+		}
+		int[] radices = new int[deps.length];
+		long rows = 1;
+		for(int i = 0; i < deps.length; i++){
+			radices[i] = depProps.get(i).getRangeIDBound();
+			rows *= radices[i];
+		}
+		int ranges = vlp.getRangeIDBound();
+		if(rows * ranges > maxSize){
+			throw new EditorException("The probability table for '"
+					+vlp.getName()+"' would have "+rows*ranges+" entries");
+		}
+		ConditionalProbabilityTable cpt = new ConditionalProbabilityTable(
+				deps, radices, (int) rows, ranges);
+
+		FloatBuffer defaults = vlp.getDefaultProbabilities();
+		int[] rids = new int[deps.length];
+		for(int row = 0; row < rows; row++){
+			cpt.assignment(row, rids);
+			FloatBuffer dist = defaults;
+			if(validAssignment(depProps, rids)){
+				int cid = vlp.getMatchingConditional(rids, radices);
+				if(cid != ValuesListProperty.DEFAULT_DISTRIBUTION){
+					dist = vlp.getConDistributionProbabilities(cid);
+					cpt.listed.set(row);
+				}
+			}
+			int offset = row * ranges;
+			for(int rid = 0; rid < ranges; rid++){
+				cpt.probabilities[offset + rid] =
+						rid < dist.limit() ? dist.get(rid) : Float.NaN;
+			}
+		}
+		return cpt;
+	}
+
+	private static boolean
+	validAssignment(List<ValuesListProperty<?>> depProps, int[] rids){
+		for(int i = 0; i < rids.length; i++){
+			if(!depProps.get(i).validRID(rids[i])){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The number of dependencies, which is the length of each
+	 * assignment
+	 */
+	public int
+	dependencyCount(){
+		return deps.length;
+	}
+
+	/**
+	 * @param i The index of a dependency
+	 * @return The property ID of the dependency
+	 */
+	public int
+	getDependency(int i){
+		return deps[i];
+	}
+
+	/**
+	 * @return The number of rows, which is the number of assignments
+	 */
+	public int
+	rowCount(){
+		return probabilities.length / Math.max(ranges, 1);
+	}
+
+	/**
+	 * @return The number of probabilities in each row, which is one more
+	 * than the property's highest range ID
+	 */
+	public int
+	rangeCount(){
+		return ranges;
+	}
+
+	/**
+	 * @param rids The range ID of each dependency, in order
+	 * @return The row of the assignment
+	 */
+	public int
+	row(int[] rids){
+		int row = 0;
+		for(int i = 0; i < rids.length; i++){
+			row += rids[i] * strides[i];
+		}
+		return row;
+	}
+
+	/**
+	 * Get the range ID of each dependency in a row's assignment
+	 * @param row The row
+	 * @param rids The array to write the range IDs to
+	 */
+	public void
+	assignment(int row, int[] rids){
+		for(int i = 0; i < deps.length; i++){
+			rids[i] = (row / strides[i]) % radices[i];
+		}
+	}
+
+	/**
+	 * @param row The row
+	 * @return A map of each dependency's property ID to its range ID in the
+	 * row's assignment
+	 */
+	public Map<Integer, Integer>
+	conditions(int row){
+		Map<Integer, Integer> conds = new HashMap<>();
+		for(int i = 0; i < deps.length; i++){
+			conds.put(deps[i], (row / strides[i]) % radices[i]);
+		}
+		return conds;
+	}
+
+	/**
+	 * @param row The row
+	 * @return A read-only view of the row's probabilities, indexed by
+	 * range ID
+	 */
+	public FloatBuffer
+	probabilities(int row){
+		return FloatBuffer.wrap(probabilities, row * ranges, ranges)
+				.slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return A read-only view of the whole table, one row after another
+	 */
+	public FloatBuffer
+	probabilities(){
+		return FloatBuffer.wrap(probabilities).asReadOnlyBuffer();
+	}
+
+	/**
+	 * @param row The row
+	 * @return If the row came from a conditional distribution, rather than
+	 * the default distribution
+	 */
+	public boolean
+	isListed(int row){
+		return row >= 0 && row < rowCount() && listed.get(row);
+	}
+
+	/**
+	 * @return The listed rows, in order
+	 */
+	public List<Integer>
+	listedRows(){
+		List<Integer> rows = new ArrayList<>(listed.cardinality());
+		for(int row = listed.nextSetBit(0); row >= 0;
+				row = listed.nextSetBit(row + 1))
+		{
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	/**
+	 * Write a new default distribution into the rows that are not listed
+	 * @param defaults The default probabilities, indexed by range ID
+	 */
+	void
+	fillUnlisted(FloatBuffer defaults){
+		int rows = rowCount();
+		for(int row = listed.nextClearBit(0); row < rows;
+				row = listed.nextClearBit(row + 1))
+		{
+			int offset = row * ranges;
+			for(int rid = 0; rid < ranges; rid++){
+				probabilities[offset + rid] =
+						rid < defaults.limit() ? defaults.get(rid) : Float.NaN;
+			}
+		}
+	}
+
+	/**
+	 * @param np The property the table is for
+	 * @param radices The range ID bound of each dependency
+	 * @return If the table was made for the same dependencies and ranges
+	 */
+	boolean
+	matches(NodeProperty np, int[] radices){
+		if(np.getDependencyCount() != this.deps.length){
+			return false;
+		}
+		for(int i = 0; i < this.deps.length; i++){
+			if(np.getDependency(i) != this.deps[i]){
+				return false;
+			}
+		}
+		return Arrays.equals(radices, this.radices);
+	}
+
+	/**
+	 * Convert the listed rows back to conditional distributions, each with
+	 * a condition on every dependency
+	 * @return The conditional distributions, in order of row
+	 */
+	List<ConditionalDistribution>
+	toConditionals(){
+		List<ConditionalDistribution> list = new ArrayList<>();
+		for(int row = listed.nextSetBit(0); row >= 0;
+				row = listed.nextSetBit(row + 1))
+		{
+			list.add(new ConditionalDistribution(conditions(row),
+					Arrays.copyOfRange(probabilities,
+							row * ranges, (row + 1) * ranges)));
+		}
+		return list;
+	}
+}
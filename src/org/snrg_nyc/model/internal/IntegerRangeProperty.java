@@ -1,10 +1,19 @@
 package org.snrg_nyc.model.internal;
 
+import java.util.List;
+import java.util.function.IntConsumer;
+
 import org.snrg_nyc.model.EditorException;
 
 public class IntegerRangeProperty extends ValuesListProperty<Range<Integer>> {
 	private static final long serialVersionUID = 1L;
 	
+	/** 
+	 * The range IDs sorted by value, built when they are first visited and
+	 * thrown away whenever a range is added, removed or changed
+	 */
+	private transient int[] sortedRIDs;
+	
 	public 
 	IntegerRangeProperty(){
 		super( ()-> new Range<Integer>() );
@@ -33,11 +42,26 @@ public class IntegerRangeProperty extends ValuesListProperty<Range<Integer>> {
 	setRangeMin(int rid, int min) throws EditorException {
 		assert_validRID(rid);
 		values.get(rid).setMin(min);
+		sortedRIDs = null;
 	}
 	public void 
 	setRangeMax(int rid, int max) throws EditorException{
 		assert_validRID(rid);
 		values.get(rid).setMax(max);
+		sortedRIDs = null;
+	}
+	@Override
+	public int 
+	addRange() throws EditorException{
+		int rid = super.addRange();
+		sortedRIDs = null;
+		return rid;
+	}
+	@Override
+	public void 
+	removeRange(int rid) throws EditorException{
+		super.removeRange(rid);
+		sortedRIDs = null;
 	}
 	//Other Methods
 	@Override
@@ -47,6 +71,23 @@ public class IntegerRangeProperty extends ValuesListProperty<Range<Integer>> {
 		return values.get(rid).isReady();
 	}
 	
+	@Override
+	public void 
+	forEachSortedRangeID(IntConsumer action){
+		//The ranges are sorted by value, so the order is kept until they
+		//change
+		if(sortedRIDs == null){
+			List<Integer> sorted = getSortedRangeIDs();
+			sortedRIDs = new int[sorted.size()];
+			for(int i = 0; i < sortedRIDs.length; i++){
+				sortedRIDs[i] = sorted.get(i);
+			}
+		}
+		for(int rid : sortedRIDs){
+			action.accept(rid);
+		}
+	}
+	
 	@Override
 	int 
 	compareRanges(int rid1, int rid2){
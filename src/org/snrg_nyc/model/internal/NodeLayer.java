@@ -3,6 +3,8 @@ package org.snrg_nyc.model.internal;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.snrg_nyc.util.SlotAllocator;
+
 import com.google.gson.annotations.SerializedName;
 
 public class NodeLayer {
@@ -12,6 +14,9 @@ public class NodeLayer {
 	@SerializedName("PropertyDefinitionList")
 	private List<NodeProperty> layerAttributes;
 	
+	/** The free and live property IDs, built when they are first needed */
+	private transient SlotAllocator slots;
+	
 	public NodeLayer(String name){
 		this.name = name;
 		layerAttributes = new ArrayList<>();
@@ -41,22 +46,23 @@ public class NodeLayer {
 			throw new IllegalArgumentException(msg);
 		}
 		//The list is nullable when objects are removed, use one of those spots instead
-		for(int i = 0;  i < layerAttributes.size();i++ ){
-			if(layerAttributes.get(i) == null){
-				layerAttributes.set(i, np);
-			}
-		}
-		layerAttributes.add(np);
-		return layerAttributes.indexOf(np);
+		return slots().store(layerAttributes, np);
 	}
 	public List<Integer> getPropertyIDs(){
-		List<Integer> ids = new ArrayList<>();
-		for(int i = 0; i < layerAttributes.size(); i++){
-			if(layerAttributes.get(i) != null){
-				ids.add(i);
-			}
+		return slots().ids();
+	}
+	/**
+	 * @return The allocator for the property IDs in this layer, which 
+	 * must be used to add or remove properties in {@link #getProperties()}
+	 */
+	public SlotAllocator getPropertySlots(){
+		return slots();
+	}
+	private SlotAllocator slots(){
+		if(slots == null){
+			slots = SlotAllocator.of(layerAttributes);
 		}
-		return ids;
+		return slots;
 	}
 	
 	public NodeProperty getProperty(int pid){
@@ -70,6 +76,7 @@ public class NodeLayer {
 	public void removeProperty(int pid){
 		assert_validPID(pid);
 		layerAttributes.set(pid, null);
+		slots().free(pid);
 	}
 	/**
 	 * Assert that the given property ID points to a non-null node property in the layer.
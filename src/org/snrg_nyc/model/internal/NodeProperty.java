@@ -1,7 +1,10 @@
 package org.snrg_nyc.model.internal;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.RandomAccess;
 
 import org.snrg_nyc.model.EditorException;
 import org.snrg_nyc.persistence.Transferable;
@@ -23,7 +26,15 @@ public abstract class NodeProperty implements Transferable {
 	protected String name;
 	protected int dependencyLevel;
 	protected String description;
-	protected List<Integer> dependencies;
+	/**
+	 * The dependency IDs in the order they were added, up to
+	 * {@link #dependencyCount}
+	 */
+	protected int[] dependencies;
+	protected int dependencyCount;
+	/** The same IDs as {@link #dependencies}, for checking membership */
+	private BitSet dependencySet;
+	private transient List<Integer> dependencyView;
 	protected DistType distType;
 	protected String errorMessage;
 	
@@ -31,7 +42,9 @@ public abstract class NodeProperty implements Transferable {
 		name = null;
 		description = null;
 		dependencyLevel = -1;
-		dependencies = new ArrayList<Integer>();
+		dependencies = new int[2];
+		dependencyCount = 0;
+		dependencySet = new BitSet();
 		distType = DistType.NULL;
 	}
 	public NodeProperty(String name, String description) throws EditorException{
@@ -80,34 +93,93 @@ public abstract class NodeProperty implements Transferable {
 	}
 	/**
 	 * Get this property's listed dependencies.
-	 * @return A list of node property IDs representing the dependencies.
+	 * @return A read-only list of node property IDs representing the
+	 * dependencies, which reads the property as it is used, so it changes when
+	 * the dependencies do.
 	 */
 	public List<Integer> getDependencies(){
-		return dependencies;
+		if(dependencyView == null){
+			dependencyView = new DependencyList();
+		}
+		return dependencyView;
+	}
+	/**
+	 * @return The number of dependencies
+	 */
+	public int getDependencyCount(){
+		return dependencyCount;
+	}
+	/**
+	 * @param i The index of the dependency, in the order of
+	 * {@link #getDependencies()}
+	 * @return The node property ID of the dependency
+	 */
+	public int getDependency(int i){
+		if(i < 0 || i >= dependencyCount){
+			throw new IndexOutOfBoundsException("Dependency index "+i
+					+", with "+dependencyCount+" dependencies");
+		}
+		return dependencies[i];
+	}
+	/**
+	 * @param pid A node property ID
+	 * @return The index of the dependency in {@link #getDependencies()}, or -1
+	 * if this property does not depend on it
+	 */
+	public int dependencyIndex(int pid){
+		if(!dependsOn(pid)){
+			return -1;
+		}
+		for(int i = 0; i < dependencyCount; i++){
+			if(dependencies[i] == pid){
+				return i;
+			}
+		}
+		return -1;
+	}
+	/**
+	 * @return A copy of the dependency IDs, in the order of
+	 * {@link #getDependencies()}
+	 */
+	public int[] getDependencyArray(){
+		return Arrays.copyOf(dependencies, dependencyCount);
 	}
 	
 	public void addDependency(int pid) throws EditorException{
-		if(dependencies.contains(pid)){
+		if(dependsOn(pid)){
 			throw new EditorException(
 					errorMessage+"Duplicate dependency ID '"+pid+"' in property '"+name+"'.");
 		}
+		else if(pid < 0){
+			throw new EditorException(errorMessage+"Invalid dependency ID '"
+					+pid+"' in property '"+name+"'.");
+		}
 		else {
-			dependencies.add(pid);
+			if(dependencyCount == dependencies.length){
+				dependencies = Arrays.copyOf(dependencies, 
+						Math.max(2, dependencyCount*2));
+			}
+			dependencies[dependencyCount++] = pid;
+			dependencySet.set(pid);
 		}
 	}
 	
 	public void removeDependency(int pid) throws EditorException{
-		if(!dependencies.contains(pid)){
+		int i = dependencyIndex(pid);
+		if(i == -1){
 			throw new EditorException(
 					errorMessage+"Tried to delete nonexistant dependency ID'"+pid+"' from property '"+name+"'.");
 		}
 		else {
-			dependencies.remove(new Integer(pid));
+			System.arraycopy(dependencies, i+1, dependencies, i, 
+					dependencyCount-i-1);
+			dependencyCount--;
+			dependencySet.clear(pid);
 		}
 	}
 
 	public boolean dependenciesAreSet(){
-		return (dependencies != null && dependencies.size() > 0);
+		return dependencyCount > 0;
 	}
 	
 	public void useUniformDistribution(){
@@ -122,7 +194,7 @@ public abstract class NodeProperty implements Transferable {
 	}
 	
 	public boolean dependsOn(int pid){
-		return dependencies.contains(pid);
+		return pid >= 0 && dependencySet.get(pid);
 	}
 	
 	public String getDistributionID(){
@@ -139,4 +211,28 @@ public abstract class NodeProperty implements Transferable {
 	String getBiDistID(){
 		return "bidist_"+name.toLowerCase().replaceAll(" ", "_");
 	}
+	
+	/**
+	 * A read-only view of the dependency IDs
+	 */
+	private class DependencyList extends AbstractList<Integer> 
+			implements RandomAccess
+	{
+		@Override
+		public Integer get(int i){
+			return getDependency(i);
+		}
+		@Override
+		public int size(){
+			return dependencyCount;
+		}
+		@Override
+		public boolean contains(Object o){
+			return o instanceof Integer && dependsOn((Integer) o);
+		}
+		@Override
+		public int indexOf(Object o){
+			return o instanceof Integer ? dependencyIndex((Integer) o) : -1;
+		}
+	}
 }
\ No newline at end of file
@@ -1,6 +1,9 @@
 package org.snrg_nyc.model.internal;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.snrg_nyc.model.EditorException;
 
@@ -34,7 +37,34 @@ public class PropertyJsonAdapter
 	final static String distIDLabel = "DistributionID";
 	final static String pathogenLabel = "PathogenType";
 	
-	private Class<?>[] propertyTypes;
+	/**
+	 * Creates an empty property of a single type
+	 */
+	@FunctionalInterface
+	interface PropertyFactory {
+		NodeProperty create() throws EditorException;
+	}
+	
+	/** Factories for every known property type, by simple class name */
+	private static final Map<String, PropertyFactory> knownTypes;
+	static {
+		knownTypes = new HashMap<>();
+		knownTypes.put(EnumeratorProperty.class.getSimpleName(), 
+				EnumeratorProperty::new);
+		knownTypes.put(IntegerRangeProperty.class.getSimpleName(), 
+				IntegerRangeProperty::new);
+		knownTypes.put(BooleanRangeProperty.class.getSimpleName(), 
+				BooleanRangeProperty::new);
+		knownTypes.put(AttachmentProperty.class.getSimpleName(), 
+				AttachmentProperty::new);
+		knownTypes.put(BooleanProperty.class.getSimpleName(), 
+				BooleanProperty::new);
+		knownTypes.put(FractionProperty.class.getSimpleName(), 
+				FractionProperty::new);
+	}
+	
+	/** Factories for the property types this adapter accepts */
+	private Map<String, PropertyFactory> propertyTypes;
 	
 	/**
 	 * Create a {@link PropertyJsonAdapter} with the available property classes
@@ -42,7 +72,39 @@ public class PropertyJsonAdapter
 	 * (they must all be subclasses of {@link NodeProperty}
 	 */
 	public PropertyJsonAdapter(Class<?>[] propTypes){
-		propertyTypes = propTypes;
+		propertyTypes = new HashMap<>();
+		for(Class<?> c : propTypes){
+			PropertyFactory f = knownTypes.get(c.getSimpleName());
+			if(f == null){
+				f = reflectiveFactory(c);
+			}
+			propertyTypes.put(c.getSimpleName(), f);
+		}
+	}
+	
+	/**
+	 * Make a factory for a property class without a known factory, using its
+	 * no-argument constructor
+	 */
+	private static PropertyFactory 
+	reflectiveFactory(Class<?> c){
+		Constructor<? extends NodeProperty> con;
+		try {
+			con = c.asSubclass(NodeProperty.class).getConstructor();
+		} 
+		catch (NoSuchMethodException | ClassCastException e) {
+			throw new IllegalArgumentException(
+					"Not a node property with an empty constructor: "+c);
+		}
+		return () ->{
+			try {
+				return con.newInstance();
+			} 
+			catch (ReflectiveOperationException e) {
+				throw new JsonParseException("Error while making class: "
+						+e.toString());
+			}
+		};
 	}
 	
 	@Override
@@ -129,18 +191,17 @@ public class PropertyJsonAdapter
 		NodeProperty nodeProp = null;
 		JsonObject innerJs = null;
 		
-		for(Class<?> propClass : propertyTypes){
-			if(nodePropJs.has(propClass.getSimpleName())){
-				innerJs = getJson(
-						nodePropJs,propClass.getSimpleName())
-						.getAsJsonObject();
+		for(Map.Entry<String, JsonElement> e : nodePropJs.entrySet()){
+			PropertyFactory factory = propertyTypes.get(e.getKey());
+			if(factory != null){
+				innerJs = e.getValue().getAsJsonObject();
 				try {
-					nodeProp = (NodeProperty) propClass.newInstance();
+					nodeProp = factory.create();
 				} 
-				catch (IllegalAccessException | InstantiationException e) {
-					e.printStackTrace();
+				catch (EditorException ex) {
+					ex.printStackTrace();
 					throw new JsonParseException("Error while making class: "
-							+e.toString());
+							+ex.toString());
 				}
 				break;
 			}
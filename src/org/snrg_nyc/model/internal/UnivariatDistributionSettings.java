@@ -1,5 +1,6 @@
 package org.snrg_nyc.model.internal;
 
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -88,43 +89,78 @@ public class UnivariatDistributionSettings implements Transferable {
 		distributions = new ArrayList<>();
 		ValuesListProperty<?> vlp = (ValuesListProperty<?>) np;
 
-		
-		for(int i : vlp.getOrderedConditions()){
-			List<Condition> conds = new ArrayList<>();
-			List<ValuePair> pairs = new ArrayList<>();
+		if(vlp.getProbabilityTable() != null){
+			addTableRows(model, vlp, vlp.getProbabilityTable());
+		}
+		else {
+			for(int i : vlp.getOrderedConditions()){
+				List<Condition> conds = new ArrayList<>();
+				List<ValuePair> pairs = new ArrayList<>();
 			
-			for(Map.Entry<Integer, Integer> idPair : 
-				vlp.getConDistributionConditions(i).entrySet()
-			){
-				conds.add(new Condition(
-					model.nodeProp_getName(idPair.getKey()),
-					model.nodeProp_getRangeLabel(
-							idPair.getKey(), idPair.getValue())) 
-					);
-			}
+				for(Map.Entry<Integer, Integer> idPair : 
+					vlp.getConDistributionConditions(i).entrySet()
+				){
+					conds.add(new Condition(
+						model.nodeProp_getName(idPair.getKey()),
+						model.nodeProp_getRangeLabel(
+								idPair.getKey(), idPair.getValue())) 
+						);
+				}
 			
-			for(Map.Entry<Integer, Float> probPair : 
-				vlp.getConDistributionProbMap(i).entrySet()
-			){
-				pairs.add(new ValuePair(
-					vlp.getRangeLabel(probPair.getKey()), probPair.getValue())
-					);
+				addPairs(vlp, vlp.getConDistributionProbabilities(i), pairs);
+				distributions.add(new ConditionalDistList(pairs, conds));
 			}
-			distributions.add(new ConditionalDistList(pairs, conds));
 		}
 		
 		List<ValuePair> pairs = new ArrayList<>();
-		
-		for(Map.Entry<Integer, Float> keyPair : 
-			vlp.getDefaultDistribution().entrySet())
-		{
-			pairs.add(new ValuePair(
-					vlp.getRangeLabel(keyPair.getKey()), keyPair.getValue())
-					);
-		}
+		addPairs(vlp, vlp.getDefaultProbabilities(), pairs);
 		distributions.add(new DistributionList(pairs));
 	}
 	
+	/**
+	 * Add a conditional distribution for each listed row of a probability
+	 * table, reading the rows in place and looking up each dependency's 
+	 * name once
+	 */
+	private void 
+	addTableRows(PropertiesEditor model, ValuesListProperty<?> vlp, 
+			ConditionalProbabilityTable table) throws EditorException
+	{
+		String[] depNames = new String[table.dependencyCount()];
+		for(int i = 0; i < depNames.length; i++){
+			depNames[i] = model.nodeProp_getName(table.getDependency(i));
+		}
+		int[] rids = new int[depNames.length];
+		for(int row : table.listedRows()){
+			List<Condition> conds = new ArrayList<>(depNames.length);
+			List<ValuePair> pairs = new ArrayList<>();
+			table.assignment(row, rids);
+			for(int i = 0; i < depNames.length; i++){
+				int dep = table.getDependency(i);
+				conds.add(new Condition(depNames[i], 
+						model.nodeProp_getRangeLabel(dep, rids[i])));
+			}
+			addPairs(vlp, table.probabilities(row), pairs);
+			distributions.add(new ConditionalDistList(pairs, conds));
+		}
+	}
+	
+	/**
+	 * Add a label and value pair for each range in a distribution, 
+	 * in order of range ID
+	 */
+	private static void 
+	addPairs(ValuesListProperty<?> vlp, FloatBuffer probs, 
+			List<ValuePair> pairs) throws EditorException
+	{
+		for(int rid = 0; rid < probs.limit(); rid++){
+			float p = probs.get(rid);
+			if(!Float.isNaN(p)){
+				pairs.add(new ValuePair(vlp.getRangeLabel(rid), p));
+			}
+		}
+	}
+	
 	/**
 	 * Reattach this object with a {@link NodeProperty}, making its values
 	 * consistent with those in the new {@link PropertiesEditor}
@@ -154,11 +190,11 @@ public class UnivariatDistributionSettings implements Transferable {
 		vlp.setDistributionType(NodeProperty.DistType.UNIVARIAT);
 		
 		Map<Integer, Integer> conds = new HashMap<>();
-		Map<Integer, Float> rangeProbs = new HashMap<>();
 		
 		for(DistributionList dist : distributions){
 			conds.clear();
-			rangeProbs.clear();
+			float[] rangeProbs = 
+					Distribution.emptyProbabilities(vlp.getRangeIDBound());
 			
 			for(ValuePair pair : dist.values){
 				Integer rid = vlp.getRangeWithLabel(pair.Label);
@@ -167,20 +203,22 @@ public class UnivariatDistributionSettings implements Transferable {
 							+pair.Label
 							+"' in node property '"+vlp.getName()+"'");
 				}
-				rangeProbs.put(rid, pair.Value);
+				if(pair.Value != null){
+					rangeProbs[rid] = pair.Value;
+				}
 			}
 			if(dist instanceof ConditionalDistList){
 				ConditionalDistList cDist = (ConditionalDistList) dist;
 				for(Condition c : cDist.conditions){
 					Integer pid = model.search_nodePropWithName(c.Name);
-					if(!vlp.dependsOn(pid)){
-						vlp.addDependency(pid);
-					}
 					if(pid == null){
 						throw new IllegalArgumentException(
 								"There is no property with the given name: "
 								+c.Name);
 					}
+					if(!vlp.dependsOn(pid)){
+						vlp.addDependency(pid);
+					}
 					Integer rid = model.search_rangeWithLabel(pid, c.Value);
 					if(rid == null){
 						throw new IllegalArgumentException(
@@ -1,34 +1,105 @@
 package org.snrg_nyc.model.internal;
 
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.function.IntConsumer;
 
 import org.snrg_nyc.model.EditorException;
 import org.snrg_nyc.util.SimpleFactory;
+import org.snrg_nyc.util.SlotAllocator;
 
 
 public abstract class ValuesListProperty<T extends ListValue> extends NodeProperty {
 	private static final long serialVersionUID = 1L;
 	
+	/**
+	 * A probability for each range of a property, stored in an array
+	 * indexed by range ID.  Range IDs without a probability hold NaN.
+	 */
 	public static class Distribution {
-		protected Map<Integer, Float> probabilities;
+		protected float[] probabilities;
 		
 		public Distribution(Map<Integer, Float> probabilities){
-			this.probabilities = new HashMap<>(probabilities);
+			int size = 0;
+			for(int rid : probabilities.keySet()){
+				size = Math.max(size, rid + 1);
+			}
+			this.probabilities = emptyProbabilities(size);
+			for(Entry<Integer, Float> p : probabilities.entrySet()){
+				if(p.getValue() != null){
+					this.probabilities[p.getKey()] = p.getValue();
+				}
+			}
 		}
 		
-		/** @return A copy of the probabilities map */
+		/**
+		 * Create a distribution from an array of probabilities, which is
+		 * used directly rather than copied
+		 * @param probabilities The probability of each range ID, or NaN 
+		 * for range IDs that are not in the distribution
+		 */
+		public Distribution(float[] probabilities){
+			this.probabilities = probabilities;
+		}
+		
+		/** 
+		 * Make an array for {@link #Distribution(float[])} with no 
+		 * probabilities set
+		 * @param size One more than the highest range ID
+		 * @return An array of NaN
+		 */
+		public static float[] 
+		emptyProbabilities(int size){
+			float[] probs = new float[size];
+			Arrays.fill(probs, Float.NaN);
+			return probs;
+		}
+		
+		/** @return A copy of the probabilities, as a map of range IDs */
 		public Map<Integer, Float> getProbabilities() {
-			return new HashMap<>(probabilities);
+			Map<Integer, Float> map = new HashMap<>(probabilities.length * 2);
+			for(int rid = 0; rid < probabilities.length; rid++){
+				if(!Float.isNaN(probabilities[rid])){
+					map.put(rid, probabilities[rid]);
+				}
+			}
+			return map;
+		}
+		
+		/**
+		 * A read-only view of the probabilities, indexed by range ID, 
+		 * which does not copy them.  Range IDs that are not in the 
+		 * distribution hold NaN.
+		 * @return The probabilities
+		 */
+		public FloatBuffer probabilities(){
+			return FloatBuffer.wrap(probabilities).asReadOnlyBuffer();
+		}
+		
+		/**
+		 * @param rid A range ID
+		 * @return The probability of the range, or NaN if it has none
+		 */
+		public float getProbability(int rid){
+			if(rid < 0 || rid >= probabilities.length){
+				return Float.NaN;
+			}
+			return probabilities[rid];
 		}
 		
 		public void print(){
 			System.out.println("\tProbabilities");
-			for(Entry<Integer, Float> p : probabilities.entrySet()){
-				System.out.printf("\t\tValue: %d\tProbability: %.2f\n", p.getKey(), p.getValue());
+			for(int rid = 0; rid < probabilities.length; rid++){
+				if(!Float.isNaN(probabilities[rid])){
+					System.out.printf("\t\tValue: %d\tProbability: %.2f\n", 
+							rid, probabilities[rid]);
+				}
 			}
 		}
 	}
@@ -36,7 +107,16 @@ public abstract class ValuesListProperty<T extends ListValue> extends NodeProper
 	public static class ConditionalDistribution extends Distribution{
 		private Map<Integer, Integer> conditions;
 		
-		public ConditionalDistribution(Map<Integer, Integer> conditions, Map<Integer, Float> probabilities){
+		public ConditionalDistribution(Map<Integer, Integer> conditions, 
+				Map<Integer, Float> probabilities)
+		{
+			super(probabilities);
+			this.conditions = new HashMap<>(conditions);
+		}
+		
+		public ConditionalDistribution(Map<Integer, Integer> conditions, 
+				float[] probabilities)
+		{
 			super(probabilities);
 			this.conditions = new HashMap<>(conditions);
 		}
@@ -46,15 +126,27 @@ public abstract class ValuesListProperty<T extends ListValue> extends NodeProper
 			return new HashMap<>(conditions);
 		}
 		
+		/** @return The conditions map itself, which must not be changed */
+		Map<Integer, Integer> conditionsMap() {
+			return conditions;
+		}
+		
 		@Override
 		public void print(){
 			System.out.println("\tConditions: ");
 			for(Entry<Integer, Integer> c : conditions.entrySet()){
-				System.out.printf("\t\tProp ID: %d\tRange ID: %d\n", c.getKey(), c.getValue());
+				System.out.printf("\t\tProp ID: %d\tRange ID: %d\n", 
+						c.getKey(), c.getValue());
 			}
 			super.print();
 		}
 	}
+	/** 
+	 * The result of {@link #getMatchingConditional(int[], int[])} when the
+	 * default distribution applies
+	 */
+	public static final int DEFAULT_DISTRIBUTION = -1;
+	
 	protected List<T> values;
 	protected List<Integer> ids;
 	
@@ -63,6 +155,39 @@ public abstract class ValuesListProperty<T extends ListValue> extends NodeProper
 	private List<Integer> condOrder;
 	private Distribution defaultDist;
 	
+	/** 
+	 * The range ID of each label, built when it is first needed
+	 * @see #labelIndex()
+	 */
+	private transient Map<String, Integer> labelIndex;
+	
+	/** 
+	 * The conditional distribution for each assignment of the dependencies,
+	 * built when it is first needed
+	 */
+	private transient ConditionalLookup conditionalLookup;
+	
+	/**
+	 * The normalized, compiled distributions, built when they are first 
+	 * needed and thrown away whenever a distribution changes
+	 * @see #getCompiledDistributions()
+	 */
+	private transient CompiledDistributions compiled;
+	
+	/** 
+	 * The free and live IDs of the values and the conditional distributions,
+	 * built from the lists when they are first needed
+	 */
+	private transient SlotAllocator rangeSlots, conditionalSlots;
+	
+	/**
+	 * The conditional distributions as a dense table, when they are stored
+	 * that way instead of in the conditional distributions list
+	 * @see #useProbabilityTable(List)
+	 */
+	private ConditionalProbabilityTable probabilityTable;
+	private List<Integer> tableRows;
+	
 	public 
 	ValuesListProperty(String name, String desc, SimpleFactory<T> factory)
 			throws EditorException 
@@ -88,6 +213,9 @@ public abstract class ValuesListProperty<T extends ListValue> extends NodeProper
 	
 	public boolean 
 	distributionsAreSet(){
+		if(probabilityTable != null){
+			return defaultDist != null && !tableRows.isEmpty();
+		}
 		return(defaultDist != null && conDistributions.size() > 0);
 	}
 
@@ -101,7 +229,16 @@ public abstract class ValuesListProperty<T extends ListValue> extends NodeProper
 	 * @throws EditorException Thrown if the CID does not exist
 	 */
 	protected void assert_validCID(int cid) throws  EditorException{
-		if(!(cid >= 0 && cid <=conDistributions.size() && conDistributions.get(cid)!= null)){
+		if(probabilityTable != null){
+			if(!probabilityTable.isListed(cid)){
+				throw new EditorException(errorMessage+
+						"Invalid Conditional Distribution ID: "+cid);
+			}
+			return;
+		}
+		if(!(cid >= 0 && cid < conDistributions.size() 
+				&& conDistributions.get(cid)!= null))
+		{
 			throw new EditorException(errorMessage+
 					"Invalid Conditional Distribution ID: "+cid);
 		}
@@ -129,25 +266,13 @@ public abstract class ValuesListProperty<T extends ListValue> extends NodeProper
 	
 	public int 
 	addRange() throws EditorException{
-		int rid = -1;
 		if(distributionsAreSet()){
 			throw new EditorException(errorMessage+
 					"Cannot edit range labels once distributions are set");
 		}
-		int len = values.size();
-		
-		T newValue = valueFactory.build();
-		for(int i = 0; i < len; i++){
-			if(values.get(i) == null){
-				values.set(i, newValue);
-				rid = i;
-			}
-		}
-		if(rid == -1){
-			values.add(newValue);
-			rid = len;
-		}
+		int rid = rangeSlots().store(values, valueFactory.build());
 		ids.add(rid);
+		compiled = null;
 		return rid;
 	}
 	public void 
@@ -157,16 +282,50 @@ public abstract class ValuesListProperty<T extends ListValue> extends NodeProper
 					"Cannot edit range labels once distributions are set");
 		}
 		assert_validRID(rid);
+		String label = values.get(rid).getLabel();
+		if(labelIndex != null && label != null){
+			labelIndex.remove(label, rid);
+		}
 		values.set(rid, null);
-		ids.remove(rid);
+		rangeSlots().free(rid);
+		ids.remove(Integer.valueOf(rid));
+		compiled = null;
 	}
-	public Integer getRangeWithLabel(String label){
-		for(ListValue s : values){
-			if(s != null && s.labelIs(label)){
-				return values.indexOf(s);
+	private SlotAllocator
+	rangeSlots(){
+		if(rangeSlots == null){
+			rangeSlots = SlotAllocator.of(values);
+		}
+		return rangeSlots;
+	}
+	private SlotAllocator
+	conditionalSlots(){
+		if(conditionalSlots == null){
+			conditionalSlots = SlotAllocator.of(conDistributions);
+		}
+		return conditionalSlots;
+	}
+	/**
+	 * Get the map of labels to range IDs, building it from the values if
+	 * it has not been built yet.  If two ranges have the same label, 
+	 * the one with the lower range ID is kept.
+	 * @return The label index
+	 */
+	private Map<String, Integer> 
+	labelIndex(){
+		if(labelIndex == null){
+			labelIndex = new HashMap<>();
+			for(int rid = 0; rid < values.size(); rid++){
+				T value = values.get(rid);
+				if(value != null && value.getLabel() != null){
+					labelIndex.putIfAbsent(value.getLabel(), rid);
+				}
 			}
 		}
-		return null;
+		return labelIndex;
+	}
+	public Integer getRangeWithLabel(String label){
+		return labelIndex().get(label);
 	}
 	public String getRangeLabel(int rid) throws EditorException{
 		assert_validRID(rid);
@@ -178,15 +337,20 @@ public abstract class ValuesListProperty<T extends ListValue> extends NodeProper
 					"Cannot edit range labels once distributions are set");
 		}
 		assert_validRID(rid);
-		for(int rid2 : ids){
-			if(rid2 != rid && values.get(rid2).getLabel() != null
-			   && values.get(rid2).getLabel().equals(label))
-			{
-				throw new EditorException("Duplicate range label: "
-						+label);
-			}
+		Map<String, Integer> index = labelIndex();
+		Integer other = index.get(label);
+		if(other != null && other != rid){
+			throw new EditorException("Duplicate range label: "
+					+label);
+		}
+		ListValue value = values.get(rid);
+		if(value.getLabel() != null){
+			index.remove(value.getLabel(), rid);
+		}
+		value.setLabel(label);
+		if(value.getLabel() != null){
+			index.put(value.getLabel(), rid);
 		}
-		values.get(rid).setLabel(label);
 	}
 
 	public List<Integer> 
@@ -196,15 +360,39 @@ public abstract class ValuesListProperty<T extends ListValue> extends NodeProper
 		return rangeOrder;
 	}
 	
+	/**
+	 * Visit the range IDs in the order of {@link #getSortedRangeIDs()}, 
+	 * without copying them
+	 * @param action The action to run on each range ID
+	 */
+	public void forEachSortedRangeID(IntConsumer action){
+		for(int i = 0; i < ids.size(); i++){
+			action.accept(ids.get(i));
+		}
+	}
+	
 	public List<Integer> getUnSortedRangeIDs(){
 		return new ArrayList<>(ids);
 	}
 	
+	/**
+	 * @return One more than the highest range ID, which is the size of 
+	 * an array indexed by range ID
+	 */
+	public int getRangeIDBound(){
+		return values.size();
+	}
+	
 	@Override
 	public void useUniformDistribution(){
 		distType = DistType.UNIFORM;
 		defaultDist = null;
 		conDistributions = null;
+		conditionalSlots = null;
+		conditionalLookup = null;
+		compiled = null;
+		probabilityTable = null;
+		tableRows = null;
 	}
 	
 	public List<Integer> getConditionalDistributionIDs() throws EditorException{
@@ -213,17 +401,28 @@ public abstract class ValuesListProperty<T extends ListValue> extends NodeProper
 					"No conditional distributions in a distribution"
 					+ "of type "+distType.toString());
 		}
-		List<Integer> ls = new ArrayList<>();
-		for(int i = 0; i < conDistributions.size(); i++){
-			if(conDistributions.get(i) != null){
-				ls.add(i);
-			}
+		if(probabilityTable != null){
+			return new ArrayList<>(tableRows);
 		}
-		return ls;
+		return conditionalSlots().ids();
 	}
 	public List<Integer> getOrderedConditions(){
+		if(probabilityTable != null){
+			return Collections.unmodifiableList(tableRows);
+		}
 		return condOrder;
 	}
+	/**
+	 * Visit the conditional distribution IDs in the order of 
+	 * {@link #getOrderedConditions()}, without copying them
+	 * @param action The action to run on each conditional distribution ID
+	 */
+	public void forEachOrderedCondition(IntConsumer action){
+		List<Integer> order = probabilityTable != null ? tableRows : condOrder;
+		for(int i = 0; i < order.size(); i++){
+			action.accept(order.get(i));
+		}
+	}
 	/**
 	 * Get the dependency conditions for a conditional distribution.
 	 * @param cid The conditional distribution ID.
@@ -236,6 +435,9 @@ public abstract class ValuesListProperty<T extends ListValue> extends NodeProper
 					"There are no conditional distributions in a uniform distribution");
 		}
 		assert_validCID(cid);
+		if(probabilityTable != null){
+			return probabilityTable.conditions(cid);
+		}
 		return conDistributions.get(cid).getConditions();
 	}
 	/**
@@ -251,8 +453,41 @@ public abstract class ValuesListProperty<T extends ListValue> extends NodeProper
 					+ " of type "+distType.toString());
 		}
 		assert_validCID(cid);
+		if(probabilityTable != null){
+			FloatBuffer row = probabilityTable.probabilities(cid);
+			Map<Integer, Float> map = new HashMap<>(row.limit() * 2);
+			for(int rid = 0; rid < row.limit(); rid++){
+				if(!Float.isNaN(row.get(rid))){
+					map.put(rid, row.get(rid));
+				}
+			}
+			return map;
+		}
 		return conDistributions.get(cid).getProbabilities();
 	}
+	/**
+	 * Get the probabilities in a conditional distribution without copying
+	 * them
+	 * @param cid The conditional distribution
+	 * @return A read-only buffer of probabilities indexed by range ID
+	 * @throws EditorException Thrown if there is no conditional distribution
+	 * with the given cid
+	 * @see Distribution#probabilities()
+	 */
+	public FloatBuffer getConDistributionProbabilities(int cid)
+			throws EditorException
+	{
+		if(distType != DistType.UNIVARIAT){
+			throw new EditorException(errorMessage+
+					"There are no conditional distributions in a distribution"
+					+ " of type "+distType.toString());
+		}
+		assert_validCID(cid);
+		if(probabilityTable != null){
+			return probabilityTable.probabilities(cid);
+		}
+		return conDistributions.get(cid).probabilities();
+	}
 	/**
 	 * Check if the default distribution is set
 	 * @return True if the default distribution is not null, false otherwise.
@@ -272,6 +507,10 @@ public abstract class ValuesListProperty<T extends ListValue> extends NodeProper
 					+distType.toString());
 		}
 		defaultDist = distribution;
+		compiled = null;
+		if(probabilityTable != null){
+			probabilityTable.fillUnlisted(distribution.probabilities());
+		}
 	}
 	/**
 	 * Get the probabilities in the default distribution
@@ -293,22 +532,36 @@ public abstract class ValuesListProperty<T extends ListValue> extends NodeProper
 			return defaultDist.getProbabilities();
 		}
 	}
+	/**
+	 * Get the probabilities in the default distribution without copying them
+	 * @return A read-only buffer of probabilities indexed by range ID
+	 * @throws EditorException Thrown if the default distribution has not been
+	 * set
+	 * @see Distribution#probabilities()
+	 */
+	public FloatBuffer getDefaultProbabilities() throws EditorException{
+		if(distType != DistType.UNIVARIAT){
+			throw new EditorException(errorMessage+
+					"There is no default distribution on a distribution of "
+					+"type "+distType.toString());
+		}
+		if(defaultDist == null){
+			throw new EditorException(errorMessage+
+					"Default distribution was never set.");
+		}
+		return defaultDist.probabilities();
+	}
 	/**
 	 * Search for a range ID based on a label
 	 * @param label The String to search the range labels for
 	 * @return The rid of the range, or -1 if not found.
 	 */
 	public int searchRangeIDs(String label){
-		for(int i : getUnSortedRangeIDs()){
-			if(label.equals(values.get(i) )){
-				return i;
-			}
-		}
-		return -1;
+		Integer rid = getRangeWithLabel(label);
+		return rid == null ? -1 : rid;
 	}
 	public int 
 	addConditionalDistribution(ConditionalDistribution cd) throws EditorException{
-		int ID = -1;
 		if(conDistributions == null){
 			conDistributions = new ArrayList<>();
 		}
@@ -317,34 +570,256 @@ public abstract class ValuesListProperty<T extends ListValue> extends NodeProper
 					"Cannot add conditional distributions to "
 					+ "a distribution of type "+distType.toString());
 		}
-		int len = conDistributions.size();
-		for(int cid = 0; cid < len; cid ++){
-			if(conDistributions.get(cid) == null){
-				conDistributions.set(cid, cd);
-				ID = cid;
-			}
-		}
-		if(ID == -1){
-			conDistributions.add(cd);
-			ID = len;
-		}
+		expandProbabilityTable();
+		int ID = conditionalSlots().store(conDistributions, cd);
 		condOrder.add(ID);
+		compiled = null;
+		if(conditionalLookup != null){
+			conditionalLookup.added(ID, cd);
+		}
 		return ID;
 	}
+	/**
+	 * Add conditional distributions to the end of the list and the
+	 * condition order, in a single pass
+	 * @param cds The conditional distributions, in order
+	 * @return The ID of each new conditional distribution
+	 * @throws EditorException Thrown if the property does not use a
+	 * univariat distribution
+	 */
+	public List<Integer> 
+	addConditionalDistributions(List<ConditionalDistribution> cds)
+			throws EditorException
+	{
+		if(distType != DistType.UNIVARIAT){
+			throw new EditorException(errorMessage+
+					"Cannot add conditional distributions to "
+					+ "a distribution of type "+distType.toString());
+		}
+		if(conDistributions == null){
+			conDistributions = new ArrayList<>();
+		}
+		expandProbabilityTable();
+		List<Integer> cids = new ArrayList<>(cds.size());
+		SlotAllocator slots = conditionalSlots();
+		compiled = null;
+		for(ConditionalDistribution cd : cds){
+			int cid = slots.store(conDistributions, cd);
+			condOrder.add(cid);
+			cids.add(cid);
+			if(conditionalLookup != null){
+				conditionalLookup.added(cid, cd);
+			}
+		}
+		return cids;
+	}
 	public void 
 	removeConditionalDistribution(int cid) throws EditorException{
+		cid = expandedCID(cid);
 		assert_validCID(cid);
+		ConditionalDistribution old = conDistributions.get(cid);
 		conDistributions.set(cid, null);
+		conditionalSlots().free(cid);
 		condOrder.remove(condOrder.indexOf(cid));
+		compiled = null;
+		if(conditionalLookup != null){
+			conditionalLookup.changed(
+					old.conditionsMap(), condOrder, conDistributions);
+		}
 	}
 	public void setConditionalDistribution(int cid, ConditionalDistribution dist) throws EditorException{
+		cid = expandedCID(cid);
 		assert_validCID(cid);
+		ConditionalDistribution old = conDistributions.get(cid);
 		conDistributions.set(cid, dist);
+		compiled = null;
+		if(conditionalLookup != null){
+			conditionalLookup.changed(
+					old.conditionsMap(), condOrder, conDistributions);
+			conditionalLookup.changed(
+					dist.conditionsMap(), condOrder, conDistributions);
+		}
 	}
 	public List<ConditionalDistribution> getConditionalDistributions(){
+		expandProbabilityTable();
 		return conDistributions;
 	}
+	/**
+	 * Remove every conditional distribution
+	 */
+	public void clearConditionalDistributions(){
+		if(conDistributions != null){
+			conDistributions.clear();
+		}
+		conditionalSlots = null;
+		condOrder.clear();
+		conditionalLookup = null;
+		compiled = null;
+		probabilityTable = null;
+		tableRows = null;
+	}
+	/**
+	 * Store the conditional distributions as a 
+	 * {@link ConditionalProbabilityTable}, with a row of probabilities for
+	 * every assignment of the dependencies, instead of as a list of 
+	 * conditionals.  This suits properties that have a conditional for 
+	 * (nearly) every assignment, which then take one array rather than a 
+	 * distribution and conditions map each.
+	 * <p>
+	 * While the table is used, the conditional distribution IDs are the row
+	 * numbers of the assignments that had a conditional, each with a 
+	 * condition on every dependency.  Changing the conditional 
+	 * distributions converts them back to a list first, through 
+	 * {@link #expandProbabilityTable()}, which gives them new IDs; a row 
+	 * number given to {@link #removeConditionalDistribution(int)} or 
+	 * {@link #setConditionalDistribution(int, ConditionalDistribution)} is 
+	 * translated to the new ID of its row.
+	 * @param depProps The properties this one depends on, in the order of
+	 * {@link #getDependencies()}
+	 * @throws EditorException Thrown if the default distribution is not set,
+	 * or if the table would be too large
+	 */
+	public void useProbabilityTable(List<ValuesListProperty<?>> depProps) 
+			throws EditorException
+	{
+		expandProbabilityTable();
+		ConditionalProbabilityTable table = 
+				ConditionalProbabilityTable.of(this, depProps);
+		clearConditionalDistributions();
+		probabilityTable = table;
+		tableRows = table.listedRows();
+	}
+	/**
+	 * @return The table the conditional distributions are stored in, or 
+	 * null if they are stored as a list
+	 * @see #useProbabilityTable(List)
+	 */
+	public ConditionalProbabilityTable getProbabilityTable(){
+		return probabilityTable;
+	}
+	/**
+	 * Convert the probability table back to a list of conditional 
+	 * distributions, one for each listed row, in order of row.  This does 
+	 * nothing if the table is not used.
+	 */
+	public void expandProbabilityTable(){
+		if(probabilityTable == null){
+			return;
+		}
+		ConditionalProbabilityTable table = probabilityTable;
+		probabilityTable = null;
+		tableRows = null;
+		compiled = null;
+		SlotAllocator slots = conditionalSlots();
+		for(ConditionalDistribution cd : table.toConditionals()){
+			condOrder.add(slots.store(conDistributions, cd));
+		}
+	}
+	/**
+	 * Convert the probability table back to a list of conditional 
+	 * distributions, and translate a conditional distribution ID given while 
+	 * the table was used, which is a row number, into the ID its row was 
+	 * given in the list.  IDs are returned as they are if the table is not
+	 * used.
+	 * @param cid The conditional distribution ID
+	 * @return The ID of the same conditional distribution in the list
+	 * @throws EditorException Thrown if the table is used and the row is not
+	 * listed
+	 */
+	private int expandedCID(int cid) throws EditorException{
+		if(probabilityTable == null){
+			return cid;
+		}
+		assert_validCID(cid);
+		int rank = Collections.binarySearch(tableRows, cid);
+		int start = condOrder.size();
+		expandProbabilityTable();
+		return condOrder.get(start + rank);
+	}
+	/**
+	 * Find the conditional distribution that applies to an assignment of 
+	 * a range to every dependency: the first one in the condition order 
+	 * whose conditions are all met.  This is a single table lookup, unless 
+	 * the dependencies or their ranges changed since the last call.
+	 * @param rids The range ID of each dependency, in the order of 
+	 * {@link #getDependencies()}
+	 * @param radices The {@link #getRangeIDBound()} of each dependency
+	 * @return The ID of the conditional distribution, or 
+	 * {@link #DEFAULT_DISTRIBUTION} if the default distribution applies
+	 * @throws EditorException Thrown if the property does not use a 
+	 * univariat distribution, or if a range ID is out of bounds
+	 */
+	public int getMatchingConditional(int[] rids, int[] radices) 
+			throws EditorException
+	{
+		if(distType != DistType.UNIVARIAT){
+			throw new EditorException(errorMessage+
+					"No conditional distributions in a distribution "
+					+ "of type "+distType.toString());
+		}
+		if(rids.length != dependencyCount || radices.length != rids.length){
+			throw new EditorException(errorMessage+
+					"Expected a range for each of the "+dependencyCount
+					+" dependencies, got "+rids.length);
+		}
+		for(int i = 0; i < rids.length; i++){
+			if(rids[i] < 0 || rids[i] >= radices[i]){
+				throw new EditorException(errorMessage+"Range ID "+rids[i]
+						+" is out of bounds for dependency "+dependencies[i]);
+			}
+		}
+		if(probabilityTable != null){
+			if(probabilityTable.matches(this, radices)){
+				int row = probabilityTable.row(rids);
+				return probabilityTable.isListed(row) 
+						? row 
+						: DEFAULT_DISTRIBUTION;
+			}
+			expandProbabilityTable();
+		}
+		if(conditionalLookup == null 
+		   || !conditionalLookup.matches(this, radices))
+		{
+			conditionalLookup = ConditionalLookup.build(
+					getDependencyArray(), radices, condOrder, conDistributions);
+			if(conditionalLookup == null){
+				//Too many assignments for a table, so check each conditional
+				return scanConditionals(rids);
+			}
+		}
+		return conditionalLookup.get(rids);
+	}
+	private int scanConditionals(int[] rids){
+		for(int cid : condOrder){
+			boolean match = true;
+			for(Entry<Integer, Integer> c : 
+				conDistributions.get(cid).conditionsMap().entrySet())
+			{
+				int i = dependencyIndex(c.getKey());
+				if(i == -1 || rids[i] != c.getValue()){
+					match = false;
+					break;
+				}
+			}
+			if(match){
+				return cid;
+			}
+		}
+		return DEFAULT_DISTRIBUTION;
+	}
 	public void setConditionsOrder(List<Integer> order) throws EditorException{
+		if(probabilityTable != null){
+			//The rows have conditions on every dependency, so no two of
+			//them overlap and their order does not matter
+			if(order.size() != tableRows.size() 
+					|| !tableRows.containsAll(order))
+			{
+				throw new EditorException(errorMessage+
+						"The new conditions order does not match "
+						+ "the conditional distributions");
+			}
+			return;
+		}
 		if(condOrder.size() != order.size()){
 			throw new EditorException(errorMessage+
 					"The new conditions order does not have "
@@ -356,7 +831,37 @@ public abstract class ValuesListProperty<T extends ListValue> extends NodeProper
 					"Unknown conditional distribution ID given: "+cid);
 			}
 		}
-		condOrder = order;
+		condOrder = new ArrayList<>(order);
+		compiled = null;
+		if(conditionalLookup != null){
+			conditionalLookup.fill(condOrder, conDistributions);
+		}
+	}
+	
+	@Override
+	public void setDistributionType(DistType type){
+		super.setDistributionType(type);
+		compiled = null;
+	}
+	
+	/**
+	 * Get the distributions normalized and compiled into an alias table, 
+	 * compiling them if they changed since the last call.  Drawing a range 
+	 * or reading a normalized probability from them takes constant time.
+	 * <p>
+	 * The arrays given to {@link Distribution#Distribution(float[])} are not
+	 * copied, so they must not be changed once the distribution is set.
+	 * @return The compiled distributions
+	 * @throws EditorException Thrown if there is no default or uniform 
+	 * distribution
+	 */
+	public CompiledDistributions getCompiledDistributions()
+			throws EditorException
+	{
+		if(compiled == null){
+			compiled = CompiledDistributions.of(this);
+		}
+		return compiled;
 	}
 	
 	@Override
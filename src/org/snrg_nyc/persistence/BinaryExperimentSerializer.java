@@ -0,0 +1,940 @@
+package org.snrg_nyc.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.internal.LazilyParsedNumber;
+import com.google.gson.internal.Streams;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Stores each experiment as a single compact binary file in
+ * {@link JsonFileSerializer#savePath}.
+ * <p>
+ * Entries are written by Gson as the same JSON that {@link JsonFileSerializer}
+ * writes, and encoded in binary as they are written, without building a
+ * JSON tree: every string (property names,
+ * range labels and field names) is stored once in a string table and
+ * referred to by index, integers are stored as variable length integers, and
+ * floats keep their 32 bit form.  Arrays of objects that all have the same
+ * fields, such as the "DistributionSampleList" of a distribution, are stored
+ * by column, so the probabilities become a packed array of floats.  Decoding
+ * gives back the same JSON tree, so converting an experiment to JSON
+ * (see {@link #exportJson}) gives exactly the files that
+ * {@link JsonFileSerializer} would have written.
+ * <p>
+ * Layout (all fixed size numbers big-endian, "varint" is an unsigned
+ * LEB128 integer):
+ * <pre>
+ * int    magic (0x534E5242, "SNRB")
+ * short  format version
+ * varint string count, then each string as a varint length and UTF-8 bytes
+ * varint entry count, then each entry as a varint string index for its ID
+ *        and its encoded JSON tree
+ * </pre>
+ * @author Devin Hastings
+ */
+public class BinaryExperimentSerializer extends JsonSerializer {
+	public static final String extension = ".snrgb";
+	static final int magic = 0x534E5242;
+	static final short version = 1;
+
+	//Value tags
+	private static final byte NULL = 0;
+	private static final byte TRUE = 1;
+	private static final byte FALSE = 2;
+	private static final byte INT = 3;
+	private static final byte FLOAT = 4;
+	private static final byte DOUBLE = 5;
+	private static final byte NUMBER = 6;
+	private static final byte STRING = 7;
+	private static final byte ARRAY = 8;
+	private static final byte OBJECT = 9;
+	private static final byte TABLE = 10;
+
+	//Column types of a table
+	private static final byte COLUMN_FLOAT = 0;
+	private static final byte COLUMN_STRING = 1;
+	private static final byte COLUMN_ANY = 2;
+
+	private Path binaryFile;
+	private Map<String, PersistentDataEntry> entries;
+
+	public BinaryExperimentSerializer(GsonBuilder gBuilder) {
+		super(gBuilder);
+	}
+
+	/**
+	 * Get the binary file of an experiment
+	 * @param name The name of the experiment
+	 * @return The path to the experiment's binary file
+	 */
+	public static Path
+	binaryPath(String name){
+		return JsonFileSerializer.savePath.resolve(name+extension);
+	}
+
+	@Override
+	public Map<String, Transferable>
+	loadExperiment(String name) throws PersistenceException {
+		Map<String, JsonElement> trees = readTrees(name);
+		List<String> ids = new ArrayList<>(trees.keySet());
+		List<Callable<Transferable>> tasks = new ArrayList<>(ids.size());
+		for(String id : ids){
+			JsonElement tree = trees.get(id);
+			tasks.add(() -> bind(id, tree));
+		}
+		List<Transferable> objects;
+		try {
+			objects = runTasks(tasks);
+		}
+		catch(RuntimeException e){
+			throw new PersistenceException(e.getLocalizedMessage());
+		}
+		Map<String, Transferable> loaded = new HashMap<>();
+		for(int i = 0; i < ids.size(); i++){
+			if(objects.get(i) != null){
+				loaded.put(ids.get(i), objects.get(i));
+			}
+		}
+		return loaded;
+	}
+
+	private Transferable
+	bind(String id, JsonElement tree) throws PersistenceException {
+		try {
+			return gson().fromJson(tree, PersistentDataEntry.class).getObject();
+		}
+		catch (JsonNoClassException e) {
+			System.err.println("Unrecognized type in "+id+": "+e.getMessage());
+			return null;
+		}
+		catch(RuntimeException e){
+			e.printStackTrace();
+			throw new PersistenceException("Failed to read "+id
+					+" with "+e.getClass().getSimpleName());
+		}
+	}
+
+	/**
+	 * Write an experiment as JSON files in the layout used by
+	 * {@link JsonFileSerializer}, using this serializer's Gson settings.
+	 * @param name The name of the experiment
+	 * @param dir The directory to write the entry files to, which is
+	 * created if it does not exist
+	 * @throws PersistenceException Thrown if the experiment could not be
+	 * read or the files could not be written
+	 */
+	public void
+	exportJson(String name, Path dir) throws PersistenceException {
+		Map<String, JsonElement> trees = readTrees(name);
+		try {
+			Files.createDirectories(dir);
+			for(Map.Entry<String, JsonElement> e : trees.entrySet()){
+				Path file = dir.resolve(e.getKey()+".json");
+				try(Writer w = 
+						Files.newBufferedWriter(file, StandardCharsets.UTF_8))
+				{
+					gson().toJson(e.getValue(), w);
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new PersistenceException("Error while exporting experiment '"
+					+name+"': "+e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Read an experiment saved with {@link JsonFileSerializer} and store it
+	 * in binary form.  The entry files are parsed as JSON trees, one at a
+	 * time, without being bound to their classes.
+	 * @param name The name of the experiment
+	 * @param dir The directory holding the entry files
+	 * @throws PersistenceException Thrown if the files could not be read or
+	 * the binary file could not be written
+	 */
+	public void
+	importJson(String name, Path dir) throws PersistenceException {
+		Map<String, Path> files = new TreeMap<>();
+		try(Stream<Path> list = Files.list(dir)){
+			for(Path p : (Iterable<Path>) list::iterator){
+				if(JsonFileSerializer.isEntryFile(p)){
+					files.put(JsonFileSerializer.entryName(p), p);
+				}
+			}
+			Encoder enc = new Encoder();
+			enc.writeVarint(files.size());
+			for(Map.Entry<String, Path> e : files.entrySet()){
+				try(Reader r = new InputStreamReader(
+						JsonFileSerializer.openEntry(e.getValue()), 
+						StandardCharsets.UTF_8))
+				{
+					enc.writeString(e.getKey());
+					Streams.write(new JsonParser().parse(r), enc);
+				}
+			}
+			writeFile(binaryPath(name), enc);
+		}
+		catch (IOException | RuntimeException e) {
+			throw new PersistenceException("Error while importing experiment '"
+					+name+"': "+e.getLocalizedMessage());
+		}
+	}
+
+	@Override
+	public List<String>
+	savedExperiments() {
+		try(Stream<Path> files = Files.list(JsonFileSerializer.savePath)){
+			return files.map(p -> p.getFileName().toString())
+			            .filter(f -> f.endsWith(extension)
+			                         && !f.startsWith("."))
+			            .map(f -> f.substring(0,
+			                         f.length() - extension.length()))
+			            .collect(Collectors.toList());
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			return new ArrayList<>();
+		}
+	}
+
+	@Override
+	protected void
+	validateEnvironment(String name) throws PersistenceException {
+		binaryFile = binaryPath(name);
+		System.out.println("Saving to "+binaryFile.toString());
+		entries = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Keep an entry until the experiment is committed.  The strings of
+	 * every entry share one table, so the entries are encoded one after
+	 * another, in order of ID, when the file is written.
+	 */
+	@Override
+	protected void
+	storeEntry(String name, PersistentDataEntry pde)
+			throws PersistenceException
+	{
+		entries.put(name, pde);
+	}
+
+	@Override
+	protected void
+	commitExperiment(String name) throws PersistenceException {
+		try {
+			Map<String, PersistentDataEntry> sorted = new TreeMap<>(entries);
+			Encoder enc = new Encoder();
+			enc.writeVarint(sorted.size());
+			for(Map.Entry<String, PersistentDataEntry> e : sorted.entrySet()){
+				enc.writeString(e.getKey());
+				gson().toJson(e.getValue(), PersistentDataEntry.class, enc);
+			}
+			writeFile(binaryFile, enc);
+		}
+		catch (IOException | RuntimeException e) {
+			throw new PersistenceException("Error while writing experiment '"
+					+name+"': "+e.getLocalizedMessage());
+		}
+		finally {
+			entries = null;
+		}
+	}
+
+	@Override
+	protected void
+	abortExperiment(String name){
+		entries = null;
+	}
+
+	/**
+	 * Replace a file atomically with the string table and entries of an 
+	 * encoder
+	 */
+	private static void
+	writeFile(Path file, Encoder enc) throws IOException {
+		Path tmp = JsonFileSerializer.newStagingFile(
+				file.toAbsolutePath().getParent(), "."+file.getFileName(),
+				".tmp");
+		try {
+			try(DataOutputStream out = new DataOutputStream(
+					Files.newOutputStream(tmp,
+							StandardOpenOption.TRUNCATE_EXISTING)))
+			{
+				out.writeInt(magic);
+				out.writeShort(version);
+				ByteArrayOutputStream table = new ByteArrayOutputStream();
+				Encoder.writeVarint(table, enc.strings.size());
+				for(String s : enc.strings.keySet()){
+					byte[] b = s.getBytes(StandardCharsets.UTF_8);
+					Encoder.writeVarint(table, b.length);
+					table.write(b);
+				}
+				table.writeTo(out);
+				enc.bytes.writeTo(out);
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Read and decode every entry of an experiment as a JSON tree
+	 */
+	static Map<String, JsonElement>
+	readTrees(String name) throws PersistenceException {
+		Path p = binaryPath(name);
+		if(!Files.exists(p)){
+			throw new PersistenceException("No experiment with name: "+name);
+		}
+		ByteBuffer data;
+		try(FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)){
+			if(ch.size() > Integer.MAX_VALUE){
+				throw new PersistenceException(p.getFileName()+" is "+ch.size()
+						+" bytes, more than a binary experiment can hold");
+			}
+			data = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		}
+		catch (IOException e) {
+			throw new PersistenceException("Failed to open "+p.getFileName()
+					+": "+e.getLocalizedMessage());
+		}
+		try {
+			if(data.getInt() != magic){
+				throw new PersistenceException(p.getFileName()
+						+" is not a binary experiment");
+			}
+			short v = data.getShort();
+			if(v != version){
+				throw new PersistenceException("Unsupported format version "
+						+v+" in "+p.getFileName());
+			}
+			Decoder dec = new Decoder(data);
+			int count = dec.readVarint();
+			Map<String, JsonElement> trees = new LinkedHashMap<>();
+			for(int i = 0; i < count; i++){
+				String id = dec.readString();
+				trees.put(id, dec.read());
+			}
+			return trees;
+		}
+		catch(BufferUnderflowException | IllegalArgumentException
+		      | IndexOutOfBoundsException e)
+		{
+			throw new PersistenceException("Corrupt experiment file "
+					+p.getFileName()+": "+e.toString());
+		}
+	}
+
+	/**
+	 * Encodes JSON as Gson writes it, collecting its strings into a table,
+	 * so an entry is encoded without building its JSON tree.
+	 * <p>
+	 * Each object and array that has been begun keeps the encoding of its
+	 * values so far.  An array keeps the objects it holds unencoded while
+	 * they all have the same fields, so that when it ends it can be stored
+	 * by column; anything else makes it encode them in place.
+	 */
+	private static class Encoder extends JsonWriter {
+		/** Nothing is written as text, so this is never used */
+		private static final Writer unwritable = new Writer(){
+			@Override
+			public void
+			write(char[] cbuf, int off, int len){
+				throw new AssertionError();
+			}
+			@Override
+			public void flush(){}
+			@Override
+			public void close(){}
+		};
+
+		final Map<String, Integer> strings = new LinkedHashMap<>();
+		final Buffer bytes = new Buffer(1 << 16);
+		/** The objects and arrays that have been begun and not ended */
+		private final Deque<Frame> open = new ArrayDeque<>();
+
+		Encoder(){
+			super(unwritable);
+		}
+
+		/**
+		 * A byte stream whose bytes can be read back in place
+		 */
+		static class Buffer extends ByteArrayOutputStream {
+			Buffer(int size){
+				super(size);
+			}
+
+			byte
+			at(int i){
+				return buf[i];
+			}
+
+			void
+			copyTo(ByteArrayOutputStream out, int from, int to){
+				out.write(buf, from, to - from);
+			}
+		}
+
+		/**
+		 * An object or array that has been begun and not ended
+		 */
+		static class Frame {
+			final boolean array;
+			/**
+			 * The string index of the field holding this, if it is in an
+			 * object
+			 */
+			final int fieldName;
+			final Buffer bytes = new Buffer(32);
+			/** The number of values so far */
+			int count;
+			/** For an object, the field name of the next value */
+			String name;
+			/** For an object, the string index of each field */
+			int[] names = new int[4];
+			/** For an object, where each value starts in the bytes */
+			int[] starts = new int[4];
+			/** For an array, its objects while it could be stored by column */
+			List<Frame> rows;
+
+			Frame(boolean array, int fieldName){
+				this.array = array;
+				this.fieldName = fieldName;
+				if(array){
+					rows = new ArrayList<>();
+				}
+			}
+
+			void
+			addField(int name, int start){
+				if(count == names.length){
+					names = Arrays.copyOf(names, count * 2);
+					starts = Arrays.copyOf(starts, count * 2);
+				}
+				names[count] = name;
+				starts[count++] = start;
+			}
+
+			int
+			end(int field){
+				return field + 1 < count ? starts[field + 1] : bytes.size();
+			}
+
+			boolean
+			sameFields(Frame other){
+				if(count != other.count){
+					return false;
+				}
+				for(int i = 0; i < count; i++){
+					if(names[i] != other.names[i]){
+						return false;
+					}
+				}
+				return true;
+			}
+
+			/**
+			 * Encode the objects this array was keeping, and stop keeping them
+			 */
+			void
+			encodeRows(){
+				if(rows != null){
+					for(Frame row : rows){
+						row.encode(bytes);
+					}
+					rows = null;
+				}
+			}
+
+			void
+			encode(ByteArrayOutputStream out){
+				if(array && rows != null && rows.size() >= 2){
+					encodeTable(out);
+					return;
+				}
+				encodeRows();
+				out.write(array ? ARRAY : OBJECT);
+				writeVarint(out, count);
+				if(array){
+					bytes.copyTo(out, 0, bytes.size());
+					return;
+				}
+				for(int i = 0; i < count; i++){
+					writeVarint(out, names[i]);
+					bytes.copyTo(out, starts[i], end(i));
+				}
+			}
+
+			void
+			encodeTable(ByteArrayOutputStream out){
+				Frame first = rows.get(0);
+				out.write(TABLE);
+				writeVarint(out, rows.size());
+				writeVarint(out, first.count);
+				for(int i = 0; i < first.count; i++){
+					writeVarint(out, first.names[i]);
+				}
+				for(int i = 0; i < first.count; i++){
+					boolean floats = true;
+					boolean strings = true;
+					for(Frame row : rows){
+						byte tag = row.bytes.at(row.starts[i]);
+						floats &= tag == FLOAT;
+						strings &= tag == STRING;
+					}
+					//Packed columns leave out each value's tag
+					int skip = floats || strings ? 1 : 0;
+					out.write(floats ? COLUMN_FLOAT 
+							: strings ? COLUMN_STRING 
+							: COLUMN_ANY);
+					for(Frame row : rows){
+						row.bytes.copyTo(out, row.starts[i] + skip, row.end(i));
+					}
+				}
+			}
+		}
+
+		static void
+		writeVarint(ByteArrayOutputStream out, long v){
+			while((v & ~0x7FL) != 0){
+				out.write((int) ((v & 0x7F) | 0x80));
+				v >>>= 7;
+			}
+			out.write((int) v);
+		}
+
+		static void
+		writeInt(ByteArrayOutputStream out, int bits){
+			out.write(bits >>> 24);
+			out.write(bits >>> 16);
+			out.write(bits >>> 8);
+			out.write(bits);
+		}
+
+		void
+		writeVarint(long v){
+			writeVarint(bytes, v);
+		}
+
+		void
+		writeString(String s){
+			writeVarint(index(s));
+		}
+
+		int
+		index(String s){
+			Integer index = strings.get(s);
+			if(index == null){
+				index = strings.size();
+				strings.put(s, index);
+			}
+			return index;
+		}
+
+		/**
+		 * Start a value in the object or array that holds it, or at the top
+		 * level
+		 * @param tag The value's tag, which is written
+		 * @return The buffer to write the rest of the value to
+		 */
+		private Buffer
+		start(byte tag){
+			Frame holder = open.peek();
+			Buffer out = bytes;
+			if(holder != null){
+				out = holder.bytes;
+				if(holder.array){
+					holder.encodeRows();
+					holder.count++;
+				}
+				else {
+					holder.addField(index(fieldName(holder)), out.size());
+				}
+			}
+			out.write(tag);
+			return out;
+		}
+
+		private static String
+		fieldName(Frame holder){
+			if(holder.name == null){
+				throw new IllegalStateException(
+						"A value in an object needs a name");
+			}
+			String name = holder.name;
+			holder.name = null;
+			return name;
+		}
+
+		private void
+		begin(boolean array){
+			Frame holder = open.peek();
+			int fieldName = holder != null && !holder.array
+					? index(fieldName(holder)) : -1;
+			open.push(new Frame(array, fieldName));
+		}
+
+		private void
+		end(boolean array){
+			Frame f = open.peek();
+			if(f == null || f.array != array || f.name != null){
+				throw new IllegalStateException("Nesting problem");
+			}
+			open.pop();
+			Frame holder = open.peek();
+			if(holder == null){
+				f.encode(bytes);
+			}
+			else if(!holder.array){
+				holder.addField(f.fieldName, holder.bytes.size());
+				f.encode(holder.bytes);
+			}
+			else if(!f.array && holder.rows != null
+			        && (holder.rows.isEmpty() 
+			            || holder.rows.get(0).sameFields(f)))
+			{
+				holder.rows.add(f);
+				holder.count++;
+			}
+			else {
+				holder.encodeRows();
+				holder.count++;
+				f.encode(holder.bytes);
+			}
+		}
+
+		@Override
+		public JsonWriter
+		beginArray(){
+			begin(true);
+			return this;
+		}
+
+		@Override
+		public JsonWriter
+		endArray(){
+			end(true);
+			return this;
+		}
+
+		@Override
+		public JsonWriter
+		beginObject(){
+			begin(false);
+			return this;
+		}
+
+		@Override
+		public JsonWriter
+		endObject(){
+			end(false);
+			return this;
+		}
+
+		@Override
+		public JsonWriter
+		name(String name){
+			Frame holder = open.peek();
+			if(name == null || holder == null || holder.array 
+					|| holder.name != null)
+			{
+				throw new IllegalStateException("Unexpected name: "+name);
+			}
+			holder.name = name;
+			return this;
+		}
+
+		@Override
+		public JsonWriter
+		nullValue(){
+			Frame holder = open.peek();
+			if(holder != null && !holder.array && !getSerializeNulls()){
+				//Fields with null values are left out, as in a JSON tree
+				fieldName(holder);
+				return this;
+			}
+			start(NULL);
+			return this;
+		}
+
+		@Override
+		public JsonWriter
+		value(String value){
+			if(value == null){
+				return nullValue();
+			}
+			writeVarint(start(STRING), index(value));
+			return this;
+		}
+
+		@Override
+		public JsonWriter
+		jsonValue(String value){
+			throw new UnsupportedOperationException(
+					"Raw JSON cannot be encoded in binary");
+		}
+
+		@Override
+		public JsonWriter
+		value(boolean value){
+			start(value ? TRUE : FALSE);
+			return this;
+		}
+
+		@Override
+		public JsonWriter
+		value(Boolean value){
+			return value == null ? nullValue() : value(value.booleanValue());
+		}
+
+		@Override
+		public JsonWriter
+		value(double value){
+			return value(Double.valueOf(value));
+		}
+
+		@Override
+		public JsonWriter
+		value(long value){
+			return value(Long.valueOf(value));
+		}
+
+		@Override
+		public JsonWriter
+		value(Number value){
+			if(value == null){
+				return nullValue();
+			}
+			double d = value.doubleValue();
+			if(!isLenient() && (Double.isNaN(d) || Double.isInfinite(d))){
+				throw new IllegalArgumentException(
+						"JSON forbids NaN and infinities: "+value);
+			}
+			Number n = canonical(value);
+			if(n instanceof Integer || n instanceof Long
+			   || n instanceof Short || n instanceof Byte)
+			{
+				long v = n.longValue();
+				writeVarint(start(INT), (v << 1) ^ (v >> 63));
+			}
+			else if(n instanceof Float){
+				writeInt(start(FLOAT), Float.floatToRawIntBits(n.floatValue()));
+			}
+			else if(n instanceof Double){
+				Buffer out = start(DOUBLE);
+				long bits = Double.doubleToRawLongBits(n.doubleValue());
+				writeInt(out, (int) (bits >>> 32));
+				writeInt(out, (int) bits);
+			}
+			else {
+				//Parsed or arbitrary precision numbers keep their text
+				writeVarint(start(NUMBER), index(n.toString()));
+			}
+			return this;
+		}
+
+		/**
+		 * Numbers parsed from text are kept as integers or floats when
+		 * those print back as the same text, so they can be packed.
+		 */
+		static Number
+		canonical(Number n){
+			if(!(n instanceof LazilyParsedNumber)){
+				return n;
+			}
+			String text = n.toString();
+			try {
+				long l = Long.parseLong(text);
+				if(Long.toString(l).equals(text)){
+					return l;
+				}
+			}
+			catch(NumberFormatException e){}
+			try {
+				float f = Float.parseFloat(text);
+				if(Float.toString(f).equals(text)){
+					return f;
+				}
+			}
+			catch(NumberFormatException e){}
+			return n;
+		}
+
+		@Override
+		public void
+		flush(){}
+
+		@Override
+		public void
+		close(){
+			if(!open.isEmpty()){
+				throw new IllegalStateException("Incomplete document");
+			}
+		}
+	}
+
+	/**
+	 * Decodes JSON trees written by an {@link Encoder}
+	 */
+	private static class Decoder {
+		private final ByteBuffer data;
+		private final String[] strings;
+
+		Decoder(ByteBuffer data){
+			this.data = data;
+			strings = new String[readVarint()];
+			for(int i = 0; i < strings.length; i++){
+				byte[] b = new byte[readVarint()];
+				data.get(b);
+				strings[i] = new String(b, StandardCharsets.UTF_8);
+			}
+		}
+
+		long
+		readVarLong(){
+			long v = 0;
+			for(int shift = 0; shift < 64; shift += 7){
+				byte b = data.get();
+				v |= (long) (b & 0x7F) << shift;
+				if(b >= 0){
+					return v;
+				}
+			}
+			throw new IllegalArgumentException("Malformed varint");
+		}
+
+		int
+		readVarint(){
+			long v = readVarLong();
+			if(v < 0 || v > Integer.MAX_VALUE){
+				throw new IllegalArgumentException("Count out of range: "+v);
+			}
+			return (int) v;
+		}
+
+		String
+		readString(){
+			return strings[readVarint()];
+		}
+
+		JsonElement
+		read(){
+			byte tag = data.get();
+			switch(tag){
+			case NULL:
+				return JsonNull.INSTANCE;
+			case TRUE:
+				return new JsonPrimitive(true);
+			case FALSE:
+				return new JsonPrimitive(false);
+			case INT:
+				long z = readVarLong();
+				long v = (z >>> 1) ^ -(z & 1);
+				if(v == (int) v){
+					return new JsonPrimitive((int) v);
+				}
+				return new JsonPrimitive(v);
+			case FLOAT:
+				return new JsonPrimitive(data.getFloat());
+			case DOUBLE:
+				return new JsonPrimitive(data.getDouble());
+			case NUMBER:
+				return new JsonPrimitive(new LazilyParsedNumber(readString()));
+			case STRING:
+				return new JsonPrimitive(readString());
+			case ARRAY:
+				JsonArray a = new JsonArray();
+				for(int i = readVarint(); i > 0; i--){
+					a.add(read());
+				}
+				return a;
+			case OBJECT:
+				JsonObject o = new JsonObject();
+				for(int i = readVarint(); i > 0; i--){
+					String name = readString();
+					o.add(name, read());
+				}
+				return o;
+			case TABLE:
+				return readTable();
+			default:
+				throw new IllegalArgumentException("Unknown tag "+tag);
+			}
+		}
+
+		JsonArray
+		readTable(){
+			int rows = readVarint();
+			String[] fields = new String[readVarint()];
+			for(int i = 0; i < fields.length; i++){
+				fields[i] = readString();
+			}
+			JsonObject[] objects = new JsonObject[rows];
+			for(int r = 0; r < rows; r++){
+				objects[r] = new JsonObject();
+			}
+			for(String f : fields){
+				byte type = data.get();
+				for(JsonObject o : objects){
+					switch(type){
+					case COLUMN_FLOAT:
+						o.add(f, new JsonPrimitive(data.getFloat()));
+						break;
+					case COLUMN_STRING:
+						o.add(f, new JsonPrimitive(readString()));
+						break;
+					case COLUMN_ANY:
+						o.add(f, read());
+						break;
+					default:
+						throw new IllegalArgumentException(
+								"Unknown column type "+type);
+					}
+				}
+			}
+			JsonArray a = new JsonArray();
+			for(JsonObject o : objects){
+				a.add(o);
+			}
+			return a;
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package org.snrg_nyc.persistence;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A record of the content hash and size of every entry file in an
+ * experiment directory, used to skip rewriting entries that did not change.
+ * <p>
+ * The manifest is stored as a hidden text file in the experiment directory,
+ * with one line per entry: the SHA-256 hash, the size in bytes and the
+ * entry ID, separated by tabs.
+ * @author Devin Hastings
+ */
+class EntryManifest {
+	static final String fileName = ".manifest";
+
+	/** The hash and size of a single entry file */
+	static class Record {
+		final String hash;
+		final long size;
+
+		Record(String hash, long size){
+			this.hash = hash;
+			this.size = size;
+		}
+		@Override
+		public boolean
+		equals(Object o){
+			if(!(o instanceof Record)){
+				return false;
+			}
+			Record r = (Record) o;
+			return r.size == size && r.hash.equals(hash);
+		}
+		@Override
+		public int
+		hashCode(){
+			return Objects.hash(hash, size);
+		}
+	}
+
+	/**
+	 * An output stream that discards its data, only keeping a running hash
+	 * and byte count, so an entry can be hashed without being written.
+	 */
+	static class HashingStream extends OutputStream {
+		private final MessageDigest digest;
+		private long size = 0;
+
+		HashingStream(){
+			try {
+				digest = MessageDigest.getInstance("SHA-256");
+			}
+			catch (NoSuchAlgorithmException e) {
+				//Every Java platform is required to support SHA-256
+				throw new IllegalStateException(e);
+			}
+		}
+		@Override
+		public void
+		write(int b){
+			digest.update((byte) b);
+			size++;
+		}
+		@Override
+		public void
+		write(byte[] b, int off, int len){
+			digest.update(b, off, len);
+			size += len;
+		}
+		Record
+		toRecord(){
+			StringBuilder hex = new StringBuilder();
+			for(byte b : digest.digest()){
+				hex.append(String.format("%02x", b));
+			}
+			return new Record(hex.toString(), size);
+		}
+	}
+
+	private final Map<String, Record> entries;
+	private Map<Record, String> contentIndex = null;
+
+	EntryManifest(){
+		entries = new HashMap<>();
+	}
+
+	EntryManifest(EntryManifest other){
+		entries = new HashMap<>(other.entries);
+	}
+
+	/**
+	 * Read the manifest in a directory.  A missing or unreadable manifest
+	 * gives an empty manifest, so every entry is treated as changed.
+	 * @param dir The experiment directory
+	 * @return The manifest stored in the directory
+	 */
+	static EntryManifest
+	read(Path dir){
+		EntryManifest m = new EntryManifest();
+		Path file = dir.resolve(fileName);
+		if(!Files.exists(file)){
+			return m;
+		}
+		try(BufferedReader r =
+				Files.newBufferedReader(file, StandardCharsets.UTF_8))
+		{
+			String line;
+			while((line = r.readLine()) != null){
+				String[] parts = line.split("\t", 3);
+				if(parts.length == 3){
+					m.entries.put(parts[2],
+						new Record(parts[0], Long.parseLong(parts[1])));
+				}
+			}
+		}
+		catch (IOException | NumberFormatException e) {
+			System.err.println("Ignoring unreadable manifest in "+dir+": "
+					+e.getMessage());
+			m.entries.clear();
+		}
+		return m;
+	}
+
+	/**
+	 * Write the manifest to a directory, replacing the old one atomically
+	 * @param dir The experiment directory
+	 * @throws IOException Thrown if the manifest could not be written
+	 */
+	void
+	write(Path dir) throws IOException {
+		Path tmp = dir.resolve(fileName+".tmp");
+		try(BufferedWriter w =
+				Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))
+		{
+			for(Map.Entry<String, Record> e : entries.entrySet()){
+				w.write(e.getValue().hash+"\t"+e.getValue().size
+						+"\t"+e.getKey()+"\n");
+			}
+		}
+		Files.move(tmp, dir.resolve(fileName),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	synchronized Record
+	get(String id){
+		return entries.get(id);
+	}
+
+	synchronized void
+	put(String id, Record r){
+		entries.put(id, r);
+		contentIndex = null;
+	}
+
+	synchronized void
+	remove(String id){
+		entries.remove(id);
+		contentIndex = null;
+	}
+
+	Map<String, Record>
+	entries(){
+		return entries;
+	}
+
+	/**
+	 * Find an entry with the given content
+	 * @param r The hash and size to search for
+	 * @return The ID of an entry with the same content, or null
+	 */
+	synchronized String
+	search(Record r){
+		if(contentIndex == null){
+			contentIndex = new HashMap<>();
+			for(Map.Entry<String, Record> e : entries.entrySet()){
+				contentIndex.put(e.getValue(), e.getKey());
+			}
+		}
+		return contentIndex.get(r);
+	}
+}
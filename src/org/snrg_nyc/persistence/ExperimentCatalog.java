@@ -0,0 +1,432 @@
+package org.snrg_nyc.persistence;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * A persistent catalog of the experiments saved by {@link JsonFileSerializer},
+ * so they can be listed with their {@link ExperimentSummary} without being
+ * loaded.
+ * <p>
+ * The catalog is stored as a hidden file in the save directory, and each
+ * summary records the last modified time of its experiment: the latest time
+ * of its directory and its entry files, since an entry rewritten in place
+ * does not change the directory's time.  The first listing checks every
+ * experiment's time against the catalog and only rescans the experiments 
+ * that changed.  After that, a {@link WatchService} on the save directory 
+ * and on each experiment's directory reports which experiments were added,
+ * removed, replaced or edited, so a listing only rescans those.  Saves made
+ * through {@link JsonFileSerializer} update the catalog directly.
+ * <p>
+ * The watchers are closed by {@link #closeAll()}, which is also run when 
+ * the JVM shuts down.
+ * <p>
+ * Rescanning an experiment counts its entry files and reads the
+ * {@link #infoEntry} entry as a stream, without binding any objects.
+ * @author Devin Hastings
+ */
+class ExperimentCatalog {
+	static final String fileName = ".catalog";
+	/** The ID of the entry holding the experiment's information */
+	static final String infoEntry = "expinfo";
+
+	private static final Map<Path, ExperimentCatalog> catalogs = 
+			new HashMap<>();
+	
+	static {
+		Runtime.getRuntime().addShutdownHook(
+				new Thread(ExperimentCatalog::closeAll));
+	}
+
+	/** The stored form of the catalog */
+	private static class CatalogFile {
+		@SerializedName("Experiments")
+		List<ExperimentSummary> experiments;
+	}
+
+	private final Path dir;
+	private final Map<String, ExperimentSummary> summaries = new TreeMap<>();
+	private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+	private WatchService watcher;
+	/** The watch key of each experiment's directory */
+	private final Map<String, WatchKey> keys = new HashMap<>();
+	private boolean validated = false;
+
+	/**
+	 * Get the catalog of a save directory, which is shared by every
+	 * serializer using the directory
+	 * @param dir The directory experiments are saved in
+	 * @return The directory's catalog
+	 */
+	static synchronized ExperimentCatalog
+	forDirectory(Path dir){
+		return catalogs.computeIfAbsent(dir.toAbsolutePath().normalize(),
+				ExperimentCatalog::new);
+	}
+
+	/**
+	 * Close the watchers of every catalog, and forget the catalogs, so the
+	 * next call to {@link #forDirectory(Path)} reads the catalog again
+	 */
+	static synchronized void
+	closeAll(){
+		for(ExperimentCatalog c : catalogs.values()){
+			c.close();
+		}
+		catalogs.clear();
+	}
+
+	private ExperimentCatalog(Path dir){
+		this.dir = dir;
+		read();
+		try {
+			watcher = dir.getFileSystem().newWatchService();
+			dir.register(watcher,
+					StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+		}
+		catch (IOException | UnsupportedOperationException e) {
+			//Without a watcher, every listing checks the directory times
+			watcher = null;
+		}
+	}
+
+	/**
+	 * Stop watching the save directory.  Later listings check the time of
+	 * every experiment instead.
+	 */
+	synchronized void
+	close(){
+		if(watcher != null){
+			try {
+				watcher.close();
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+			watcher = null;
+		}
+		keys.clear();
+	}
+
+	/**
+	 * Get the summaries of every saved experiment, in order of name
+	 * @return The current summaries
+	 */
+	synchronized List<ExperimentSummary>
+	list(){
+		boolean changed;
+		if(!validated || watcher == null){
+			changed = validateAll();
+		}
+		else {
+			changed = pollChanges();
+		}
+		if(changed){
+			write();
+		}
+		return new ArrayList<>(summaries.values());
+	}
+
+	/**
+	 * Rescan an experiment after it was saved
+	 * @param name The name of the experiment
+	 */
+	synchronized void
+	update(String name){
+		if(refresh(name)){
+			write();
+		}
+	}
+
+	/**
+	 * Check every experiment directory against the catalog
+	 * @return True if any summary changed
+	 */
+	private boolean
+	validateAll(){
+		Set<String> found = new HashSet<>();
+		boolean changed = false;
+		try(Stream<Path> files = Files.list(dir)){
+			for(Path p : (Iterable<Path>) files::iterator){
+				String name = p.getFileName().toString();
+				if(isExperiment(p)){
+					found.add(name);
+					watch(name, p);
+					changed |= refresh(name);
+				}
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		changed |= summaries.keySet().retainAll(found);
+		validated = true;
+		return changed;
+	}
+
+	/**
+	 * Rescan the experiments that the watcher reported changes for
+	 * @return True if any summary changed
+	 */
+	private boolean
+	pollChanges(){
+		boolean changed = false;
+		try {
+			WatchKey key;
+			while((key = watcher.poll()) != null){
+				Path watched = (Path) key.watchable();
+				if(!watched.equals(dir)){
+					//An entry in an experiment's directory changed
+					String name = watched.getFileName().toString();
+					key.pollEvents();
+					if(!key.reset()){
+						keys.remove(name, key);
+					}
+					changed |= refresh(name);
+					continue;
+				}
+				for(WatchEvent<?> event : key.pollEvents()){
+					if(event.kind() == StandardWatchEventKinds.OVERFLOW){
+						changed |= validateAll();
+						continue;
+					}
+					String name = event.context().toString();
+					if(!name.startsWith(".")){
+						watch(name, dir.resolve(name));
+						changed |= refresh(name);
+					}
+				}
+				if(!key.reset()){
+					//The save directory is gone, so stop watching it
+					watcher.close();
+					watcher = null;
+					return validateAll() || changed;
+				}
+			}
+		}
+		catch(ClosedWatchServiceException | IOException e){
+			watcher = null;
+			return validateAll() || changed;
+		}
+		return changed;
+	}
+
+	/**
+	 * Watch an experiment's directory for changes to its entries, replacing
+	 * the key of a directory that was there before under the same name, or
+	 * stop watching it if it is gone
+	 */
+	private void
+	watch(String name, Path p){
+		WatchKey old = keys.remove(name);
+		if(old != null){
+			old.cancel();
+		}
+		if(watcher == null || !isExperiment(p)){
+			return;
+		}
+		try {
+			keys.put(name, p.register(watcher,
+					StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE,
+					StandardWatchEventKinds.ENTRY_MODIFY));
+		}
+		catch (IOException e) {
+			//Changes in the directory will be missed until it is replaced
+			System.err.println("Could not watch experiment "+name+": "
+					+e.getMessage());
+		}
+	}
+
+	/**
+	 * Rescan an experiment if it changed since it was cataloged
+	 * @param name The name of the experiment
+	 * @return True if the summary changed
+	 */
+	private boolean
+	refresh(String name){
+		Path p = dir.resolve(name);
+		if(!isExperiment(p)){
+			return summaries.remove(name) != null;
+		}
+		long modified;
+		try {
+			modified = lastModified(p);
+		}
+		catch (IOException e) {
+			return summaries.remove(name) != null;
+		}
+		ExperimentSummary s = summaries.get(name);
+		if(s != null && s.getLastModified() == modified){
+			return false;
+		}
+		summaries.put(name, scan(name, p, modified));
+		return true;
+	}
+
+	/**
+	 * @return The latest modified time of an experiment's directory and its
+	 * entry files
+	 */
+	private static long
+	lastModified(Path p) throws IOException {
+		long modified = Files.getLastModifiedTime(p).toMillis();
+		try(Stream<Path> files = Files.list(p)){
+			for(Path f : (Iterable<Path>) files::iterator){
+				if(JsonFileSerializer.isEntryFile(f)){
+					try {
+						modified = Math.max(modified, 
+								Files.getLastModifiedTime(f).toMillis());
+					}
+					catch(NoSuchFileException e){
+						//Removed since the directory was listed
+					}
+				}
+			}
+		}
+		return modified;
+	}
+
+	private static boolean
+	isExperiment(Path p){
+		return Files.isDirectory(p)
+				&& !p.getFileName().toString().startsWith(".");
+	}
+
+	/**
+	 * Count an experiment's entries and read its information entry
+	 */
+	private ExperimentSummary
+	scan(String name, Path p, long modified){
+		int count = 0;
+		long bytes = 0;
+		Path info = null;
+		try(Stream<Path> files = Files.list(p)){
+			for(Path f : (Iterable<Path>) files::iterator){
+				if(JsonFileSerializer.isEntryFile(f)){
+					count++;
+					bytes += Files.size(f);
+					if(JsonFileSerializer.entryName(f).equals(infoEntry)){
+						info = f;
+					}
+				}
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		String user = null;
+		String description = null;
+		if(info != null){
+			try(Reader r = new InputStreamReader(
+					JsonFileSerializer.openEntry(info), StandardCharsets.UTF_8);
+				JsonReader jr = new JsonReader(r))
+			{
+				jr.beginObject();
+				while(jr.hasNext()){
+					if(!jr.nextName().equals("Object")
+					   || jr.peek() != JsonToken.BEGIN_OBJECT)
+					{
+						jr.skipValue();
+						continue;
+					}
+					jr.beginObject();
+					while(jr.hasNext()){
+						String field = jr.nextName();
+						if(jr.peek() != JsonToken.STRING){
+							jr.skipValue();
+						}
+						else if(field.equals("UserName")){
+							user = jr.nextString();
+						}
+						else if(field.equals("Description")){
+							description = jr.nextString();
+						}
+						else {
+							jr.skipValue();
+						}
+					}
+					jr.endObject();
+				}
+			}
+			catch (IOException | IllegalStateException e) {
+				System.err.println("Could not read the information of "+name
+						+": "+e.getMessage());
+			}
+		}
+		return new ExperimentSummary(name, user, description,
+				count, bytes, modified);
+	}
+
+	private void
+	read(){
+		Path file = dir.resolve(fileName);
+		if(!Files.exists(file)){
+			return;
+		}
+		try(Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)){
+			CatalogFile c = gson.fromJson(r, CatalogFile.class);
+			if(c != null && c.experiments != null){
+				for(ExperimentSummary s : c.experiments){
+					summaries.put(s.getName(), s);
+				}
+			}
+		}
+		catch (IOException | JsonParseException e) {
+			//The catalog is rebuilt from the directories
+			System.err.println("Ignoring unreadable catalog: "+e.getMessage());
+			summaries.clear();
+		}
+	}
+
+	private void
+	write(){
+		CatalogFile c = new CatalogFile();
+		c.experiments = new ArrayList<>(summaries.values());
+		Path tmp = dir.resolve(fileName+".tmp");
+		try {
+			try(Writer w = 
+					Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))
+			{
+				gson.toJson(c, w);
+			}
+			Files.move(tmp, dir.resolve(fileName),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			System.err.println("Could not write the experiment catalog: "
+					+e.getMessage());
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package org.snrg_nyc.persistence;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -39,4 +40,19 @@ public interface ExperimentSerializer {
 	 * @return A list of available experiment names
 	 */
 	public List<String> savedExperiments();
+	
+	/**
+	 * Summaries of all experiments that can be loaded with 
+	 * {@link ExperimentSerializer#loadExperiment}.  By default, the 
+	 * summaries only have the experiments' names.
+	 * @return A list of summaries of the available experiments
+	 */
+	public default List<ExperimentSummary> 
+	experimentSummaries(){
+		List<ExperimentSummary> summaries = new ArrayList<>();
+		for(String name : savedExperiments()){
+			summaries.add(new ExperimentSummary(name));
+		}
+		return summaries;
+	}
 }
@@ -0,0 +1,98 @@
+package org.snrg_nyc.persistence;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * The header information of a saved experiment, which can be listed
+ * without loading the experiment.
+ * @see ExperimentCatalog
+ * @author Devin Hastings
+ */
+public class ExperimentSummary {
+	@SerializedName("ExperimentName")
+	private String name;
+
+	@SerializedName("UserName")
+	private String user;
+
+	@SerializedName("Description")
+	private String description;
+
+	@SerializedName("EntryCount")
+	private int entryCount;
+
+	@SerializedName("ByteSize")
+	private long byteSize;
+
+	@SerializedName("LastModified")
+	private long lastModified;
+
+	ExperimentSummary(String name, String user, String description,
+			int entryCount, long byteSize, long lastModified)
+	{
+		this.name = name;
+		this.user = user;
+		this.description = description;
+		this.entryCount = entryCount;
+		this.byteSize = byteSize;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * A summary with only a name, for serializers that do not keep
+	 * any other information
+	 * @param name The name of the experiment
+	 */
+	ExperimentSummary(String name){
+		this(name, null, null, -1, -1, -1);
+	}
+
+	/**
+	 * @return The name the experiment is saved under
+	 */
+	public String
+	getName() {
+		return name;
+	}
+
+	/**
+	 * @return The user name stored in the experiment, or null if unknown
+	 */
+	public String
+	getUser() {
+		return user;
+	}
+
+	/**
+	 * @return The description stored in the experiment, or null if unknown
+	 */
+	public String
+	getDescription() {
+		return description;
+	}
+
+	/**
+	 * @return The number of stored entries, or -1 if unknown
+	 */
+	public int
+	getEntryCount() {
+		return entryCount;
+	}
+
+	/**
+	 * @return The total size of the stored entries in bytes, or -1 if unknown
+	 */
+	public long
+	getByteSize() {
+		return byteSize;
+	}
+
+	/**
+	 * @return The time the experiment was last changed, in milliseconds
+	 * since the epoch, or -1 if unknown
+	 */
+	public long
+	getLastModified() {
+		return lastModified;
+	}
+}
@@ -0,0 +1,475 @@
+package org.snrg_nyc.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Stores each experiment as a single archive file in
+ * {@link JsonFileSerializer#savePath}, instead of a directory of entry files.
+ * <p>
+ * The archive starts with an index of every entry's ID, offset and length,
+ * followed by the entries themselves as UTF-8 JSON, in the same format as
+ * the files written by {@link JsonFileSerializer}.  Archives are read
+ * through a memory-mapped file, so a single entry can be loaded by looking
+ * it up in the index without reading the rest of the archive.
+ * <p>
+ * Layout (all numbers big-endian):
+ * <pre>
+ * int    magic (0x534E5247, "SNRG")
+ * short  format version
+ * int    entry count
+ * entry count times:
+ *     short  ID length, followed by the UTF-8 ID
+ *     long   offset of the entry from the start of the file
+ *     int    length of the entry in bytes
+ * entry data
+ * </pre>
+ * @author Devin Hastings
+ */
+public class JsonArchiveSerializer extends JsonSerializer {
+	public static final String extension = ".snrg";
+	static final int magic = 0x534E5247;
+	static final short version = 1;
+
+	private Path archive;
+	private Map<String, byte[]> entries;
+
+	public JsonArchiveSerializer(GsonBuilder gBuilder) {
+		super(gBuilder);
+	}
+
+	/**
+	 * The location of an entry in an archive
+	 */
+	private static class IndexEntry {
+		final long offset;
+		final int length;
+
+		IndexEntry(long offset, int length){
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * The index and mapped data of an open archive
+	 */
+	private static class Archive {
+		final MappedByteBuffer data;
+		final Map<String, IndexEntry> index;
+
+		Archive(MappedByteBuffer data, Map<String, IndexEntry> index){
+			this.data = data;
+			this.index = index;
+		}
+
+		/** A read-only view of a single entry's bytes */
+		ByteBuffer
+		entry(IndexEntry e){
+			ByteBuffer b = data.asReadOnlyBuffer();
+			b.position((int) e.offset);
+			b.limit((int) e.offset + e.length);
+			return b.slice();
+		}
+	}
+
+	/**
+	 * Get the archive file of an experiment
+	 * @param name The name of the experiment
+	 * @return The path to the experiment's archive
+	 */
+	public static Path
+	archivePath(String name){
+		return JsonFileSerializer.savePath.resolve(name+extension);
+	}
+
+	@Override
+	public Map<String, Transferable>
+	loadExperiment(String name) throws PersistenceException {
+		Archive a = open(name);
+		List<String> ids = new ArrayList<>(a.index.keySet());
+		List<Callable<Transferable>> tasks = new ArrayList<>(ids.size());
+		for(String id : ids){
+			IndexEntry e = a.index.get(id);
+			tasks.add(() -> readEntry(name, id, a.entry(e)));
+		}
+		List<Transferable> objects;
+		try {
+			objects = runTasks(tasks);
+		}
+		catch(RuntimeException e){
+			throw new PersistenceException(e.getLocalizedMessage());
+		}
+		Map<String, Transferable> loaded = new HashMap<>();
+		for(int i = 0; i < ids.size(); i++){
+			if(objects.get(i) != null){
+				loaded.put(ids.get(i), objects.get(i));
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * Load a single entry of an experiment, without reading the others
+	 * @param name The name of the experiment
+	 * @param id The ID of the entry
+	 * @return The stored object, or null if it was of an unknown type
+	 * @throws PersistenceException Thrown if the experiment or entry does
+	 * not exist, or could not be read
+	 */
+	public Transferable
+	loadEntry(String name, String id) throws PersistenceException {
+		Archive a = open(name);
+		IndexEntry e = a.index.get(id);
+		if(e == null){
+			throw new PersistenceException("No entry '"+id
+					+"' in experiment "+name);
+		}
+		return readEntry(name, id, a.entry(e));
+	}
+
+	/**
+	 * Get the IDs of every entry in an experiment, from the archive's index
+	 * @param name The name of the experiment
+	 * @return The entry IDs, in the order they are stored
+	 * @throws PersistenceException Thrown if the archive could not be read
+	 */
+	public List<String>
+	entryIDs(String name) throws PersistenceException {
+		return new ArrayList<>(open(name).index.keySet());
+	}
+
+	private Transferable
+	readEntry(String name, String id, ByteBuffer data)
+			throws PersistenceException
+	{
+		try(Reader r = new InputStreamReader(
+				new ByteBufferInputStream(data), StandardCharsets.UTF_8);
+			JsonReader jr = gson().newJsonReader(r))
+		{
+			PersistentDataEntry pde =
+					gson().fromJson(jr, PersistentDataEntry.class);
+			return pde.getObject();
+		}
+		catch (JsonNoClassException e) {
+			System.err.println("Unrecognized type in "+id+": "+e.getMessage());
+			return null;
+		}
+		catch(IOException | RuntimeException e){
+			e.printStackTrace();
+			throw new PersistenceException("Failed to read "+id+" from "
+					+name+" with "+e.getClass().getSimpleName());
+		}
+	}
+
+	/**
+	 * Map an experiment's archive into memory and read its index
+	 */
+	private static Archive
+	open(String name) throws PersistenceException {
+		Path p = archivePath(name);
+		if(!Files.exists(p)){
+			throw new PersistenceException("No experiment with name: "+name);
+		}
+		MappedByteBuffer data;
+		try(FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)){
+			if(ch.size() > Integer.MAX_VALUE){
+				throw new PersistenceException(
+						"The archive for "+name+" is too large to map");
+			}
+			data = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		}
+		catch (IOException e) {
+			throw new PersistenceException("Failed to open archive "
+					+p.getFileName()+": "+e.getLocalizedMessage());
+		}
+		try {
+			if(data.getInt() != magic){
+				throw new PersistenceException(p.getFileName()
+						+" is not an experiment archive");
+			}
+			short v = data.getShort();
+			if(v != version){
+				throw new PersistenceException("Unsupported archive version "
+						+v+" in "+p.getFileName());
+			}
+			int count = data.getInt();
+			Map<String, IndexEntry> index = new LinkedHashMap<>();
+			for(int i = 0; i < count; i++){
+				byte[] id = new byte[data.getShort() & 0xFFFF];
+				data.get(id);
+				long offset = data.getLong();
+				int length = data.getInt();
+				if(offset < 0 || length < 0 || offset + length > data.limit()){
+					throw new PersistenceException("Corrupt index in "
+							+p.getFileName());
+				}
+				index.put(new String(id, StandardCharsets.UTF_8),
+						new IndexEntry(offset, length));
+			}
+			return new Archive(data, index);
+		}
+		catch(RuntimeException e){
+			throw new PersistenceException("Corrupt index in "
+					+p.getFileName()+": "+e.toString());
+		}
+	}
+
+	@Override
+	public List<String>
+	savedExperiments() {
+		try(Stream<Path> files = Files.list(JsonFileSerializer.savePath)){
+			return files.map(p -> p.getFileName().toString())
+			            .filter(f -> f.endsWith(extension)
+			                         && !f.startsWith("."))
+			            .map(f -> f.substring(0,
+			                         f.length() - extension.length()))
+			            .collect(Collectors.toList());
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			return new ArrayList<>();
+		}
+	}
+
+	@Override
+	protected void
+	validateEnvironment(String name) throws PersistenceException {
+		archive = archivePath(name);
+		System.out.println("Saving to "+archive.toString());
+		entries = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	protected void
+	storeFile(String name, String data) throws PersistenceException {
+		entries.put(name, data.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Write every stored entry to a temporary file, then move it over the
+	 * old archive, so the archive is replaced all at once.
+	 */
+	@Override
+	protected void
+	commitExperiment(String name) throws PersistenceException {
+		try {
+			writeArchive(archive, entries);
+		}
+		catch (IOException e) {
+			throw new PersistenceException("Error while writing archive for '"
+					+name+"': "+e.getLocalizedMessage());
+		}
+		finally {
+			entries = null;
+		}
+	}
+
+	@Override
+	protected void
+	abortExperiment(String name){
+		entries = null;
+	}
+
+	/**
+	 * Write a group of entries to an archive, replacing it atomically
+	 * @param file The archive to write
+	 * @param data The entries, as UTF-8 JSON
+	 * @throws IOException Thrown if the archive could not be written
+	 */
+	static void
+	writeArchive(Path file, Map<String, byte[]> data) throws IOException {
+		Map<String, byte[]> sorted = new TreeMap<>(data);
+		Map<String, byte[]> ids = new HashMap<>();
+		int headerSize = 4 + 2 + 4;
+		for(String id : sorted.keySet()){
+			byte[] b = id.getBytes(StandardCharsets.UTF_8);
+			if(b.length > 0xFFFF){
+				throw new IOException("Entry ID is too long: "+id);
+			}
+			ids.put(id, b);
+			headerSize += 2 + b.length + 8 + 4;
+		}
+		ByteBuffer header = ByteBuffer.allocate(headerSize);
+		header.putInt(magic).putShort(version).putInt(sorted.size());
+		long offset = headerSize;
+		for(Map.Entry<String, byte[]> e : sorted.entrySet()){
+			byte[] id = ids.get(e.getKey());
+			header.putShort((short) id.length).put(id)
+			      .putLong(offset).putInt(e.getValue().length);
+			offset += e.getValue().length;
+		}
+		header.flip();
+
+		Path tmp = JsonFileSerializer.newStagingFile(
+				file.toAbsolutePath().getParent(), "."+file.getFileName(),
+				".tmp");
+		try {
+			try(FileChannel ch = FileChannel.open(tmp,
+					StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING))
+			{
+				writeFully(ch, header);
+				for(byte[] b : sorted.values()){
+					writeFully(ch, ByteBuffer.wrap(b));
+				}
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static void
+	writeFully(FileChannel ch, ByteBuffer b) throws IOException {
+		while(b.hasRemaining()){
+			ch.write(b);
+		}
+	}
+
+	/**
+	 * Pack an experiment saved by {@link JsonFileSerializer} into an
+	 * archive.  The entry files are copied as they are, without being
+	 * parsed.  The experiment directory is left in place.
+	 * @param name The name of the experiment
+	 * @throws PersistenceException Thrown if the directory could not be read,
+	 * or the archive could not be written
+	 */
+	public static void
+	importDirectory(String name) throws PersistenceException {
+		Path dir = JsonFileSerializer.savePath.resolve(name);
+		if(!Files.isDirectory(dir)){
+			throw new PersistenceException("No experiment with name: "+name);
+		}
+		Map<String, byte[]> data = new HashMap<>();
+		try(Stream<Path> files = Files.list(dir)){
+			for(Path p : (Iterable<Path>) files::iterator){
+				if(JsonFileSerializer.isEntryFile(p)){
+					data.put(JsonFileSerializer.entryName(p), readEntryFile(p));
+				}
+			}
+			writeArchive(archivePath(name), data);
+		}
+		catch (IOException e) {
+			throw new PersistenceException("Error while packing experiment '"
+					+name+"': "+e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Read the JSON of an entry file, decompressing it if needed
+	 */
+	private static byte[] 
+	readEntryFile(Path p) throws IOException {
+		try(InputStream in = JsonFileSerializer.openEntry(p)){
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1 << 16];
+			int n;
+			while((n = in.read(buffer)) != -1){
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		}
+	}
+
+	/**
+	 * Unpack an archive into the directory layout used by
+	 * {@link JsonFileSerializer}, replacing any existing directory for the
+	 * experiment.  The archive is left in place.
+	 * @param name The name of the experiment
+	 * @throws PersistenceException Thrown if the archive could not be read,
+	 * or the directory could not be written
+	 */
+	public static void
+	exportDirectory(String name) throws PersistenceException {
+		Archive a = open(name);
+		Path staging = null;
+		try {
+			staging = JsonFileSerializer.newStagingDirectory(
+					JsonFileSerializer.savePath, "."+name+"-");
+			for(Map.Entry<String, IndexEntry> e : a.index.entrySet()){
+				try(FileChannel ch = FileChannel.open(
+						staging.resolve(e.getKey()+".json"),
+						StandardOpenOption.CREATE_NEW,
+						StandardOpenOption.WRITE))
+				{
+					writeFully(ch, a.entry(e.getValue()));
+				}
+			}
+			JsonFileSerializer.replaceDirectory(staging,
+					JsonFileSerializer.savePath.resolve(name));
+		}
+		catch (IOException e) {
+			try {
+				if(staging != null){
+					JsonFileSerializer.deleteRecursively(staging);
+				}
+			}
+			catch (IOException e2) {
+				e2.printStackTrace();
+			}
+			throw new PersistenceException("Error while unpacking experiment '"
+					+name+"': "+e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * An input stream over the remaining bytes of a buffer
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer){
+			this.buffer = buffer;
+		}
+		@Override
+		public int
+		read(){
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+		@Override
+		public int
+		read(byte[] b, int off, int len){
+			if(len == 0){
+				return 0;
+			}
+			if(!buffer.hasRemaining()){
+				return -1;
+			}
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+			return len;
+		}
+		@Override
+		public int
+		available(){
+			return buffer.remaining();
+		}
+	}
+}
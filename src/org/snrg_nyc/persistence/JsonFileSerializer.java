@@ -1,26 +1,66 @@
 package org.snrg_nyc.persistence;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 public class JsonFileSerializer extends JsonSerializer {
 	public static final Path savePath = Paths.get("save_data");
+	/** Size of the character buffer used when streaming entries to disk */
+	static final int writeBufferSize = 1 << 16;
+	static final String extension = ".json";
+	static final String compressedExtension = ".json.gz";
+	
 	private Path saveDir;
+	private Path stagingDir;
+	private boolean streaming = false;
+	private boolean incremental = false;
+	private boolean compressed = false;
+	
+	/*
+	 * State of an incremental save: the manifest found in the directory, 
+	 * the manifest being built, entries written to temporary files and 
+	 * entries that can be copied from an existing file with the same content
+	 */
+	private EntryManifest oldManifest;
+	private EntryManifest newManifest;
+	private Map<String, Path> changedEntries;
+	private Map<String, String> copiedEntries;
 	
 	static {
 		if(!Files.exists(savePath)){
@@ -32,7 +72,81 @@ public class JsonFileSerializer extends JsonSerializer {
 		super(gBuilder);
 	}
 	
+	/**
+	 * Set if entries are streamed directly to their files.
+	 * <p>
+	 * When streaming, each entry is written through a {@link JsonWriter} to
+	 * a buffered file channel instead of being built as a single String 
+	 * first, so the memory used while saving does not grow with the size of 
+	 * the largest entry.  The files produced are identical either way.
+	 * @param streaming True to stream entries, false to build each entry
+	 * as a String before writing it
+	 */
+	public void 
+	setStreaming(boolean streaming){
+		this.streaming = streaming;
+	}
+	
+	public boolean 
+	isStreaming(){
+		return streaming;
+	}
+	
+	/**
+	 * Set if saves only rewrite the entries that changed.
+	 * <p>
+	 * In incremental mode, the experiment directory keeps a manifest of the
+	 * SHA-256 hash of every entry file.  Each entry is hashed as it would be
+	 * written, and only entries whose content changed are written; entries
+	 * that match the content of another existing entry are copied or 
+	 * renamed, and entries that no longer exist are deleted.
+	 * <p>
+	 * Each entry is serialized into memory to be hashed, whatever 
+	 * {@link #setStreaming(boolean)} is set to, so the largest entry must
+	 * fit in memory.  Changed entries are written to temporary files and
+	 * then moved into place one at a time, so a save that fails partway can
+	 * leave a mix of old and new entries.  Before anything is moved, the
+	 * manifest is rewritten without the entries about to change, so the
+	 * next save finds them untrusted and writes them again, and deletes any
+	 * entries left over.
+	 * @param incremental True to only rewrite changed entries, false to 
+	 * rewrite the whole experiment on each save
+	 */
+	public void 
+	setIncremental(boolean incremental){
+		this.incremental = incremental;
+	}
+	
+	public boolean 
+	isIncremental(){
+		return incremental;
+	}
+	
+	/**
+	 * Set if entries are written compressed with gzip, as files ending in
+	 * ".json.gz".
+	 * <p>
+	 * Compressed and plain entries are told apart by their contents when 
+	 * loading, so experiments saved either way can be loaded whatever this
+	 * is set to.
+	 * @param compressed True to compress entries, false to write plain JSON
+	 */
+	public void 
+	setCompressed(boolean compressed){
+		this.compressed = compressed;
+	}
+	
+	public boolean 
+	isCompressed(){
+		return compressed;
+	}
+	
 
+	/**
+	 * Load every entry in the experiment's directory.  Each file is read in
+	 * a single streaming pass, and with more than one thread (see 
+	 * {@link #setThreadCount(int)}) the files are read in parallel.
+	 */
 	@Override
 	public Map<String, Transferable> 
 	loadExperiment(String name) throws PersistenceException {
@@ -40,91 +154,601 @@ public class JsonFileSerializer extends JsonSerializer {
 		if(!Files.exists(saveDir)){
 			throw new PersistenceException("No experiment with name: "+name);
 		}
-		Map<String, Transferable> loaded = new HashMap<>();
-		
-		try { 
-			Files.list(saveDir).forEach(p ->{
-				if(!Files.isDirectory(p) && p.getFileName().toString().endsWith(".json")){
-					
-					String fileName = p.getFileName().toString().replaceAll(".json", "");
-					try {
-						Reader r = new FileReader(p.toFile());
-						JsonElement js = new JsonParser().parse(r);
-						
-						PersistentDataEntry pde = gson().fromJson(js, PersistentDataEntry.class);
-						Transferable obj = pde.getObject();
-						
-						loaded.put(fileName, obj);
-					} 
-					catch (JsonNoClassException e) {
-						System.err.println("Unrecognized type in "+fileName+": "+e.getMessage());
-					}
-					catch(Exception e){
-						e.printStackTrace();
-						throw new RuntimeException(
-								"Failed with "+e.getClass().getSimpleName());
-					}
-				}
-			});
+		List<Path> files;
+		try(Stream<Path> dir = Files.list(saveDir)){
+			files = dir.filter(JsonFileSerializer::isEntryFile)
+			           .collect(Collectors.toList());
 		}
-		catch (RuntimeException | IOException e) {
+		catch (IOException e) {
+			throw new PersistenceException(e.getLocalizedMessage());
+		}
+		List<Callable<Transferable>> tasks = new ArrayList<>(files.size());
+		for(Path p : files){
+			tasks.add(() -> loadFile(p));
+		}
+		List<Transferable> objects;
+		try {
+			objects = runTasks(tasks);
+		}
+		catch(RuntimeException e){
 			throw new PersistenceException(e.getLocalizedMessage());
 		}
 		
+		Map<String, Transferable> loaded = new HashMap<>();
+		for(int i = 0; i < files.size(); i++){
+			if(objects.get(i) != null){
+				loaded.put(entryName(files.get(i)), objects.get(i));
+			}
+		}
 		return loaded;
 	}
+	
+	/**
+	 * Read the object stored in an entry file
+	 * @param p The path to the entry file
+	 * @return The stored object, or null if it was of an unknown type
+	 * @throws PersistenceException Thrown if the file could not be read
+	 */
+	Transferable 
+	loadFile(Path p) throws PersistenceException {
+		try(Reader r = new InputStreamReader(
+				openEntry(p), StandardCharsets.UTF_8);
+			JsonReader jr = gson().newJsonReader(r))
+		{
+			PersistentDataEntry pde = 
+					gson().fromJson(jr, PersistentDataEntry.class);
+			return pde.getObject();
+		}
+		catch (JsonNoClassException e) {
+			System.err.println("Unrecognized type in "+entryName(p)
+					+": "+e.getMessage());
+			return null;
+		}
+		catch(IOException | RuntimeException e){
+			e.printStackTrace();
+			throw new PersistenceException("Failed to read "+p.getFileName()
+					+" with "+e.getClass().getSimpleName());
+		}
+	}
+	
+	/**
+	 * Open an entry file for reading, decompressing it if it starts with 
+	 * the gzip magic number
+	 * @param p The path to the entry file
+	 * @return A stream of the entry's JSON
+	 * @throws IOException Thrown if the file could not be opened
+	 */
+	static InputStream 
+	openEntry(Path p) throws IOException {
+		InputStream in = new BufferedInputStream(
+				Files.newInputStream(p), writeBufferSize);
+		in.mark(2);
+		int b1 = in.read();
+		int b2 = in.read();
+		in.reset();
+		if(b1 == (GZIPInputStream.GZIP_MAGIC & 0xFF) 
+		   && b2 == (GZIPInputStream.GZIP_MAGIC >> 8))
+		{
+			return new GZIPInputStream(in, writeBufferSize);
+		}
+		return in;
+	}
+	
+	/**
+	 * Get the ID of an entry from its file name
+	 * @param p The path to an entry file
+	 * @return The file name without its extension
+	 */
+	static String 
+	entryName(Path p){
+		String fileName = p.getFileName().toString();
+		String ext = fileName.endsWith(compressedExtension) ? 
+				compressedExtension : extension;
+		return fileName.substring(0, fileName.length() - ext.length());
+	}
+	
+	/**
+	 * @param id The ID of an entry
+	 * @return The name of the entry's file with the current settings
+	 */
+	private String 
+	fileName(String id){
+		return id + (compressed ? compressedExtension : extension);
+	}
 
+	/**
+	 * List the saved experiments from the {@link ExperimentCatalog} of the
+	 * save directory
+	 */
 	@Override
 	public List<String> 
 	savedExperiments() {
 		List<String> experimentNames = new ArrayList<>();
-		try {
-			Files.list(savePath).forEach( p ->{
-				if(Files.isDirectory(p)){
-					experimentNames.add(p.getFileName().toString());
-				}
-			});
-		} catch (IOException e) {
-			e.printStackTrace();
+		for(ExperimentSummary s : experimentSummaries()){
+			experimentNames.add(s.getName());
 		}
 		return experimentNames;
 	}
+	
+	@Override
+	public List<ExperimentSummary> 
+	experimentSummaries(){
+		return ExperimentCatalog.forDirectory(savePath).list();
+	}
 
+	/**
+	 * Create an empty staging directory for the experiment.  Entries are 
+	 * written there, and only replace the experiment's directory once all of
+	 * them have been written (see {@link #commitExperiment}).
+	 */
 	@Override
 	protected void 
 	validateEnvironment(String name) throws PersistenceException {
 		saveDir = savePath.resolve(name);
 
 		System.out.println("Saving to "+saveDir.toString());
-		
-		if(!Files.exists(saveDir)){
-			saveDir.toFile().mkdir();
-		}
-		else { //Delete old files in directory
+		if(incremental){
 			try {
-				Files.list(saveDir).forEach( f ->{
-					try {
-						Files.delete(f);
-					} 
-					catch (Exception e) { //Get out of the loop!
-						throw new RuntimeException(e.getLocalizedMessage());
-					}
-				});
+				Files.createDirectories(saveDir);
 			} 
 			catch (IOException e) {
-				e.printStackTrace();
-				throw new PersistenceException("Error while getting files: "
+				throw new PersistenceException(
+						"Error while creating the experiment directory: "
 						+e.getLocalizedMessage());
 			}
+			oldManifest = EntryManifest.read(saveDir);
+			newManifest = new EntryManifest();
+			changedEntries = new ConcurrentHashMap<>();
+			copiedEntries = new ConcurrentHashMap<>();
+			return;
+		}
+		try {
+			stagingDir = newStagingDirectory(savePath, "."+name+"-");
+		} 
+		catch (IOException e) {
+			throw new PersistenceException(
+					"Error while creating the staging directory: "
+					+e.getLocalizedMessage());
+		}
+	}
+	
+	/**
+	 * Swap the staging directory in for the experiment's directory.
+	 * Files that are not entries (such as data written by other tools) are
+	 * carried over from the old directory.  The experiment's summary in the
+	 * {@link ExperimentCatalog} is then updated.
+	 */
+	@Override
+	protected void 
+	commitExperiment(String name) throws PersistenceException {
+		if(incremental){
+			commitChanges(name);
+		}
+		else {
+			try {
+				replaceDirectory(stagingDir, saveDir);
+			}
+			catch (IOException e) {
+				abortExperiment(name);
+				throw new PersistenceException(
+						"Error while replacing experiment '"
+						+name+"': "+e.getLocalizedMessage());
+			}
+		}
+		ExperimentCatalog.forDirectory(savePath).update(name);
+	}
+	
+	/**
+	 * Replace an experiment directory with a fully written staging 
+	 * directory.  Files that are not entries are carried over from the old
+	 * directory, which is then deleted.  If the directories could not be 
+	 * swapped, the old directory is left in place and the staging directory
+	 * is left for the caller to delete.
+	 * <p>
+	 * Once the directories are swapped the new entries are live, so a 
+	 * failure to carry files over or to delete the old directory is only 
+	 * reported, and the old directory (with whatever files are left in it)
+	 * is kept next to the experiment to be cleaned up by hand.
+	 * @param stagingDir The directory holding the new entries
+	 * @param saveDir The experiment directory to replace
+	 * @throws IOException Thrown if the directories could not be swapped
+	 */
+	static void 
+	replaceDirectory(Path stagingDir, Path saveDir) throws IOException {
+		Path oldDir = null;
+		if(Files.exists(saveDir)){
+			oldDir = saveDir.resolveSibling(
+					stagingDir.getFileName().toString()+".old");
+			Files.move(saveDir, oldDir, StandardCopyOption.ATOMIC_MOVE);
+		}
+		try {
+			Files.move(stagingDir, saveDir, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException e){
+			if(oldDir != null){
+				Files.move(oldDir, saveDir, StandardCopyOption.ATOMIC_MOVE);
+			}
+			throw e;
+		}
+		if(oldDir != null){
+			//The new entries are in place, so the save has happened whatever
+			//goes wrong from here on
+			try {
+				try(Stream<Path> files = Files.list(oldDir)){
+					for(Path p : (Iterable<Path>) files::iterator){
+						if(!isEntryFile(p) && !isManifest(p)){
+							Files.move(p, saveDir.resolve(p.getFileName()));
+						}
+					}
+				}
+				deleteRecursively(oldDir);
+			}
+			catch(IOException e){
+				System.err.println("Could not clean up the old directory of "
+						+saveDir.getFileName()+", it is left at "+oldDir+": "
+						+e.getLocalizedMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Move the changed entries into place, copy or rename entries with 
+	 * matching content, and delete the entries that no longer exist.
+	 * <p>
+	 * This is not atomic: entries are moved into place one at a time, and
+	 * if that fails partway the directory holds a mix of old and new 
+	 * entries.  The manifest is first rewritten without any of the entries
+	 * that are about to change, so those entries are rewritten by the next
+	 * save instead of being trusted.
+	 */
+	private void 
+	commitChanges(String name) throws PersistenceException {
+		Set<String> stale = new HashSet<>(oldManifest.entries().keySet());
+		try(Stream<Path> files = Files.list(saveDir)){
+			files.filter(JsonFileSerializer::isEntryFile)
+			     .forEach(p -> stale.add(entryName(p)));
+		}
+		catch (IOException e) {
+			abortExperiment(name);
+			throw new PersistenceException(e.getLocalizedMessage());
+		}
+		stale.removeAll(newManifest.entries().keySet());
+		if(changedEntries.isEmpty() && copiedEntries.isEmpty() 
+		   && stale.isEmpty() 
+		   && newManifest.entries().equals(oldManifest.entries()))
+		{
+			return;
+		}
+		
+		try {
+			EntryManifest interim = new EntryManifest(oldManifest);
+			for(String id : changedEntries.keySet()){
+				interim.remove(id);
+			}
+			for(String id : copiedEntries.keySet()){
+				interim.remove(id);
+			}
+			for(String id : stale){
+				interim.remove(id);
+			}
+			interim.write(saveDir);
+			
+			stageCopies(stale);
+			for(Map.Entry<String, Path> e : changedEntries.entrySet()){
+				Files.move(e.getValue(), entryFile(e.getKey()), 
+						StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+			changedEntries.clear();
+			for(String id : stale){
+				Files.deleteIfExists(saveDir.resolve(id+extension));
+				Files.deleteIfExists(saveDir.resolve(id+compressedExtension));
+			}
+			//Remove entries left in the other format
+			String otherExtension = compressed 
+					? extension 
+					: compressedExtension;
+			for(String id : newManifest.entries().keySet()){
+				Files.deleteIfExists(saveDir.resolve(id+otherExtension));
+			}
+			newManifest.write(saveDir);
+		} 
+		catch (IOException e) {
+			abortExperiment(name);
+			throw new PersistenceException("Error while updating experiment '"
+					+name+"': "+e.getLocalizedMessage());
+		}
+	}
+	
+	/**
+	 * Copy the source of every copied entry to a temporary file, then move
+	 * the temporary files into place.  No target is written until every 
+	 * source has been read, since a target can be the source of another 
+	 * copy, as when two entries swap their contents.  A stale source that 
+	 * no other entry copies is moved rather than copied.
+	 * <p>
+	 * The temporary files are added to the changed entries, so they are 
+	 * moved into place with them, or deleted if the save is aborted.
+	 * @param stale The entries that no longer exist, from which the moved
+	 * sources are removed
+	 */
+	private void 
+	stageCopies(Set<String> stale) throws IOException {
+		Map<String, Integer> uses = new HashMap<>();
+		for(String source : copiedEntries.values()){
+			uses.merge(source, 1, Integer::sum);
+		}
+		for(Map.Entry<String, String> e : copiedEntries.entrySet()){
+			String source = e.getValue();
+			Path tmp = saveDir.resolve("."+fileName(e.getKey())+".copy");
+			changedEntries.put(e.getKey(), tmp);
+			int left = uses.merge(source, -1, Integer::sum);
+			if(left == 0 && stale.remove(source)){
+				Files.move(entryFile(source), tmp, 
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+			else {
+				Files.copy(entryFile(source), tmp, 
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		copiedEntries.clear();
+	}
+	
+	private Path 
+	entryFile(String id){
+		return saveDir.resolve(fileName(id));
+	}
+	
+	@Override
+	protected void 
+	abortExperiment(String name){
+		if(incremental){
+			for(Path tmp : changedEntries.values()){
+				try {
+					Files.deleteIfExists(tmp);
+				} 
+				catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			changedEntries.clear();
+			return;
+		}
+		try {
+			deleteRecursively(stagingDir);
+		} 
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * If the given file is an experiment entry written by this serializer
+	 * @param p The path to check
+	 * @return True if the path is an entry file
+	 */
+	static boolean 
+	isEntryFile(Path p){
+		String fileName = p.getFileName().toString();
+		return !Files.isDirectory(p) 
+				&& (fileName.endsWith(extension) 
+				    || fileName.endsWith(compressedExtension));
+	}
+	
+	static boolean 
+	isManifest(Path p){
+		return p.getFileName().toString().equals(EntryManifest.fileName);
+	}
+	
+	/**
+	 * Make an empty directory to stage files in, named with a prefix and a
+	 * random suffix.  Unlike {@link Files#createTempDirectory}, this gives 
+	 * it the default permissions, since it is swapped in as an experiment.
+	 * @param parent The directory to make it in
+	 * @param prefix The start of its name
+	 * @return The new directory
+	 * @throws IOException Thrown if it could not be made
+	 */
+	static Path 
+	newStagingDirectory(Path parent, String prefix) throws IOException {
+		while(true){
+			try {
+				return Files.createDirectory(
+						parent.resolve(stagingName(prefix, "")));
+			}
+			catch(FileAlreadyExistsException e){
+				//Try another name
+			}
+		}
+	}
+	
+	/**
+	 * Make an empty file to write a replacement in, named with a prefix, a
+	 * random middle and a suffix.  Unlike {@link Files#createTempFile}, 
+	 * this gives it the default permissions, since it is moved over the 
+	 * file it replaces.
+	 * @param dir The directory to make it in
+	 * @param prefix The start of its name
+	 * @param suffix The end of its name
+	 * @return The new file
+	 * @throws IOException Thrown if it could not be made
+	 */
+	static Path 
+	newStagingFile(Path dir, String prefix, String suffix) 
+			throws IOException 
+	{
+		while(true){
+			try {
+				return Files.createFile(
+						dir.resolve(stagingName(prefix, suffix)));
+			}
+			catch(FileAlreadyExistsException e){
+				//Try another name
+			}
+		}
+	}
+	
+	private static String 
+	stagingName(String prefix, String suffix){
+		return prefix+Long.toUnsignedString(
+				ThreadLocalRandom.current().nextLong(), 36)+suffix;
+	}
+	
+	static void 
+	deleteRecursively(Path p) throws IOException{
+		if(!Files.exists(p)){
+			return;
 		}
+		if(Files.isDirectory(p)){
+			try(Stream<Path> files = Files.list(p)){
+				for(Path child : (Iterable<Path>) files::iterator){
+					deleteRecursively(child);
+				}
+			}
+		}
+		Files.delete(p);
+	}
+
+	@Override
+	protected void 
+	storeEntry(String name, PersistentDataEntry pde) 
+			throws PersistenceException 
+	{
+		if(incremental){
+			storeIfChanged(name, pde);
+		}
+		else if(streaming){
+			writeEntry(pde, stagingDir.resolve(fileName(name)));
+		}
+		else {
+			super.storeEntry(name, pde);
+		}
+	}
+	
+	/**
+	 * Serialize an entry once into memory, hash the bytes, and only write
+	 * them if no existing entry file has the same content.
+	 */
+	private void 
+	storeIfChanged(String name, PersistentDataEntry pde) 
+			throws PersistenceException
+	{
+		ByteArrayOutputStream json = new ByteArrayOutputStream();
+		try(Writer w = new OutputStreamWriter(json, StandardCharsets.UTF_8);
+			JsonWriter jw = gson().newJsonWriter(new BufferedWriter(w)))
+		{
+			gson().toJson(pde, PersistentDataEntry.class, jw);
+		}
+		catch (IOException | RuntimeException e) {
+			throw new PersistenceException("Error while serializing entry '"
+					+name+"': "+e.getLocalizedMessage());
+		}
+		EntryManifest.HashingStream hash = new EntryManifest.HashingStream();
+		try {
+			json.writeTo(hash);
+		}
+		catch (IOException e) {
+			//Hashing does not do any I/O
+			throw new IllegalStateException(e);
+		}
+		EntryManifest.Record record = hash.toRecord();
+		newManifest.put(name, record);
+		
+		Path file = entryFile(name);
+		try {
+			//The manifest holds the size of the JSON, not the compressed file
+			if(record.equals(oldManifest.get(name)) && Files.exists(file)
+			   && (compressed || Files.size(file) == record.size))
+			{
+				return;
+			}
+		}
+		catch (IOException e) {
+			//Could not check the old file, so write it again
+		}
+		String match = oldManifest.search(record);
+		if(match != null && Files.exists(entryFile(match))){
+			copiedEntries.put(name, match);
+			return;
+		}
+		Path tmp = saveDir.resolve("."+fileName(name)+".tmp");
+		changedEntries.put(name, tmp);
+		try(FileChannel channel = FileChannel.open(tmp, 
+				StandardOpenOption.CREATE, 
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+			OutputStream out = compressed 
+					? new GZIPOutputStream(Channels.newOutputStream(channel), 
+							writeBufferSize)
+					: Channels.newOutputStream(channel))
+		{
+			json.writeTo(out);
+		}
+		catch (IOException e) {
+			throw new PersistenceException("Error while writing file '"
+					+tmp.getFileName()+"': "+e.getLocalizedMessage());
+		}
+	}
+	
+	/**
+	 * Stream an entry to a file through a {@link JsonWriter}
+	 * @param pde The entry to write
+	 * @param file The file to write the entry to
+	 * @throws PersistenceException Thrown if the file could not be written
+	 */
+	private void 
+	writeEntry(PersistentDataEntry pde, Path file) 
+			throws PersistenceException
+	{
+		try(FileChannel channel = FileChannel.open(file, 
+				StandardOpenOption.CREATE, 
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+			Writer w = newEntryWriter(channel);
+			JsonWriter jw = gson().newJsonWriter(w))
+		{
+			gson().toJson(pde, PersistentDataEntry.class, jw);
+		}
+		catch (IOException | RuntimeException e) {
+			throw new PersistenceException("Error while writing file '"
+					+file.getFileName()+"': "+e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Make a buffered writer to an entry file, which compresses the entry
+	 * if {@link #isCompressed()}.  The channel is closed if the writer 
+	 * cannot be made.
+	 */
+	private Writer 
+	newEntryWriter(FileChannel channel) throws IOException {
+		if(compressed){
+			OutputStream out = Channels.newOutputStream(channel);
+			try {
+				return new BufferedWriter(new OutputStreamWriter(
+						new GZIPOutputStream(out, writeBufferSize), 
+						StandardCharsets.UTF_8), writeBufferSize);
+			}
+			catch(IOException | RuntimeException e){
+				out.close();
+				throw e;
+			}
+		}
+		return Channels.newWriter(channel, 
+				StandardCharsets.UTF_8.newEncoder(), writeBufferSize);
 	}
 
 	@Override
 	protected void 
 	storeFile(String name, String data) throws PersistenceException {
+		if(compressed){
+			writeCompressed(name, data);
+			return;
+		}
 		Writer w = null;
 		try {
-			File f = saveDir.resolve(name+".json").toFile();
+			File f = stagingDir.resolve(fileName(name)).toFile();
 			w = new FileWriter(f);
 		} 
 		catch (IOException e) {
@@ -158,5 +782,22 @@ public class JsonFileSerializer extends JsonSerializer {
 		}
 		
 	}
+	
+	private void 
+	writeCompressed(String name, String data) throws PersistenceException {
+		try(FileChannel channel = FileChannel.open(
+				stagingDir.resolve(fileName(name)), 
+				StandardOpenOption.CREATE, 
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+			Writer w = newEntryWriter(channel))
+		{
+			w.write(data);
+		} 
+		catch (IOException e) {
+			throw new PersistenceException("Error while writing file: "
+					+e.getLocalizedMessage());
+		}
+	}
 
 }
@@ -1,6 +1,14 @@
 package org.snrg_nyc.persistence;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -8,6 +16,8 @@ import com.google.gson.GsonBuilder;
 abstract class JsonSerializer implements ExperimentSerializer {
 
 	private Gson gson;
+	private int threadCount = 1;
+	
 	/**
 	 * @param gBuilder A GsonBuilder with any settings that the user requires,
 	 *  such as type adapters and style settings.
@@ -16,17 +26,61 @@ abstract class JsonSerializer implements ExperimentSerializer {
 	public JsonSerializer(GsonBuilder gBuilder){
 		super();		
 		gson = gBuilder
-			   .registerTypeAdapter(
-					   PersistentDataEntry.class, 
-					   new PersistentDataEntry.JsonAdapter())
+			   .registerTypeAdapterFactory(
+					   new PersistentDataEntry.JsonAdapterFactory())
 			   .create();
 	}
 
 	abstract protected void validateEnvironment(String name)
 			throws PersistenceException;
+	
+	/**
+	 * Called once every entry of an experiment has been stored, so 
+	 * subclasses can make the new data visible.
+	 * @param name The name of the experiment
+	 * @throws PersistenceException Thrown if the stored entries could not
+	 * be committed
+	 */
+	protected void 
+	commitExperiment(String name) throws PersistenceException {}
+	
+	/**
+	 * Called instead of {@link #commitExperiment} when storing an entry 
+	 * fails, so subclasses can discard anything that was partially written.
+	 * @param name The name of the experiment
+	 */
+	protected void 
+	abortExperiment(String name) {}
 
-	abstract protected void storeFile(String name, String data)
-			throws PersistenceException;
+	/**
+	 * Write a single entry that has been converted to a JSON string.  This
+	 * is only called by {@link #storeEntry}, so subclasses that override 
+	 * that without calling it do not need to implement this.
+	 * @param name The ID of the entry
+	 * @param data The entry as JSON
+	 * @throws PersistenceException Thrown if the entry could not be stored
+	 */
+	protected void 
+	storeFile(String name, String data) throws PersistenceException {
+		throw new UnsupportedOperationException(getClass().getSimpleName()
+				+" does not store entries as strings");
+	}
+	
+	/**
+	 * Write a single entry of the experiment.  By default the entry is 
+	 * converted to a JSON string and passed to {@link #storeFile}, 
+	 * subclasses may override this to write the entry without building 
+	 * the whole string.
+	 * @param name The ID of the entry
+	 * @param pde The wrapped object to store
+	 * @throws PersistenceException Thrown if the entry could not be stored
+	 */
+	protected void 
+	storeEntry(String name, PersistentDataEntry pde) 
+			throws PersistenceException
+	{
+		storeFile(name, gson.toJson(pde));
+	}
 	
 	@Override
 	public void 
@@ -34,12 +88,119 @@ abstract class JsonSerializer implements ExperimentSerializer {
 			throws PersistenceException 
 	{
 		validateEnvironment(name);
-		
-		for(String fileName : dataEntries.keySet()){
-			PersistentDataEntry pde = new PersistentDataEntry(name, dataEntries.get(fileName));
-			storeFile(fileName, gson.toJson(pde));
+		try {
+			List<Callable<Void>> tasks = new ArrayList<>(dataEntries.size());
+			for(Map.Entry<String, Transferable> e : dataEntries.entrySet()){
+				PersistentDataEntry pde = 
+						new PersistentDataEntry(name, e.getValue());
+				tasks.add(() ->{
+					storeEntry(e.getKey(), pde);
+					return null;
+				});
+			}
+			runTasks(tasks);
+			commitExperiment(name);
+		}
+		catch(PersistenceException e){
+			abortExperiment(name);
+			throw e;
+		}
+		catch(RuntimeException e){
+			abortExperiment(name);
+			throw new PersistenceException("Error while storing experiment '"
+					+name+"': "+e.toString());
 		}
-		
+	}
+	
+	/**
+	 * Run a group of independent tasks, such as storing or loading the 
+	 * entries of an experiment.  With more than one thread, the tasks are 
+	 * run on a fixed pool of {@link #getThreadCount()} threads.  If any task 
+	 * fails, the remaining tasks are cancelled and the first error is thrown 
+	 * once every running task has stopped.
+	 * @param tasks The tasks to run
+	 * @return The results of the tasks, in the same order as the tasks
+	 * @throws PersistenceException Thrown if any of the tasks failed
+	 */
+	protected <T> List<T> 
+	runTasks(List<? extends Callable<T>> tasks) throws PersistenceException {
+		List<T> results = new ArrayList<>(tasks.size());
+		if(threadCount == 1 || tasks.size() < 2){
+			try {
+				for(Callable<T> task : tasks){
+					results.add(task.call());
+				}
+			}
+			catch(PersistenceException | RuntimeException e){
+				throw e;
+			}
+			catch(Exception e){
+				throw new PersistenceException(e.toString());
+			}
+			return results;
+		}
+		int threads = Math.min(threadCount, tasks.size());
+		ExecutorService pool = Executors.newFixedThreadPool(threads, r ->{
+			Thread t = new Thread(r, "experiment-io");
+			t.setDaemon(true);
+			return t;
+		});
+		try {
+			List<Future<T>> futures = new ArrayList<>(tasks.size());
+			for(Callable<T> task : tasks){
+				futures.add(pool.submit(task));
+			}
+			for(Future<T> future : futures){
+				results.add(future.get());
+			}
+		}
+		catch(ExecutionException e){
+			Throwable cause = e.getCause();
+			if(cause instanceof PersistenceException){
+				throw (PersistenceException) cause;
+			}
+			if(cause instanceof RuntimeException){
+				throw (RuntimeException) cause;
+			}
+			throw new PersistenceException(cause.toString());
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new PersistenceException("Interrupted while running tasks");
+		}
+		finally {
+			pool.shutdownNow();
+			try {
+				pool.awaitTermination(1, TimeUnit.MINUTES);
+			} 
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Set how many entries may be stored or loaded at the same time.
+	 * <p>
+	 * With more than one thread, {@link #storeEntry} is called concurrently
+	 * from a bounded pool, so subclasses must be able to store different 
+	 * entries at once.
+	 * @param threads The number of threads to use, 1 to handle every entry
+	 * on the calling thread
+	 */
+	public void 
+	setThreadCount(int threads){
+		if(threads < 1){
+			throw new IllegalArgumentException(
+					"The thread count must be positive: "+threads);
+		}
+		threadCount = threads;
+	}
+	
+	public int 
+	getThreadCount(){
+		return threadCount;
 	}
 
 	protected Gson gson(){
@@ -1,18 +1,21 @@
 package org.snrg_nyc.persistence;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.lang.reflect.Type;
 
 import org.snrg_nyc.model.PropertiesEditor;
 import org.snrg_nyc.model.internal.NodeProperty;
 import org.snrg_nyc.model.internal.UnivariatDistributionSettings;
 
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
+import com.google.gson.Gson;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * A class to wrap {@link Transferable} objects into a format that
@@ -32,42 +35,126 @@ class PersistentDataEntry implements Serializable {
 	
 	static final long serialVersionUID = 1L;
 	
-	static class JsonAdapter implements JsonDeserializer<PersistentDataEntry>{
+	/**
+	 * Creates {@link JsonAdapter}s, which need the {@link Gson} instance 
+	 * to read and write the wrapped objects.
+	 */
+	static class JsonAdapterFactory implements TypeAdapterFactory {
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T> TypeAdapter<T> 
+		create(Gson gson, TypeToken<T> type) {
+			if(type.getRawType() != PersistentDataEntry.class){
+				return null;
+			}
+			return (TypeAdapter<T>) new JsonAdapter(gson);
+		}
+	}
+	
+	/**
+	 * Reads and writes entries in a single streaming pass.
+	 * <p>
+	 * The "Type" field is written before the object, so when reading the 
+	 * object can be bound to its class as it is parsed.  If a file lists 
+	 * the object first, it is buffered as a tree until the type is known.
+	 */
+	static class JsonAdapter extends TypeAdapter<PersistentDataEntry> {
+		private final Gson gson;
+		
+		JsonAdapter(Gson gson){
+			this.gson = gson;
+		}
+		
+		@Override
+		public void 
+		write(JsonWriter out, PersistentDataEntry pde) throws IOException {
+			if(pde == null){
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("ExperimentName").value(pde.expName);
+			out.name("Type").value(pde.type);
+			out.name("ObjectID").value(pde.id);
+			out.name("Object");
+			writeObject(out, pde.object);
+			out.endObject();
+		}
+		
+		@SuppressWarnings("unchecked")
+		private <T> void 
+		writeObject(JsonWriter out, T object) throws IOException {
+			if(object == null){
+				out.nullValue();
+			}
+			else {
+				Class<T> cls = (Class<T>) object.getClass();
+				gson.getAdapter(cls).write(out, object);
+			}
+		}
+		
 		@Override
 		public PersistentDataEntry 
-		deserialize(
-				JsonElement js, 
-				Type type, 
-				JsonDeserializationContext context)
-				throws JsonParseException 
-		{
+		read(JsonReader in) throws IOException {
+			String name = null;
+			String className = null;
+			Transferable object = null;
+			JsonElement objectjs = null;
 			
-			JsonObject jsWrapper = js.getAsJsonObject();
-			String name = jsWrapper.get("ExperimentName").getAsString();
-			String className = jsWrapper.get("Type").getAsString();
-			JsonObject objectjs = jsWrapper.get("Object").getAsJsonObject();
-			
-			//Try to infer the class name, use a generic Object otherwise
-			Class<?> innerClass = null;
-			for(String pkgName : searchPackages){
-				try {
-					innerClass = Class.forName(pkgName+"."+className);
-				} catch (ClassNotFoundException e) {
-					//That wasn't the package, ignore
-					continue;
+			in.beginObject();
+			while(in.hasNext()){
+				switch(in.nextName()){
+				case "ExperimentName":
+					name = in.nextString();
+					break;
+				case "Type":
+					className = in.nextString();
+					break;
+				case "Object":
+					if(className != null){
+						object = gson.getAdapter(innerClass(className))
+								.read(in);
+					}
+					else {
+						objectjs = gson.getAdapter(JsonElement.class).read(in);
+					}
+					break;
+				default:
+					in.skipValue();
+					break;
 				}
 			}
-			//Extra cases for changed class names
-			if(className.equals("UnivariatDistribution")) {
-				innerClass = UnivariatDistributionSettings.class;
+			in.endObject();
+			
+			if(className == null){
+				throw new JsonParseException("Entry is missing its type");
+			}
+			if(objectjs != null){
+				object = gson.fromJson(objectjs, innerClass(className));
 			}
-			if(innerClass == null){
-				throw new JsonNoClassException(className);
+			if(object == null){
+				throw new JsonParseException("Entry is missing its object");
 			}
-			return new PersistentDataEntry(
-					name, context.deserialize(objectjs, innerClass));
+			return new PersistentDataEntry(name, object);
 		}
-		
+	}
+	
+	static {
+		TransferableTypes.register(UnivariatDistributionSettings.class);
+		//Extra cases for changed class names
+		TransferableTypes.registerAlias(
+				"UnivariatDistribution", UnivariatDistributionSettings.class);
+	}
+	
+	/**
+	 * Find the class for the simple name of a stored object
+	 * @param className The simpleName of the class, as stored in the entry
+	 * @return The class of the stored object
+	 * @throws JsonNoClassException Thrown if no known class has the name
+	 */
+	static Class<? extends Transferable> 
+	innerClass(String className) throws JsonNoClassException {
+		return TransferableTypes.lookup(className);
 	}
 	
 	@SerializedName("ExperimentName")
@@ -89,14 +176,14 @@ class PersistentDataEntry implements Serializable {
 		this.object = object;
 		
 		//Check if the object can be deserialized
-		String packageName = object.getClass().getPackage().getName();
-		boolean match = false;
-		for(String s : searchPackages){
-			if(s.equals(packageName)){
-				match = true;
-			}
+		Class<?> stored = null;
+		try {
+			stored = innerClass(type);
+		}
+		catch(JsonNoClassException e){
+			//Reported below
 		}
-		if(!match){
+		if(stored != object.getClass()){
 			System.err.println(
 					"Warning: an object was added to a "
 					+ "persistent data entry that cannot be deserialized: "
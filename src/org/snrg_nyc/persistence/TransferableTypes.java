@@ -0,0 +1,86 @@
+package org.snrg_nyc.persistence;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A registry of the {@link Transferable} classes that can be stored in an
+ * experiment, by the type name written with each entry.
+ * <p>
+ * Types are normally registered ahead of time (see {@link #register}), so
+ * looking up the type of an entry is a single map lookup.  Names that were
+ * not registered are searched for once in
+ * {@link PersistentDataEntry#searchPackages}, and the result is remembered,
+ * including names that did not match any class.
+ * @author Devin Hastings
+ */
+public final class TransferableTypes {
+	private static final Map<String, Optional<Class<? extends Transferable>>>
+		types = new ConcurrentHashMap<>();
+
+	private TransferableTypes(){}
+
+	/**
+	 * Register classes under their simple names, which is the type name
+	 * that {@link PersistentDataEntry} stores
+	 * @param classes The classes to register
+	 */
+	@SafeVarargs
+	public static void
+	register(Class<? extends Transferable>... classes){
+		for(Class<? extends Transferable> c : classes){
+			types.put(c.getSimpleName(), Optional.of(c));
+		}
+	}
+
+	/**
+	 * Register an extra name for a class, such as a name the class had in
+	 * older experiment files
+	 * @param alias The other name of the class
+	 * @param c The class to read entries with the alias as
+	 */
+	public static void
+	registerAlias(String alias, Class<? extends Transferable> c){
+		types.put(alias, Optional.of(c));
+	}
+
+	/**
+	 * Get the class for a stored type name
+	 * @param name The type name, as stored in the entry
+	 * @return The class of the stored object
+	 * @throws JsonNoClassException Thrown if no known class has the name
+	 */
+	static Class<? extends Transferable>
+	lookup(String name) throws JsonNoClassException {
+		Optional<Class<? extends Transferable>> c = types.get(name);
+		if(c == null){
+			c = types.computeIfAbsent(name, TransferableTypes::search);
+		}
+		if(!c.isPresent()){
+			throw new JsonNoClassException(name);
+		}
+		return c.get();
+	}
+
+	/**
+	 * Search the known packages for a class that was not registered
+	 */
+	private static Optional<Class<? extends Transferable>>
+	search(String name){
+		for(String pkgName : PersistentDataEntry.searchPackages){
+			Class<?> c;
+			try {
+				c = Class.forName(pkgName+"."+name);
+			}
+			catch (ClassNotFoundException e) {
+				//That wasn't the package, ignore
+				continue;
+			}
+			if(Transferable.class.isAssignableFrom(c)){
+				return Optional.of(c.asSubclass(Transferable.class));
+			}
+		}
+		return Optional.empty();
+	}
+}
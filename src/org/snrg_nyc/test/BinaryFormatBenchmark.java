@@ -0,0 +1,98 @@
+package org.snrg_nyc.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.snrg_nyc.model.EditorException;
+import org.snrg_nyc.model.EditorTester;
+import org.snrg_nyc.model.NodeEditor;
+import org.snrg_nyc.persistence.BinaryExperimentSerializer;
+import org.snrg_nyc.persistence.JsonFileSerializer;
+import org.snrg_nyc.persistence.PersistenceException;
+
+/**
+ * Compares the size and save/load time of the binary experiment format with
+ * the JSON files written by {@link JsonFileSerializer}, and checks that an
+ * experiment converted from binary back to JSON gives exactly the same files.
+ * <p>
+ * Usage: <code>BinaryFormatBenchmark [properties] [ranges] [runs]</code>
+ * @author Devin Hastings
+ */
+public class BinaryFormatBenchmark {
+
+	public static void
+	main(String[] args) 
+			throws EditorException, IOException, PersistenceException
+	{
+		int props = 10000;
+		int ranges = 8;
+		int runs = 3;
+		if(args.length > 0){
+			props = Integer.parseInt(args[0]);
+		}
+		if(args.length > 1){
+			ranges = Integer.parseInt(args[1]);
+		}
+		if(args.length > 2){
+			runs = Integer.parseInt(args[2]);
+		}
+		System.out.printf("Building experiment: %d properties, %d ranges\n",
+				props, ranges);
+		EditorTester bl = new NodeEditor();
+		PersistenceBenchmark.buildExperiment(bl, props, ranges, 42);
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		bl.utest_setSerializer(b -> new JsonFileSerializer(b));
+		PersistenceBenchmark.run("JSON", bl, runs);
+
+		bl.utest_setSerializer(b -> {
+			JsonFileSerializer s = new JsonFileSerializer(b);
+			s.setStreaming(true);
+			s.setThreadCount(threads);
+			return s;
+		});
+		PersistenceBenchmark.run("JSON-Parallel", bl, runs);
+
+		bl.utest_setSerializer(b -> new BinaryExperimentSerializer(b));
+		PersistenceBenchmark.run("Binary", bl, runs);
+
+		bl.utest_setSerializer(b -> {
+			BinaryExperimentSerializer s = new BinaryExperimentSerializer(b);
+			s.setThreadCount(threads);
+			return s;
+		});
+		PersistenceBenchmark.run("Binary-Parallel", bl, runs);
+
+		//Save the same experiment both ways, and compare the JSON files
+		String name = "benchmark_roundtrip";
+		bl.utest_setSerializer(b -> new JsonFileSerializer(b));
+		bl.save(name);
+		BinaryExperimentSerializer[] binary = {null};
+		bl.utest_setSerializer(
+				b -> binary[0] = new BinaryExperimentSerializer(b));
+		bl.save(name);
+
+		Path json = JsonFileSerializer.savePath.resolve(name);
+		Path exported = Files.createTempDirectory("roundtrip");
+		binary[0].exportJson(name, exported);
+		int mismatches = 0;
+		int files = 0;
+		try(Stream<Path> dir = Files.list(json)){
+			for(Path p : (Iterable<Path>) dir::iterator){
+				files++;
+				Path q = exported.resolve(p.getFileName());
+				if(!Files.exists(q) || !Arrays.equals(Files.readAllBytes(p), 
+						Files.readAllBytes(q)))
+				{
+					mismatches++;
+					System.out.println("Round trip mismatch: "+p.getFileName());
+				}
+			}
+		}
+		System.out.printf("Round trip: %d of %d files identical\n",
+				files - mismatches, files);
+	}
+}
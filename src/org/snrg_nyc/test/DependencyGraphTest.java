@@ -0,0 +1,294 @@
+package org.snrg_nyc.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.snrg_nyc.model.EditorException;
+import org.snrg_nyc.model.EditorTester;
+import org.snrg_nyc.model.NodeEditor;
+import org.snrg_nyc.model.PropertyID;
+import org.snrg_nyc.persistence.JsonFileSerializer;
+import org.snrg_nyc.util.DependencyGraph;
+
+/**
+ * Checks {@link DependencyGraph} and the editor's evaluation order against
+ * brute force.  Random edges are added to graphs, and each one must be
+ * rejected exactly when it would make a cycle, leaving the graph as it was,
+ * while the order and levels must match a search of every path.  Then
+ * random properties are committed to editors, some after the dependency
+ * graph was built and some before, and the evaluation order must put each
+ * property after its dependencies, as the hand-set dependency levels do,
+ * with the longest chain of dependencies as each minimum level, before and
+ * after saving and loading.
+ * <p>
+ * Usage: <code>DependencyGraphTest [trials] [seed]</code>
+ * @author Devin Hastings
+ */
+public class DependencyGraphTest {
+	private static int failures = 0;
+
+	public static void
+	main(String[] args) throws EditorException, IOException {
+		int trials = 50;
+		long seed = 42;
+		if(args.length > 0){
+			trials = Integer.parseInt(args[0]);
+		}
+		if(args.length > 1){
+			seed = Long.parseLong(args[1]);
+		}
+		Random rand = new Random(seed);
+		for(int t = 0; t < trials; t++){
+			graph(rand, "trial "+t);
+		}
+		for(int t = 0; t < Math.max(1, trials / 10); t++){
+			editor(rand, "editor "+t);
+		}
+		if(failures > 0){
+			System.out.println(failures+" checks failed");
+			System.exit(1);
+		}
+		System.out.println("All dependency graph checks passed");
+	}
+
+	/**
+	 * Add random edges to a graph, checking each against brute force
+	 */
+	private static void
+	graph(Random rand, String trial){
+		int n = 2 + rand.nextInt(40);
+		DependencyGraph g = new DependencyGraph();
+		for(int v = 0; v < n; v++){
+			g.addVertex();
+		}
+		boolean[][] edges = new boolean[n][n];
+		for(int e = 0, count = rand.nextInt(n * 3); e < count; e++){
+			int from = rand.nextInt(n);
+			int to = rand.nextInt(n);
+			boolean cycle = from == to || reaches(edges, to, from);
+			int[] order = g.order();
+			int[] levels = levels(g);
+			if(g.addEdge(from, to) == cycle){
+				fail(trial+": edge "+from+" -> "+to+" was "
+						+(cycle ? "accepted, but makes a cycle" : "rejected"));
+				return;
+			}
+			if(cycle){
+				if(!Arrays.equals(order, g.order()) 
+						|| !Arrays.equals(levels, levels(g)))
+				{
+					fail(trial+": rejecting edge "+from+" -> "+to
+							+" changed the graph");
+					return;
+				}
+				continue;
+			}
+			edges[from][to] = true;
+			for(int v = 0; v < n; v++){
+				for(int w = 0; w < n; w++){
+					if(edges[v][w] && g.position(v) >= g.position(w)){
+						fail(trial+": "+v+" comes after "+w
+								+", which depends on it");
+						return;
+					}
+				}
+				if(g.level(v) != longestChain(edges, v)){
+					fail(trial+": vertex "+v+" has level "+g.level(v)
+							+" instead of "+longestChain(edges, v));
+					return;
+				}
+			}
+		}
+	}
+
+	private static int[]
+	levels(DependencyGraph g){
+		int[] levels = new int[g.size()];
+		for(int v = 0; v < levels.length; v++){
+			levels[v] = g.level(v);
+		}
+		return levels;
+	}
+
+	/**
+	 * @return If there is a path from one vertex to another
+	 */
+	private static boolean
+	reaches(boolean[][] edges, int from, int to){
+		if(from == to){
+			return true;
+		}
+		for(int w = 0; w < edges.length; w++){
+			if(edges[from][w] && reaches(edges, w, to)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return The number of edges in the longest path that ends at a vertex
+	 */
+	private static int
+	longestChain(boolean[][] edges, int to){
+		int longest = 0;
+		for(int v = 0; v < edges.length; v++){
+			if(edges[v][to]){
+				longest = Math.max(longest, longestChain(edges, v) + 1);
+			}
+		}
+		return longest;
+	}
+
+	/**
+	 * Commit random properties, in and out of a layer, and check the
+	 * evaluation order and minimum levels as they are committed and after
+	 * loading them
+	 */
+	private static void
+	editor(Random rand, String trial) throws EditorException, IOException {
+		EditorTester bl = new NodeEditor();
+		int lid = bl.layer_new("layer");
+		int count = 10 + rand.nextInt(30);
+		for(int i = 0; i < count; i++){
+			boolean inLayer = i > 0 && rand.nextInt(4) == 0;
+			if(inLayer){
+				bl.scratch_newInLayer(lid, "layer_property_"+i, 
+						"EnumeratorProperty", "A layer property");
+			}
+			else {
+				bl.scratch_new("property_"+i, "EnumeratorProperty", 
+						"A property");
+			}
+			int level = rand.nextInt(6);
+			bl.scratch_setDependencyLevel(level);
+			List<Integer> rids = new ArrayList<>();
+			for(int r = 0; r < 2; r++){
+				rids.add(bl.scratch_addRange("range_"+r));
+			}
+			for(int dep : bl.scratch_getPotentialDependencies()){
+				if(rand.nextInt(3) == 0){
+					bl.scratch_addDependency(dep);
+				}
+			}
+			Map<Integer, Float> dist = new HashMap<>();
+			for(int rid : rids){
+				dist.put(rid, 1f);
+			}
+			bl.scratch_setDefaultDistribution(dist);
+			bl.scratch_commit();
+			//Build the graph partway, so later commits are added to it
+			if(i == count / 2){
+				check(bl, trial+", partway");
+			}
+		}
+		check(bl, trial);
+		String name = "dependency_graph_test";
+		bl.save(name);
+		bl.load(name);
+		check(bl, trial+", loaded");
+		delete(JsonFileSerializer.savePath.resolve(name));
+	}
+
+	private static void
+	check(EditorTester bl, String step) throws EditorException {
+		List<PropertyID> order = bl.nodeProp_getEvaluationOrder();
+		Map<String, Integer> position = new HashMap<>();
+		for(int i = 0; i < order.size(); i++){
+			position.put(key(order.get(i)), i);
+		}
+		int expected = bl.nodeProp_getPropertyIDs().size();
+		for(int lid : bl.layer_getLayerIDs()){
+			expected += bl.nodeProp_getPropertyIDs(lid).size();
+		}
+		if(position.size() != expected || order.size() != expected){
+			fail(step+": the order has "+order.size()
+					+" properties instead of "+expected);
+		}
+		Map<Integer, Integer> chains = new HashMap<>();
+		for(PropertyID id : order){
+			List<Integer> deps = id.usesLayer()
+					? bl.nodeProp_getDependencyIDs(id.lid(), id.pid())
+					: bl.nodeProp_getDependencyIDs(id.pid());
+			int level = id.usesLayer()
+					? bl.nodeProp_getDependencyLevel(id.lid(), id.pid())
+					: bl.nodeProp_getDependencyLevel(id.pid());
+			int minimum = id.usesLayer()
+					? bl.nodeProp_getMinimumDependencyLevel(id.lid(), id.pid())
+					: bl.nodeProp_getMinimumDependencyLevel(id.pid());
+			int chain = 0;
+			for(int dep : deps){
+				Integer at = position.get(key(new PropertyID(dep)));
+				if(at == null || at >= position.get(key(id))){
+					fail(step+": "+key(id)+" comes before its dependency "+dep);
+				}
+				if(bl.nodeProp_getDependencyLevel(dep) >= level){
+					fail(step+": "+key(id)
+							+" has a dependency at the same level or higher");
+				}
+				chain = Math.max(chain, longestChain(bl, dep, chains) + 1);
+			}
+			if(minimum != chain || minimum > level){
+				fail(step+": "+key(id)+" has minimum level "+minimum
+						+", but its longest chain is "+chain
+						+" and its level is "+level);
+			}
+		}
+	}
+
+	/**
+	 * @return The longest chain of dependencies leading to a property outside
+	 * of layers, which layer properties depend on
+	 */
+	private static int
+	longestChain(EditorTester bl, int pid, Map<Integer, Integer> chains)
+			throws EditorException
+	{
+		Integer known = chains.get(pid);
+		if(known != null){
+			return known;
+		}
+		int chain = 0;
+		for(int dep : bl.nodeProp_getDependencyIDs(pid)){
+			chain = Math.max(chain, longestChain(bl, dep, chains) + 1);
+		}
+		chains.put(pid, chain);
+		return chain;
+	}
+
+	private static String
+	key(PropertyID id){
+		return id.usesLayer() 
+				? id.lid()+":"+id.pid() 
+				: Integer.toString(id.pid());
+	}
+
+	private static void
+	fail(String message){
+		failures++;
+		System.out.println("FAILED: "+message);
+	}
+
+	private static void
+	delete(Path p) throws IOException {
+		if(!Files.exists(p)){
+			return;
+		}
+		if(Files.isDirectory(p)){
+			try(Stream<Path> files = Files.list(p)){
+				for(Path child : (Iterable<Path>) files::iterator){
+					delete(child);
+				}
+			}
+		}
+		Files.delete(p);
+	}
+}
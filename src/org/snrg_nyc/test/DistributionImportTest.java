@@ -0,0 +1,246 @@
+package org.snrg_nyc.test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.snrg_nyc.model.DistributionImportException;
+import org.snrg_nyc.model.EditorException;
+import org.snrg_nyc.model.EditorTester;
+import org.snrg_nyc.model.NodeEditor;
+
+/**
+ * Checks adding a table of conditional distributions at once.  A block
+ * with one bad row must be rejected with the index of that row and the
+ * reason it is bad, without adding any of its rows, for each kind of bad
+ * row.  The same block without the bad row must then add every row, in
+ * order, with the conditions and probabilities it was given, while bad
+ * headers are rejected before any row is read.
+ * <p>
+ * Usage: <code>DistributionImportTest</code>
+ * @author Devin Hastings
+ */
+public class DistributionImportTest {
+	private static int failures = 0;
+
+	/** The row made bad in each rejected block */
+	private static final int badRow = 3;
+
+	public static void
+	main(String[] args) throws EditorException {
+		EditorTester bl = new NodeEditor();
+		int x = dependency(bl, "x", 3);
+		int y = dependency(bl, "y", 2);
+		List<Integer> xs = bl.nodeProp_getRangeItemIDs(x);
+		List<Integer> ys = bl.nodeProp_getRangeItemIDs(y);
+		bl.scratch_new("target", "EnumeratorProperty", "Depends on x and y");
+		bl.scratch_setDependencyLevel(1);
+		bl.scratch_addRange("low");
+		bl.scratch_addRange("high");
+		bl.scratch_addDependency(x);
+		bl.scratch_addDependency(y);
+		List<Integer> rids = bl.scratch_getRangeIDs();
+
+		//The range columns are in the opposite order to the range IDs
+		int[] depCols = {x, y};
+		int[] rangeCols = {rids.get(1), rids.get(0)};
+		int[][] conditions = {
+			{xs.get(0), ys.get(0)},
+			{xs.get(0), ys.get(1)},
+			{xs.get(1), -1},
+			{xs.get(2), ys.get(0)},
+			{-1, ys.get(1)},
+		};
+		float[][] probabilities = {
+			{1, 2},
+			{0.5f, 0.5f},
+			{3, 0},
+			{0.25f, 0.75f},
+			{4, 1},
+		};
+
+		reject(bl, "a negative probability", depCols, rangeCols, conditions,
+				withRow(probabilities, new float[]{-1, 1}),
+				"greater than zero, found -1.0 for range 'high'");
+		reject(bl, "a missing range", depCols, rangeCols,
+				withRow(conditions, new int[]{7, ys.get(0)}), probabilities,
+				"range ID '7' was not found in property 'x'");
+		reject(bl, "no conditions", depCols, rangeCols,
+				withRow(conditions, new int[]{-1, -1}), probabilities,
+				"cannot be empty");
+		reject(bl, "a short row", depCols, rangeCols,
+				withRow(conditions, new int[]{xs.get(2)}), probabilities,
+				"expected 2 conditions");
+		reject(bl, "a long row", depCols, rangeCols, conditions,
+				withRow(probabilities, new float[]{1, 1, 1}),
+				"expected 2 probabilities");
+
+		List<Integer> cids = bl.scratch_addConditionalDistributions(depCols,
+				rangeCols, conditions, probabilities);
+		if(cids.size() != conditions.length){
+			fail(cids.size()+" distributions were added for "
+					+conditions.length+" rows");
+		}
+		if(!cids.equals(bl.scratch_getConditionalDistributionIDs())){
+			fail("the distributions were not added in order of row: "+cids
+					+", "+bl.scratch_getConditionalDistributionIDs());
+		}
+		for(int row = 0; row < cids.size() && row < conditions.length; row++){
+			Map<Integer, Integer> conds = new HashMap<>();
+			for(int col = 0; col < depCols.length; col++){
+				if(conditions[row][col] != -1){
+					conds.put(depCols[col], conditions[row][col]);
+				}
+			}
+			int cid = cids.get(row);
+			if(!conds.equals(bl.scratch_getDistributionCondition(cid))){
+				fail("row "+row+" has the conditions "
+						+bl.scratch_getDistributionCondition(cid)
+						+" instead of "+conds);
+			}
+			Map<Integer, Float> probs = bl.scratch_getDistribution(cid);
+			for(int col = 0; col < rangeCols.length; col++){
+				Float p = probs.get(rangeCols[col]);
+				if(p == null || p != probabilities[row][col]){
+					fail("row "+row+" has "+p+" for range "+rangeCols[col]
+							+" instead of "+probabilities[row][col]);
+				}
+			}
+		}
+
+		headers(bl, new int[]{x, x}, rangeCols, "in two columns");
+		headers(bl, depCols, new int[]{rids.get(0)}, "every range");
+		int missing = bl.nodeProp_getPropertyIDs().size() + 5;
+		headers(bl, new int[]{missing, y}, rangeCols, "does not exist");
+		if(bl.scratch_getConditionalDistributionIDs().size() != cids.size()){
+			fail("blocks with bad headers added distributions");
+		}
+		bl.scratch_setDefaultDistribution(weights(rids, 1, 1));
+		bl.scratch_commit();
+
+		if(failures > 0){
+			System.out.println(failures+" checks failed");
+			System.exit(1);
+		}
+		System.out.println("All distribution import checks passed");
+	}
+
+	/**
+	 * Add a block where one row is bad, which must be rejected without
+	 * adding any rows
+	 * @param reason Part of the error expected for the bad row
+	 */
+	private static void
+	reject(EditorTester bl, String kind, int[] depCols, int[] rangeCols,
+			int[][] conds, float[][] probs, String reason)
+			throws EditorException
+	{
+		int before = bl.scratch_getConditionalDistributionIDs().size();
+		try {
+			bl.scratch_addConditionalDistributions(depCols, rangeCols, conds,
+					probs);
+			fail(kind+": the block was accepted");
+			return;
+		}
+		catch(DistributionImportException e){
+			SortedMap<Integer, String> errors = e.getRowErrors();
+			if(errors.size() != 1 || !errors.containsKey(badRow)){
+				fail(kind+": the rows rejected were "+errors.keySet()
+						+" rather than "+badRow);
+			}
+			else if(!errors.get(badRow).contains(reason)){
+				fail(kind+": row "+badRow+" was rejected because '"
+						+errors.get(badRow)+"', not '"+reason+"'");
+			}
+			if(!e.getMessage().contains("Row "+badRow+": ")){
+				fail(kind+": the message does not list row "+badRow+": "
+						+e.getMessage());
+			}
+		}
+		int after = bl.scratch_getConditionalDistributionIDs().size();
+		if(after != before){
+			fail(kind+": "+(after - before)+" rows of a rejected block "
+					+"were added");
+		}
+	}
+
+	/**
+	 * Add a block with bad headers, which must be rejected as a whole
+	 * rather than row by row
+	 */
+	private static void
+	headers(EditorTester bl, int[] depCols, int[] rangeCols, String reason){
+		int[][] conds = new int[1][depCols.length];
+		float[][] probs = new float[1][rangeCols.length];
+		try {
+			bl.scratch_addConditionalDistributions(depCols, rangeCols, conds,
+					probs);
+			fail("bad headers were accepted");
+		}
+		catch(DistributionImportException e){
+			fail("bad headers were rejected row by row: "+e.getMessage());
+		}
+		catch(EditorException e){
+			if(!e.getMessage().contains(reason)){
+				fail("bad headers were rejected with: "+e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @return A copy of the conditions with the bad row replaced
+	 */
+	private static int[][]
+	withRow(int[][] conditions, int[] row){
+		int[][] copy = conditions.clone();
+		copy[badRow] = row;
+		return copy;
+	}
+
+	/**
+	 * @return A copy of the probabilities with the bad row replaced
+	 */
+	private static float[][]
+	withRow(float[][] probabilities, float[] row){
+		float[][] copy = probabilities.clone();
+		copy[badRow] = row;
+		return copy;
+	}
+
+	/**
+	 * Commit a property with a uniform default distribution
+	 * @return The ID of the property
+	 */
+	private static int
+	dependency(EditorTester bl, String name, int ranges)
+			throws EditorException
+	{
+		bl.scratch_new(name, "EnumeratorProperty", "A dependency");
+		bl.scratch_setDependencyLevel(0);
+		for(int r = 0; r < ranges; r++){
+			bl.scratch_addRange(name+"_"+r);
+		}
+		float[] weights = new float[ranges];
+		Arrays.fill(weights, 1);
+		bl.scratch_setDefaultDistribution(
+				weights(bl.scratch_getRangeIDs(), weights));
+		return bl.scratch_commit();
+	}
+
+	private static Map<Integer, Float>
+	weights(List<Integer> rids, float... weights){
+		Map<Integer, Float> map = new HashMap<>();
+		for(int i = 0; i < weights.length; i++){
+			map.put(rids.get(i), weights[i]);
+		}
+		return map;
+	}
+
+	private static void
+	fail(String message){
+		failures++;
+		System.out.println("FAILED: "+message);
+	}
+}
@@ -0,0 +1,97 @@
+package org.snrg_nyc.test;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.snrg_nyc.model.internal.ValuesListProperty.Distribution;
+
+/**
+ * Compares the heap used by distributions stored as maps of boxed range IDs
+ * and probabilities (the old layout of {@link Distribution}) with the
+ * float arrays it uses now, and the time taken to read every probability
+ * through a copied map and through the read-only buffer.
+ * <p>
+ * Usage: <code>DistributionMemoryBenchmark [distributions] [ranges]</code>
+ * @author Devin Hastings
+ */
+public class DistributionMemoryBenchmark {
+
+	public static void
+	main(String[] args) {
+		int count = 100000;
+		int ranges = 8;
+		if(args.length > 0){
+			count = Integer.parseInt(args[0]);
+		}
+		if(args.length > 1){
+			ranges = Integer.parseInt(args[1]);
+		}
+		System.out.printf("%d distributions, %d ranges\n", count, ranges);
+		Random rand = new Random(42);
+
+		long before = usedHeap();
+		List<Map<Integer, Float>> maps = new ArrayList<>(count);
+		for(int i = 0; i < count; i++){
+			Map<Integer, Float> m = new HashMap<>();
+			for(int r = 0; r < ranges; r++){
+				m.put(r, rand.nextFloat());
+			}
+			maps.add(m);
+		}
+		long mapBytes = usedHeap() - before;
+
+		before = usedHeap();
+		List<Distribution> arrays = new ArrayList<>(count);
+		for(int i = 0; i < count; i++){
+			float[] p = new float[ranges];
+			for(int r = 0; r < ranges; r++){
+				p[r] = rand.nextFloat();
+			}
+			arrays.add(new Distribution(p));
+		}
+		long arrayBytes = usedHeap() - before;
+
+		System.out.printf("Map    heap: %8.1f MB (%5.1f bytes/distribution)\n",
+				mapBytes / 1e6, (double) mapBytes / count);
+		System.out.printf("Array  heap: %8.1f MB (%5.1f bytes/distribution)\n",
+				arrayBytes / 1e6, (double) arrayBytes / count);
+
+		for(int run = 0; run < 3; run++){
+			long t = System.nanoTime();
+			double sum = 0;
+			for(Map<Integer, Float> m : maps){
+				//Reading through the old accessor copied the map each time
+				for(float f : new HashMap<>(m).values()){
+					sum += f;
+				}
+			}
+			long mapTime = System.nanoTime() - t;
+
+			t = System.nanoTime();
+			double sum2 = 0;
+			for(Distribution d : arrays){
+				FloatBuffer b = d.probabilities();
+				for(int r = 0; r < b.limit(); r++){
+					sum2 += b.get(r);
+				}
+			}
+			long arrayTime = System.nanoTime() - t;
+			System.out.printf("Read all: map copy %7.1f ms, buffer %7.1f ms"
+					+ " (sums %.1f, %.1f)\n",
+					mapTime / 1e6, arrayTime / 1e6, sum, sum2);
+		}
+	}
+
+	private static long
+	usedHeap(){
+		Runtime rt = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++){
+			System.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+}
@@ -0,0 +1,135 @@
+package org.snrg_nyc.test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.function.IntConsumer;
+
+import org.snrg_nyc.model.EditorException;
+import org.snrg_nyc.model.EditorTester;
+import org.snrg_nyc.model.NodeEditor;
+
+/**
+ * Compares reading every property, range and conditional distribution ID
+ * of a synthetic experiment through the <code>get...IDs()</code> lists
+ * and through the <code>forEach...ID()</code> visitors, by time and by the
+ * bytes allocated per pass.
+ * <p>
+ * Usage: <code>IDIterationBenchmark [properties] [ranges] [passes]</code>
+ * @author Devin Hastings
+ */
+public class IDIterationBenchmark {
+
+	private interface Pass {
+		long run(EditorTester bl) throws EditorException;
+	}
+
+	public static void
+	main(String[] args) throws EditorException {
+		int props = 10000;
+		int ranges = 8;
+		int passes = 200;
+		if(args.length > 0){
+			props = Integer.parseInt(args[0]);
+		}
+		if(args.length > 1){
+			ranges = Integer.parseInt(args[1]);
+		}
+		if(args.length > 2){
+			passes = Integer.parseInt(args[2]);
+		}
+		System.out.printf("Building experiment: %d properties, %d ranges\n",
+				props, ranges);
+		EditorTester bl = new NodeEditor();
+		PersistenceBenchmark.buildExperiment(bl, props, ranges, 42);
+
+		for(int round = 0; round < 3; round++){
+			run("Lists", bl, passes, IDIterationBenchmark::lists);
+			run("Visitors", bl, passes, IDIterationBenchmark::visitors);
+		}
+	}
+
+	private static long
+	lists(EditorTester bl) throws EditorException {
+		long sum = 0;
+		for(int pid : bl.nodeProp_getPropertyIDs()){
+			for(int rid : bl.nodeProp_getRangeItemIDs(pid)){
+				sum += rid;
+			}
+			for(int cid : bl.nodeProp_getConditionalDistributionIDs(pid)){
+				sum += cid;
+			}
+		}
+		return sum;
+	}
+
+	private static long
+	visitors(EditorTester bl) throws EditorException {
+		PropertyVisitor visitor = new PropertyVisitor(bl);
+		bl.nodeProp_forEachPropertyID(visitor);
+		if(visitor.error != null){
+			throw visitor.error;
+		}
+		return visitor.sum;
+	}
+
+	/**
+	 * Sums the range and conditional distribution IDs of each property 
+	 * it visits, keeping the first error since an {@link IntConsumer} 
+	 * cannot throw one
+	 */
+	private static class PropertyVisitor implements IntConsumer {
+		private final EditorTester bl;
+		long sum = 0;
+		EditorException error;
+		private final IntConsumer add = id -> sum += id;
+
+		PropertyVisitor(EditorTester bl){
+			this.bl = bl;
+		}
+
+		@Override
+		public void
+		accept(int pid){
+			if(error != null){
+				return;
+			}
+			try {
+				bl.nodeProp_forEachRangeItemID(pid, add);
+				bl.nodeProp_forEachConditionalDistributionID(pid, add);
+			}
+			catch(EditorException e){
+				error = e;
+			}
+		}
+	}
+
+	private static void
+	run(String label, EditorTester bl, int passes, Pass pass)
+			throws EditorException
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long bytes = allocatedBytes(threads);
+		long sum = 0;
+		long t = System.nanoTime();
+		for(int i = 0; i < passes; i++){
+			sum += pass.run(bl);
+		}
+		t = System.nanoTime() - t;
+		bytes = allocatedBytes(threads) - bytes;
+		System.out.printf("%-8s %8.3f ms/pass %12d bytes/pass (sum %d)\n",
+				label, t / 1e6 / passes, bytes / passes, sum);
+	}
+
+	/**
+	 * @return The bytes this thread has allocated, or 0 if the JVM cannot
+	 * tell
+	 */
+	private static long
+	allocatedBytes(ThreadMXBean threads){
+		if(threads instanceof com.sun.management.ThreadMXBean){
+			return ((com.sun.management.ThreadMXBean) threads)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,71 @@
+package org.snrg_nyc.test;
+
+import java.util.List;
+import java.util.Map;
+
+import org.snrg_nyc.model.EditorException;
+import org.snrg_nyc.model.EditorTester;
+import org.snrg_nyc.model.NodeEditor;
+import org.snrg_nyc.model.PopulationSampler;
+
+/**
+ * Measures how long working out the marginal distribution of every
+ * property of a synthetic experiment takes, the first time and once the
+ * results are kept, and compares the marginals with how often each range
+ * is drawn by a {@link PopulationSampler}.
+ * <p>
+ * Usage: <code>MarginalInferenceBenchmark [properties] [ranges] [nodes]</code>
+ * @author Devin Hastings
+ */
+public class MarginalInferenceBenchmark {
+
+	public static void
+	main(String[] args) throws EditorException, InterruptedException {
+		int props = 200;
+		int ranges = 8;
+		int nodes = 400000;
+		if(args.length > 0){
+			props = Integer.parseInt(args[0]);
+		}
+		if(args.length > 1){
+			ranges = Integer.parseInt(args[1]);
+		}
+		if(args.length > 2){
+			nodes = Integer.parseInt(args[2]);
+		}
+		System.out.printf("Building experiment: %d properties, %d ranges\n",
+				props, ranges);
+		EditorTester bl = new NodeEditor();
+		PersistenceBenchmark.buildExperiment(bl, props, ranges, 42);
+		List<Integer> pids = bl.nodeProp_getPropertyIDs();
+
+		for(String pass : new String[]{"First", "Kept"}){
+			long t = System.nanoTime();
+			for(int pid : pids){
+				bl.nodeProp_getMarginalDistribution(pid);
+			}
+			t = System.nanoTime() - t;
+			System.out.printf("%-5s pass: %8.2f ms\n", pass, t / 1e6);
+		}
+
+		PopulationSampler sampler = bl.population_newSampler();
+		int[] population = sampler.sample(7, nodes, 1);
+		int width = sampler.columnCount();
+		double worst = 0;
+		for(int c = 0; c < width; c++){
+			int pid = sampler.getColumnID(c).pid();
+			Map<Integer, Float> marginal = 
+					bl.nodeProp_getMarginalDistribution(pid);
+			int[] counts = new int[ranges];
+			for(int i = 0; i < nodes; i++){
+				counts[population[i * width + c]]++;
+			}
+			for(int rid : marginal.keySet()){
+				double share = (double) counts[rid] / nodes;
+				worst = Math.max(worst, Math.abs(share - marginal.get(rid)));
+			}
+		}
+		System.out.printf("Largest difference from %d sampled nodes: %.5f\n",
+				nodes, worst);
+	}
+}
@@ -0,0 +1,231 @@
+package org.snrg_nyc.test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.snrg_nyc.model.EditorException;
+import org.snrg_nyc.model.EditorTester;
+import org.snrg_nyc.model.NodeEditor;
+import org.snrg_nyc.model.internal.ValuesListProperty;
+import org.snrg_nyc.model.internal.ValuesListProperty.Distribution;
+
+/**
+ * Checks the marginal distributions worked out by the editor against ones
+ * worked out by hand, for a two-level chain of properties and for a
+ * diamond, where two properties share an ancestor and a third depends on
+ * both of them.  Ancestors' distributions are then changed in place, so
+ * the marginals must be worked out again from the joints that are still
+ * current, and a distribution with no weight must be rejected only when
+ * the ranges it is used for can happen.
+ * <p>
+ * Usage: <code>MarginalInferenceTest</code>
+ * @author Devin Hastings
+ */
+public class MarginalInferenceTest {
+	private static int failures = 0;
+
+	/** How far a marginal can be from the hand-worked one */
+	private static final double tolerance = 1e-5;
+
+	public static void
+	main(String[] args) throws EditorException {
+		EditorTester bl = new NodeEditor();
+		//A: 1/4, 3/4
+		newProperty(bl, "a", 0);
+		bl.scratch_setDefaultDistribution(weights(bl, 1, 3));
+		int a = bl.scratch_commit();
+		//B: 1/2, 1/2 when A is a_0 (the default), 0.2, 0.8 when A is a_1
+		newProperty(bl, "b", 1, a);
+		bl.scratch_addConditionalDistribution(given(bl, a, 1),
+				weights(bl, 0.2f, 0.8f));
+		bl.scratch_setDefaultDistribution(weights(bl, 1, 1));
+		int b = bl.scratch_commit();
+		//C: 3/4, 1/4 when B is b_0, 1/2, 1/2 when B is b_1
+		newProperty(bl, "c", 2, b);
+		bl.scratch_addConditionalDistribution(given(bl, b, 0),
+				weights(bl, 3, 1));
+		bl.scratch_addConditionalDistribution(given(bl, b, 1),
+				weights(bl, 1, 1));
+		bl.scratch_setDefaultDistribution(weights(bl, 1, 1));
+		int c = bl.scratch_commit();
+		//D: 0.9, 0.1 when A is a_0, 0.4, 0.6 when A is a_1
+		newProperty(bl, "d", 1, a);
+		bl.scratch_addConditionalDistribution(given(bl, a, 0),
+				weights(bl, 0.9f, 0.1f));
+		bl.scratch_addConditionalDistribution(given(bl, a, 1),
+				weights(bl, 0.4f, 0.6f));
+		bl.scratch_setDefaultDistribution(weights(bl, 1, 1));
+		int d = bl.scratch_commit();
+		//E: 0.9, 0.1 for b_0 and d_0, 0.2, 0.8 for b_1 and d_1, else 1/2
+		newProperty(bl, "e", 2, b, d);
+		bl.scratch_addConditionalDistribution(given(bl, b, 0, d, 0),
+				weights(bl, 0.9f, 0.1f));
+		bl.scratch_addConditionalDistribution(given(bl, b, 1, d, 1),
+				weights(bl, 0.2f, 0.8f));
+		bl.scratch_setDefaultDistribution(weights(bl, 1, 1));
+		int e = bl.scratch_commit();
+
+		//B: 0.25 * 0.5 + 0.75 * 0.2
+		check(bl, "chain", b, 0.275);
+		//C: 0.275 * 0.75 + 0.725 * 0.5
+		check(bl, "chain", c, 0.56875);
+		//D: 0.25 * 0.9 + 0.75 * 0.4
+		check(bl, "diamond", d, 0.525);
+		//E, summing over A, since B and D are only independent given A:
+		//0.9 * (b_0 d_0) + 0.2 * (b_1 d_1) + 0.5 * (the rest), where
+		//b_0 d_0 = 0.25 * 0.5 * 0.9 + 0.75 * 0.2 * 0.4 = 0.1725,
+		//b_1 d_1 = 0.25 * 0.5 * 0.1 + 0.75 * 0.8 * 0.6 = 0.3725
+		check(bl, "diamond", e, 0.9 * 0.1725 + 0.2 * 0.3725 + 0.5 * 0.455);
+
+		//Change B when A is a_0 to 0.9, 0.1, which leaves A's joint current
+		setDefault(bl, b, 0.9f, 0.1f);
+		check(bl, "edited B", a, 0.25);
+		//B: 0.25 * 0.9 + 0.75 * 0.2
+		check(bl, "edited B", b, 0.375);
+		//C: 0.375 * 0.75 + 0.625 * 0.5
+		check(bl, "edited B", c, 0.59375);
+		//b_0 d_0 = 0.25 * 0.9 * 0.9 + 0.06 = 0.2625,
+		//b_1 d_1 = 0.25 * 0.1 * 0.1 + 0.36 = 0.3625
+		check(bl, "edited B", e, 0.9 * 0.2625 + 0.2 * 0.3625 + 0.5 * 0.375);
+		check(bl, "edited B", d, 0.525);
+
+		//Change A to 1/2, 1/2, which every other property depends on
+		setDefault(bl, a, 1, 1);
+		//B: 0.5 * 0.9 + 0.5 * 0.2
+		check(bl, "edited A", b, 0.55);
+		//C: 0.55 * 0.75 + 0.45 * 0.5
+		check(bl, "edited A", c, 0.6375);
+		//b_0 d_0 = 0.5 * 0.9 * 0.9 + 0.5 * 0.2 * 0.4 = 0.445,
+		//b_1 d_1 = 0.5 * 0.1 * 0.1 + 0.5 * 0.8 * 0.6 = 0.245
+		check(bl, "edited A", e, 0.9 * 0.445 + 0.2 * 0.245 + 0.5 * 0.31);
+		//D: 0.5 * 0.9 + 0.5 * 0.4
+		check(bl, "edited A", d, 0.65);
+
+		noWeight();
+		if(failures > 0){
+			System.out.println(failures+" checks failed");
+			System.exit(1);
+		}
+		System.out.println("All marginal inference checks passed");
+	}
+
+	/**
+	 * A distribution whose weights are all zero is only an error when the
+	 * ranges of the dependencies it is used for can happen
+	 */
+	private static void
+	noWeight() throws EditorException {
+		EditorTester bl = new NodeEditor();
+		//H_1 never happens
+		newProperty(bl, "h", 0);
+		bl.scratch_setDefaultDistribution(weights(bl, 1, 0));
+		int h = bl.scratch_commit();
+		newProperty(bl, "g", 1, h);
+		bl.scratch_addConditionalDistribution(given(bl, h, 1),
+				weights(bl, 0, 0));
+		bl.scratch_setDefaultDistribution(weights(bl, 0.3f, 0.7f));
+		int g = bl.scratch_commit();
+		check(bl, "unreachable zero weights", g, 0.3);
+
+		//Once H_1 can happen, G has no distribution to use for it
+		setDefault(bl, h, 1, 1);
+		try {
+			bl.nodeProp_getMarginalDistribution(g);
+			fail("a reachable distribution with no weight was accepted");
+		}
+		catch(EditorException e){
+			if(!e.getMessage().contains("no weight")){
+				fail("a distribution with no weight was rejected with: "
+						+e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Start a scratch property with two ranges
+	 */
+	private static void
+	newProperty(EditorTester bl, String name, int level, int... deps)
+			throws EditorException
+	{
+		bl.scratch_new(name, "EnumeratorProperty", "A test property");
+		bl.scratch_setDependencyLevel(level);
+		bl.scratch_addRange(name+"_0");
+		bl.scratch_addRange(name+"_1");
+		for(int dep : deps){
+			bl.scratch_addDependency(dep);
+		}
+	}
+
+	/**
+	 * @return The scratch property's weights, in the order of its ranges
+	 */
+	private static Map<Integer, Float>
+	weights(EditorTester bl, float... weights) throws EditorException {
+		List<Integer> rids = bl.scratch_getRangeIDs();
+		Map<Integer, Float> map = new HashMap<>();
+		for(int i = 0; i < weights.length; i++){
+			map.put(rids.get(i), weights[i]);
+		}
+		return map;
+	}
+
+	/**
+	 * @param pidsAndRanges Pairs of a property ID and the index of one of
+	 * its ranges
+	 * @return The conditions, by property ID
+	 */
+	private static Map<Integer, Integer>
+	given(EditorTester bl, int... pidsAndRanges) throws EditorException {
+		Map<Integer, Integer> conds = new HashMap<>();
+		for(int i = 0; i < pidsAndRanges.length; i += 2){
+			int pid = pidsAndRanges[i];
+			List<Integer> rids = bl.nodeProp_getRangeItemIDs(pid);
+			conds.put(pid, rids.get(pidsAndRanges[i + 1]));
+		}
+		return conds;
+	}
+
+	/**
+	 * Change a committed property's default distribution in place
+	 */
+	private static void
+	setDefault(EditorTester bl, int pid, float... weights)
+			throws EditorException
+	{
+		List<Integer> rids = bl.nodeProp_getRangeItemIDs(pid);
+		Map<Integer, Float> map = new HashMap<>();
+		for(int i = 0; i < weights.length; i++){
+			map.put(rids.get(i), weights[i]);
+		}
+		((ValuesListProperty<?>) bl.utest_getNodeProperty(pid))
+				.setDefaultDistribution(new Distribution(map));
+	}
+
+	/**
+	 * Compare a two-range property's marginal with the share of its first
+	 * range worked out by hand
+	 */
+	private static void
+	check(EditorTester bl, String step, int pid, double first)
+			throws EditorException
+	{
+		List<Integer> rids = bl.nodeProp_getRangeItemIDs(pid);
+		Map<Integer, Float> marginal = bl.nodeProp_getMarginalDistribution(pid);
+		double[] expected = {first, 1 - first};
+		for(int i = 0; i < expected.length; i++){
+			Float share = marginal.get(rids.get(i));
+			if(share == null || Math.abs(share - expected[i]) > tolerance){
+				fail(step+": "+bl.nodeProp_getName(pid)+" has "+share
+						+" in range "+i+" instead of "+expected[i]);
+			}
+		}
+	}
+
+	private static void
+	fail(String message){
+		failures++;
+		System.out.println("FAILED: "+message);
+	}
+}
@@ -0,0 +1,215 @@
+package org.snrg_nyc.test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.snrg_nyc.model.EditorException;
+import org.snrg_nyc.model.EditorTester;
+import org.snrg_nyc.model.NodeEditor;
+import org.snrg_nyc.persistence.BinaryExperimentSerializer;
+import org.snrg_nyc.persistence.JsonArchiveSerializer;
+import org.snrg_nyc.persistence.JsonFileSerializer;
+
+/**
+ * Measures how long it takes to save and load a synthetic experiment
+ * with different serializer settings.
+ * <p>
+ * Usage: <code>PersistenceBenchmark [properties] [ranges] [runs]</code>
+ * @author Devin Hastings
+ */
+public class PersistenceBenchmark {
+
+	public static void
+	main(String[] args) throws EditorException, IOException {
+		int props = 2000;
+		int ranges = 8;
+		int runs = 5;
+		if(args.length > 0){
+			props = Integer.parseInt(args[0]);
+		}
+		if(args.length > 1){
+			ranges = Integer.parseInt(args[1]);
+		}
+		if(args.length > 2){
+			runs = Integer.parseInt(args[2]);
+		}
+		System.out.printf("Building experiment: %d properties, %d ranges\n",
+				props, ranges);
+		EditorTester bl = new NodeEditor();
+		buildExperiment(bl, props, ranges, 42);
+
+		bl.utest_setSerializer(b -> new JsonFileSerializer(b));
+		run("String", bl, runs);
+
+		bl.utest_setSerializer(b -> {
+			JsonFileSerializer s = new JsonFileSerializer(b);
+			s.setStreaming(true);
+			return s;
+		});
+		run("Streaming", bl, runs);
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		bl.utest_setSerializer(b -> {
+			JsonFileSerializer s = new JsonFileSerializer(b);
+			s.setStreaming(true);
+			s.setThreadCount(threads);
+			return s;
+		});
+		run("Parallel", bl, runs);
+
+		bl.utest_setSerializer(b -> {
+			JsonFileSerializer s = new JsonFileSerializer(b);
+			s.setIncremental(true);
+			s.setThreadCount(threads);
+			return s;
+		});
+		run("Incremental", bl, runs);
+
+		bl.utest_setSerializer(b -> {
+			JsonFileSerializer s = new JsonFileSerializer(b);
+			s.setStreaming(true);
+			s.setCompressed(true);
+			s.setThreadCount(threads);
+			return s;
+		});
+		run("Compressed", bl, runs);
+
+		bl.utest_setSerializer(b -> {
+			JsonArchiveSerializer s = new JsonArchiveSerializer(b);
+			s.setThreadCount(threads);
+			return s;
+		});
+		run("Archive", bl, runs);
+	}
+
+	/**
+	 * Fill an editor with enumerator properties, where each property
+	 * depends on the one before it (in groups of four dependency levels) and
+	 * has a conditional distribution for each of its dependency's ranges.
+	 * @param bl The editor to add properties to
+	 * @param props The number of properties to add
+	 * @param ranges The number of ranges in each property
+	 * @param seed The seed for the random probabilities
+	 * @throws EditorException Thrown if the editor rejects a property
+	 */
+	static void
+	buildExperiment(EditorTester bl, int props, int ranges, long seed)
+			throws EditorException
+	{
+		Random rand = new Random(seed);
+		Map<Integer, Float> probs = new HashMap<>();
+		Map<Integer, Integer> conds = new HashMap<>();
+		int lastPID = -1;
+
+		for(int i = 0; i < props; i++){
+			int level = i % 4;
+			bl.scratch_new("property_"+i, "EnumeratorProperty",
+					"Synthetic property "+i);
+			bl.scratch_setDependencyLevel(level);
+			for(int r = 0; r < ranges; r++){
+				bl.scratch_addRange("range_"+i+"_"+r);
+			}
+			List<Integer> rids = bl.scratch_getRangeIDs();
+			if(level > 0){
+				bl.scratch_addDependency(lastPID);
+				for(int depRID : bl.nodeProp_getRangeItemIDs(lastPID)){
+					conds.clear();
+					conds.put(lastPID, depRID);
+					probs.clear();
+					for(int rid : rids){
+						probs.put(rid, rand.nextFloat()*10);
+					}
+					bl.scratch_addConditionalDistribution(conds, probs);
+				}
+			}
+			probs.clear();
+			for(int rid : rids){
+				probs.put(rid, rand.nextFloat()*10);
+			}
+			bl.scratch_setDefaultDistribution(probs);
+			lastPID = bl.scratch_commit();
+		}
+	}
+
+	static void
+	run(String label, EditorTester bl, int runs)
+			throws EditorException, IOException
+	{
+		String name = "benchmark_"+label.toLowerCase();
+
+		//Warm up
+		bl.save(name);
+
+		long peak = 0;
+		long saveTime = 0;
+		for(int i = 0; i < runs; i++){
+			resetPeakHeap();
+			long start = System.nanoTime();
+			bl.save(name);
+			saveTime += System.nanoTime() - start;
+			peak = Math.max(peak, peakHeap());
+		}
+		long loadTime = 0;
+		for(int i = 0; i < runs; i++){
+			long start = System.nanoTime();
+			bl.load(name);
+			loadTime += System.nanoTime() - start;
+		}
+		Path saved = JsonFileSerializer.savePath.resolve(name);
+		if(!Files.exists(saved)){
+			saved = JsonArchiveSerializer.archivePath(name);
+		}
+		if(!Files.exists(saved)){
+			saved = BinaryExperimentSerializer.binaryPath(name);
+		}
+		long bytes = directorySize(saved);
+		double saveSec = saveTime / 1e9 / runs;
+
+		System.out.printf("%-12s save: %8.1f ms (%6.1f MB/s)  "
+				+ "load: %8.1f ms  size: %8.1f KB  peak heap: %6.1f MB\n",
+				label, saveSec*1e3, bytes / saveSec / (1 << 20),
+				loadTime / 1e6 / runs, bytes / 1024.0, peak / (1024.0*1024));
+	}
+
+	static long
+	directorySize(Path dir) throws IOException {
+		if(!Files.isDirectory(dir)){
+			return Files.size(dir);
+		}
+		try(Stream<Path> files = Files.walk(dir)){
+			return files.filter(Files::isRegularFile)
+			            .mapToLong(p -> p.toFile().length())
+			            .sum();
+		}
+	}
+
+	static void
+	resetPeakHeap(){
+		System.gc();
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+			if(pool.getType() == MemoryType.HEAP){
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	static long
+	peakHeap(){
+		long peak = 0;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+			if(pool.getType() == MemoryType.HEAP){
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+}
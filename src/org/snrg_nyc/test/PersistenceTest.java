@@ -0,0 +1,154 @@
+package org.snrg_nyc.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.snrg_nyc.persistence.JsonFileSerializer;
+import org.snrg_nyc.persistence.PersistenceException;
+import org.snrg_nyc.persistence.Transferable;
+import org.snrg_nyc.persistence.TransferableTypes;
+
+import com.google.gson.GsonBuilder;
+
+/**
+ * Checks incremental saves with {@link JsonFileSerializer}: entries that
+ * swap their contents, entries that are renamed and entries that did not
+ * change, both plain and compressed.  Prints each failed check, and exits
+ * with a non-zero status if any failed.
+ * @author Devin Hastings
+ */
+public class PersistenceTest {
+	private static final String name = "persistence_test";
+	private static int failures = 0;
+
+	/** A small entry, so the content of each file is known */
+	static class Note implements Transferable {
+		private static final long serialVersionUID = 1L;
+		String text;
+
+		Note(String text){
+			this.text = text;
+		}
+		@Override
+		public String
+		getObjectID(){
+			return "Note";
+		}
+	}
+
+	public static void
+	main(String[] args) throws PersistenceException, IOException {
+		TransferableTypes.register(Note.class);
+		for(boolean compressed : new boolean[]{false, true}){
+			for(int threads : new int[]{1, 4}){
+				JsonFileSerializer s = 
+						new JsonFileSerializer(new GsonBuilder());
+				s.setIncremental(true);
+				s.setCompressed(compressed);
+				s.setThreadCount(threads);
+				String mode = compressed ? "compressed" : "plain";
+				run(s, mode+", "+threads+" threads");
+			}
+		}
+		if(failures > 0){
+			System.out.println(failures+" checks failed");
+			System.exit(1);
+		}
+		System.out.println("All persistence checks passed");
+	}
+
+	private static void
+	run(JsonFileSerializer s, String mode)
+			throws PersistenceException, IOException
+	{
+		Path dir = JsonFileSerializer.savePath.resolve(name);
+		delete(dir);
+
+		store(s, "a", "AAA", "b", "BBB", "c", "CCC");
+		check(s, mode+", first save", "a", "AAA", "b", "BBB", "c", "CCC");
+
+		store(s, "a", "BBB", "b", "AAA", "c", "CCC");
+		check(s, mode+", swapped", "a", "BBB", "b", "AAA", "c", "CCC");
+
+		store(s, "a", "CCC", "b", "AAA", "c", "BBB");
+		check(s, mode+", rotated", "a", "CCC", "b", "AAA", "c", "BBB");
+
+		store(s, "d", "CCC", "b", "AAA", "c", "BBB");
+		check(s, mode+", renamed", "d", "CCC", "b", "AAA", "c", "BBB");
+
+		Map<Path, FileTime> times = modifiedTimes(dir);
+		store(s, "d", "CCC", "b", "AAA", "c", "BBB");
+		check(s, mode+", unchanged", "d", "CCC", "b", "AAA", "c", "BBB");
+		if(!times.equals(modifiedTimes(dir))){
+			fail(mode+", unchanged: entry files were rewritten");
+		}
+		delete(dir);
+	}
+
+	private static void
+	store(JsonFileSerializer s, String... entries) throws PersistenceException {
+		Map<String, Transferable> map = new HashMap<>();
+		for(int i = 0; i < entries.length; i += 2){
+			map.put(entries[i], new Note(entries[i + 1]));
+		}
+		s.storeExperiment(name, map);
+	}
+
+	private static void
+	check(JsonFileSerializer s, String step, String... entries)
+			throws PersistenceException
+	{
+		Map<String, Transferable> loaded = s.loadExperiment(name);
+		if(loaded.size() != entries.length / 2){
+			fail(step+": expected "+entries.length / 2+" entries, loaded "
+					+loaded.keySet());
+		}
+		for(int i = 0; i < entries.length; i += 2){
+			Transferable t = loaded.get(entries[i]);
+			String text = t instanceof Note ? ((Note) t).text : null;
+			if(!entries[i + 1].equals(text)){
+				fail(step+": entry '"+entries[i]+"' holds "+text
+						+" instead of "+entries[i + 1]);
+			}
+		}
+	}
+
+	private static Map<Path, FileTime>
+	modifiedTimes(Path dir) throws IOException {
+		Map<Path, FileTime> times = new HashMap<>();
+		try(Stream<Path> files = Files.list(dir)){
+			for(Path p : (Iterable<Path>) files::iterator){
+				if(!p.getFileName().toString().startsWith(".")){
+					times.put(p, Files.getLastModifiedTime(p));
+				}
+			}
+		}
+		return times;
+	}
+
+	private static void
+	fail(String message){
+		failures++;
+		System.out.println("FAILED: "+message);
+	}
+
+	private static void
+	delete(Path p) throws IOException {
+		if(!Files.exists(p)){
+			return;
+		}
+		if(Files.isDirectory(p)){
+			try(Stream<Path> files = Files.list(p)){
+				for(Path child : (Iterable<Path>) files::iterator){
+					delete(child);
+				}
+			}
+		}
+		Files.delete(p);
+	}
+}
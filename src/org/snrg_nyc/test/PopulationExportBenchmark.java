@@ -0,0 +1,88 @@
+package org.snrg_nyc.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import org.snrg_nyc.model.EditorException;
+import org.snrg_nyc.model.EditorTester;
+import org.snrg_nyc.model.NodeEditor;
+import org.snrg_nyc.model.PopulationExporter;
+import org.snrg_nyc.model.PopulationExporter.Format;
+import org.snrg_nyc.persistence.JsonFileSerializer;
+
+/**
+ * Measures how fast a {@link PopulationExporter} writes a synthetic
+ * population in each format, with one thread and with every core, and
+ * checks that both give the same file.
+ * <p>
+ * Usage: <code>PopulationExportBenchmark [properties] [nodes]</code>
+ * @author Devin Hastings
+ */
+public class PopulationExportBenchmark {
+
+	public static void
+	main(String[] args)
+			throws EditorException, IOException, InterruptedException
+	{
+		int props = 20;
+		long nodes = 5000000;
+		if(args.length > 0){
+			props = Integer.parseInt(args[0]);
+		}
+		if(args.length > 1){
+			nodes = Long.parseLong(args[1]);
+		}
+		System.out.printf("Building experiment: %d properties, %d nodes\n", 
+				props, nodes);
+		EditorTester bl = new NodeEditor();
+		PersistenceBenchmark.buildExperiment(bl, props, 8, 42);
+		bl.scratch_new("fraction", "FractionProperty", "A fraction property");
+		bl.scratch_setFractionInitValue(0.25f);
+		bl.scratch_commit();
+		PopulationExporter exporter = 
+				new PopulationExporter(bl.population_newSampler());
+
+		Path dir = JsonFileSerializer.savePath.resolve("export_benchmark");
+		int cores = Runtime.getRuntime().availableProcessors();
+		for(Format format : Format.values()){
+			String name = "population." + format.name().toLowerCase();
+			Path file = dir.resolve(name);
+			long expected = -1;
+			for(int threads : new int[]{1, Math.max(2, cores)}){
+				exporter.setThreadCount(threads);
+				long t = System.nanoTime();
+				long bytes = exporter.export(7, nodes, format, file);
+				t = System.nanoTime() - t;
+				System.out.printf(
+						"%-6s %2d threads: %8.1f ms, %7.1f MB, %6.1f MB/s\n",
+						format, threads, t / 1e6, bytes / 1e6, 
+						bytes / (t / 1e3));
+				long crc = checksum(file);
+				if(expected == -1){
+					expected = crc;
+				}
+				else if(crc != expected){
+					System.out.println(
+							"The file changed with the thread count!");
+				}
+			}
+			Files.delete(file);
+		}
+		Files.delete(dir);
+	}
+
+	private static long
+	checksum(Path file) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buf = new byte[1 << 16];
+		try(InputStream in = Files.newInputStream(file)){
+			for(int n = in.read(buf); n > 0; n = in.read(buf)){
+				crc.update(buf, 0, n);
+			}
+		}
+		return crc.getValue();
+	}
+}
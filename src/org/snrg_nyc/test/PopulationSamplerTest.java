@@ -0,0 +1,153 @@
+package org.snrg_nyc.test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.snrg_nyc.model.EditorException;
+import org.snrg_nyc.model.EditorTester;
+import org.snrg_nyc.model.NodeEditor;
+import org.snrg_nyc.model.PopulationSampler;
+import org.snrg_nyc.model.internal.ValuesListProperty;
+import org.snrg_nyc.model.internal.ValuesListProperty.Distribution;
+
+/**
+ * Checks that a sampled population depends only on the seed, and not on
+ * the number of threads drawing it, including when the last block of
+ * nodes is only partly filled.  Drawing fewer nodes must give the start of
+ * the larger population, and a node that needs a distribution whose
+ * weights are all zero must stop the draw, while such a distribution that
+ * no node can need must not.
+ * <p>
+ * Usage: <code>PopulationSamplerTest</code>
+ * @author Devin Hastings
+ */
+public class PopulationSamplerTest {
+	private static int failures = 0;
+
+	public static void
+	main(String[] args) throws EditorException, InterruptedException {
+		EditorTester bl = new NodeEditor();
+		PersistenceBenchmark.buildExperiment(bl, 12, 4, 7);
+		PopulationSampler sampler = bl.population_newSampler();
+		int width = sampler.columnCount();
+
+		int[] sizes = {1, 100, PopulationSampler.blockSize + 1,
+				PopulationSampler.blockSize * 3 + 5};
+		for(int nodes : sizes){
+			for(long seed : new long[]{0, 42}){
+				int[] single = sampler.sample(seed, nodes, 1);
+				for(int threads : new int[]{2, 4}){
+					int[] many = sampler.sample(seed, nodes, threads);
+					if(!Arrays.equals(single, many)){
+						fail(nodes+" nodes from seed "+seed+" differ between 1 "
+								+"and "+threads+" threads");
+					}
+				}
+			}
+		}
+
+		int nodes = PopulationSampler.blockSize * 2 + 17;
+		int[] all = sampler.sample(3, nodes, 4);
+		int[] start = sampler.sample(3, nodes - 40, 4);
+		if(!Arrays.equals(start, Arrays.copyOf(all, start.length))){
+			fail("a smaller population is not the start of a larger one");
+		}
+		if(Arrays.equals(all, sampler.sample(4, nodes, 4))){
+			fail("two seeds gave the same population");
+		}
+		if(all.length != nodes * width){
+			fail(all.length+" values were drawn for "+nodes+" nodes of "
+					+width+" columns");
+		}
+
+		noWeight();
+		if(failures > 0){
+			System.out.println(failures+" checks failed");
+			System.exit(1);
+		}
+		System.out.println("All population sampler checks passed");
+	}
+
+	/**
+	 * A distribution whose weights are all zero must stop the draw, with
+	 * any number of threads, as soon as a node needs it
+	 */
+	private static void
+	noWeight() throws EditorException, InterruptedException {
+		EditorTester bl = new NodeEditor();
+		bl.scratch_new("h", "EnumeratorProperty", "A dependency");
+		bl.scratch_setDependencyLevel(0);
+		bl.scratch_addRange("h_0");
+		bl.scratch_addRange("h_1");
+		bl.scratch_setDefaultDistribution(weights(bl, 1, 0));
+		int h = bl.scratch_commit();
+		bl.scratch_new("g", "EnumeratorProperty", "Empty when h is h_1");
+		bl.scratch_setDependencyLevel(1);
+		bl.scratch_addRange("g_0");
+		bl.scratch_addRange("g_1");
+		bl.scratch_addDependency(h);
+		Map<Integer, Integer> conds = new HashMap<>();
+		conds.put(h, bl.nodeProp_getRangeItemIDs(h).get(1));
+		bl.scratch_addConditionalDistribution(conds, weights(bl, 0, 0));
+		bl.scratch_setDefaultDistribution(weights(bl, 1, 1));
+		bl.scratch_commit();
+
+		//No node is ever h_1, so the empty distribution is never used
+		int nodes = PopulationSampler.blockSize + 9;
+		bl.population_newSampler().sample(5, nodes, 4);
+
+		//Once h_1 can happen, g cannot be drawn for those nodes
+		List<Integer> hs = bl.nodeProp_getRangeItemIDs(h);
+		Map<Integer, Float> even = new HashMap<>();
+		even.put(hs.get(0), 1f);
+		even.put(hs.get(1), 1f);
+		((ValuesListProperty<?>) bl.utest_getNodeProperty(h))
+				.setDefaultDistribution(new Distribution(even));
+
+		PopulationSampler sampler = bl.population_newSampler();
+		for(int threads : new int[]{1, 4}){
+			try {
+				sampler.sample(5, nodes, threads);
+				fail("a reachable distribution with no weight was drawn "
+						+"with "+threads+" threads");
+			}
+			catch(IllegalStateException e){
+				if(!e.getMessage().contains("'g'")){
+					fail("the empty distribution was rejected with: "
+							+e.getMessage());
+				}
+			}
+		}
+		try {
+			bl.population_sample(5, nodes, 4, null);
+			fail("the editor drew a population with an empty distribution");
+		}
+		catch(EditorException e){
+			if(!e.getMessage().contains("'g'")){
+				fail("the editor rejected the empty distribution with: "
+						+e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @return The scratch property's weights, in the order of its ranges
+	 */
+	private static Map<Integer, Float>
+	weights(EditorTester bl, float... weights) throws EditorException {
+		List<Integer> rids = bl.scratch_getRangeIDs();
+		Map<Integer, Float> map = new HashMap<>();
+		for(int i = 0; i < weights.length; i++){
+			map.put(rids.get(i), weights[i]);
+		}
+		return map;
+	}
+
+	private static void
+	fail(String message){
+		failures++;
+		System.out.println("FAILED: "+message);
+	}
+}
@@ -0,0 +1,119 @@
+package org.snrg_nyc.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.snrg_nyc.model.EditorException;
+import org.snrg_nyc.model.EditorTester;
+import org.snrg_nyc.model.NodeEditor;
+import org.snrg_nyc.model.PopulationSampler;
+import org.snrg_nyc.model.PopulationStore;
+
+/**
+ * Samples a synthetic experiment into {@link PopulationStore}s held in
+ * memory and spilled to a temporary directory, reports how long
+ * sampling and a scan of a column take and how many bytes each node
+ * needs, and checks the stores against the nodes the sampler puts in an
+ * array.
+ * <p>
+ * Usage: <code>PopulationStoreBenchmark [properties] [nodes]</code>
+ * @author Devin Hastings
+ */
+public class PopulationStoreBenchmark {
+
+	public static void
+	main(String[] args)
+			throws EditorException, IOException, InterruptedException
+	{
+		int props = 20;
+		long nodes = 20000000;
+		if(args.length > 0){
+			props = Integer.parseInt(args[0]);
+		}
+		if(args.length > 1){
+			nodes = Long.parseLong(args[1]);
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		System.out.printf(
+				"Building experiment: %d properties, %d nodes, %d threads\n",
+				props, nodes, threads);
+		EditorTester bl = new NodeEditor();
+		PersistenceBenchmark.buildExperiment(bl, props, 8, 42);
+		bl.scratch_new("fraction", "FractionProperty", "A fraction property");
+		bl.scratch_setFractionInitValue(0.25f);
+		bl.scratch_commit();
+		bl.scratch_new("boolean", "BooleanProperty", "A boolean property");
+		bl.scratch_setBooleanInitValue(true);
+		bl.scratch_commit();
+
+		check(bl.population_newSampler());
+		Path dir = Files.createTempDirectory("population");
+		for(boolean spill : new boolean[]{false, true}){
+			long t = System.nanoTime();
+			Path file;
+			try(PopulationStore store = 
+					bl.population_sample(7, nodes, threads, spill ? dir : null))
+			{
+				file = store.getFile();
+				t = System.nanoTime() - t;
+				long bytes = 0;
+				for(int c = 0; c < store.columnCount(); c++){
+					bytes += store.getColumnType(c).bytes(nodes);
+				}
+				System.out.printf("%-9s %8.1f ms, %5.2f bytes/node\n",
+						spill ? "Spilled" : "In memory", t / 1e6, 
+						(double) bytes / nodes);
+
+				t = System.nanoTime();
+				long sum = 0;
+				ByteBuffer col = store.column(0);
+				for(int i = 0; i < col.limit(); i++){
+					sum += col.get(i) & 0xFF;
+				}
+				t = System.nanoTime() - t;
+				System.out.printf("%-9s %8.1f ms to scan '%s' (sum %d)\n",
+						"", t / 1e6, store.getColumnName(0), sum);
+			}
+			if(file != null && Files.exists(file)){
+				System.out.println(
+						"The spilled file was kept after closing the store");
+			}
+		}
+		Files.delete(dir);
+	}
+
+	/**
+	 * Compare a small store with the array the sampler draws for the same
+	 * seed
+	 */
+	private static void
+	check(PopulationSampler sampler) throws InterruptedException {
+		int nodes = PopulationSampler.blockSize * 3 + 5;
+		int[] expected = sampler.sample(7, nodes, 1);
+		PopulationStore store = sampler.newStore(nodes);
+		sampler.sample(7, store, 4);
+		int width = sampler.columnCount();
+		for(int i = 0; i < nodes; i++){
+			for(int c = 0; c < width; c++){
+				if(store.getRangeID(c, i) != expected[i * width + c]){
+					System.out.printf("Node %d differs in '%s'\n", i, 
+							store.getColumnName(c));
+					return;
+				}
+			}
+			if(store.getFraction(width, i) != 0.25f 
+					|| !store.getBoolean(width + 1, i))
+			{
+				System.out.printf("Node %d has the wrong initial values\n", i);
+				return;
+			}
+		}
+		if(store.countValues(width + 1)[1] != nodes){
+			System.out.println("The boolean column has false nodes");
+			return;
+		}
+		System.out.println("The store matches the sampler's nodes");
+	}
+}
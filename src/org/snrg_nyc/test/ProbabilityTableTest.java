@@ -0,0 +1,359 @@
+package org.snrg_nyc.test;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.snrg_nyc.model.EditorException;
+import org.snrg_nyc.model.EditorTester;
+import org.snrg_nyc.model.NodeEditor;
+import org.snrg_nyc.model.internal.EnumeratorProperty;
+import org.snrg_nyc.model.internal.ValuesListProperty;
+import org.snrg_nyc.model.internal.ValuesListProperty.ConditionalDistribution;
+import org.snrg_nyc.model.internal.ValuesListProperty.Distribution;
+import org.snrg_nyc.persistence.JsonFileSerializer;
+
+/**
+ * Checks that storing conditional distributions in a probability table
+ * does not change them.  Random properties are converted from a list to a
+ * table and back, and must give the same distribution for every
+ * assignment of their dependencies each way.  Conditionals are then
+ * changed and removed by the IDs they have in table form.  Finally,
+ * experiments are saved, loaded and saved again, which must give the same
+ * files whether or not the loaded properties were put in tables.
+ * <p>
+ * Usage: <code>ProbabilityTableTest [trials] [seed]</code>
+ * @author Devin Hastings
+ */
+public class ProbabilityTableTest {
+	private static int failures = 0;
+
+	public static void
+	main(String[] args) throws EditorException, IOException {
+		int trials = 200;
+		long seed = 42;
+		if(args.length > 0){
+			trials = Integer.parseInt(args[0]);
+		}
+		if(args.length > 1){
+			seed = Long.parseLong(args[1]);
+		}
+		Random rand = new Random(seed);
+		for(int t = 0; t < trials; t++){
+			roundTrip(rand, "trial "+t);
+		}
+		saveLoadSave(rand, false);
+		saveLoadSave(rand, true);
+		if(failures > 0){
+			System.out.println(failures+" checks failed");
+			System.exit(1);
+		}
+		System.out.println("All probability table checks passed");
+	}
+
+	/**
+	 * Convert a random property to a table and back, then change and remove
+	 * conditionals by their row numbers
+	 */
+	private static void
+	roundTrip(Random rand, String trial) throws EditorException {
+		List<ValuesListProperty<?>> deps = new ArrayList<>();
+		int depCount = 1 + rand.nextInt(3);
+		for(int d = 0; d < depCount; d++){
+			EnumeratorProperty dep = 
+					new EnumeratorProperty("dep_"+d, "A dependency");
+			int ranges = 2 + rand.nextInt(4);
+			for(int r = 0; r < ranges; r++){
+				dep.addRange();
+			}
+			deps.add(dep);
+		}
+		EnumeratorProperty vlp = 
+				new EnumeratorProperty("target", "Depends on the others");
+		int ranges = 2 + rand.nextInt(5);
+		for(int r = 0; r < ranges; r++){
+			vlp.addRange();
+		}
+		for(int d = 0; d < depCount; d++){
+			vlp.addDependency(d);
+		}
+		vlp.setDefaultDistribution(new Distribution(weights(rand, ranges)));
+		int[] radices = radices(deps);
+		int rows = 1;
+		for(int r : radices){
+			rows *= r;
+		}
+		//Conditionals in a random order, some leaving dependencies out so
+		//they overlap
+		List<Integer> order = new ArrayList<>();
+		for(int row = 0; row < rows; row++){
+			order.add(row);
+		}
+		Collections.shuffle(order, rand);
+		for(int row : order.subList(0, rand.nextInt(rows + 1))){
+			Map<Integer, Integer> conds = new HashMap<>();
+			int[] rids = assignment(row, radices);
+			for(int d = 0; d < depCount; d++){
+				if(rand.nextInt(4) != 0){
+					conds.put(d, rids[d]);
+				}
+			}
+			vlp.addConditionalDistribution(
+					new ConditionalDistribution(conds, weights(rand, ranges)));
+		}
+
+		float[][] expected = distributions(vlp, radices, rows);
+		vlp.useProbabilityTable(deps);
+		compare(trial+", as a table", expected, 
+				distributions(vlp, radices, rows));
+		vlp.expandProbabilityTable();
+		compare(trial+", expanded", expected, 
+				distributions(vlp, radices, rows));
+
+		List<Integer> listed = tableRows(vlp, deps);
+		if(listed.isEmpty()){
+			return;
+		}
+		int row = listed.get(rand.nextInt(listed.size()));
+		float[] changed = weights(rand, ranges);
+		vlp.setConditionalDistribution(row, new ConditionalDistribution(
+				conditions(row, radices), changed));
+		expected[row] = normalized(changed);
+		compare(trial+", changed row "+row, expected, 
+				distributions(vlp, radices, rows));
+
+		listed = tableRows(vlp, deps);
+		row = listed.get(rand.nextInt(listed.size()));
+		vlp.removeConditionalDistribution(row);
+		expected[row] = normalized(vlp.getDefaultProbabilities());
+		compare(trial+", removed row "+row, expected, 
+				distributions(vlp, radices, rows));
+	}
+
+	/**
+	 * Put a property in a table and get its listed rows, which are its
+	 * conditional distribution IDs
+	 */
+	private static List<Integer>
+	tableRows(ValuesListProperty<?> vlp, List<ValuesListProperty<?>> deps)
+			throws EditorException
+	{
+		vlp.useProbabilityTable(deps);
+		return vlp.getConditionalDistributionIDs();
+	}
+
+	/**
+	 * @return The normalized distribution that applies to each assignment,
+	 * by row
+	 */
+	private static float[][]
+	distributions(ValuesListProperty<?> vlp, int[] radices, int rows)
+			throws EditorException
+	{
+		float[][] dists = new float[rows][];
+		for(int row = 0; row < rows; row++){
+			int[] rids = assignment(row, radices);
+			int cid = vlp.getMatchingConditional(rids, radices);
+			FloatBuffer weights = cid == ValuesListProperty.DEFAULT_DISTRIBUTION
+					? vlp.getDefaultProbabilities()
+					: vlp.getConDistributionProbabilities(cid);
+			dists[row] = normalized(weights);
+		}
+		return dists;
+	}
+
+	private static void
+	compare(String step, float[][] expected, float[][] actual){
+		for(int row = 0; row < expected.length; row++){
+			if(!Arrays.equals(expected[row], actual[row])){
+				fail(step+": row "+row+" is "+Arrays.toString(actual[row])
+						+" instead of "+Arrays.toString(expected[row]));
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Save experiments with more conditionals than it takes for a loaded
+	 * property to be put in a table, load them and save them again, and
+	 * check the files did not change
+	 * @param ordered If the conditionals are in order of row, so that
+	 * loading can put them in a table, or shuffled with a repeat, so that
+	 * it cannot without changing them
+	 */
+	private static void
+	saveLoadSave(Random rand, boolean ordered)
+			throws EditorException, IOException
+	{
+		String name = "table_test_"+(ordered ? "ordered" : "shuffled");
+		EditorTester bl = new NodeEditor();
+		int[] deps = new int[2];
+		for(int d = 0; d < deps.length; d++){
+			bl.scratch_new("dep_"+d, "EnumeratorProperty", "A dependency");
+			bl.scratch_setDependencyLevel(0);
+			for(int r = 0; r < 5; r++){
+				bl.scratch_addRange("dep_"+d+"_"+r);
+			}
+			bl.scratch_setDefaultDistribution(
+					weightMap(rand, bl.scratch_getRangeIDs()));
+			deps[d] = bl.scratch_commit();
+		}
+		bl.scratch_new("target", "EnumeratorProperty", "Depends on both");
+		bl.scratch_setDependencyLevel(1);
+		for(int r = 0; r < 4; r++){
+			bl.scratch_addRange("target_"+r);
+		}
+		List<Integer> rids = bl.scratch_getRangeIDs();
+		for(int dep : deps){
+			bl.scratch_addDependency(dep);
+		}
+		List<Integer> rows = new ArrayList<>();
+		for(int row = 0; row < 25; row++){
+			rows.add(row);
+		}
+		if(!ordered){
+			Collections.shuffle(rows, rand);
+			rows.set(19, rows.get(0));
+		}
+		for(int row : rows.subList(0, 20)){
+			Map<Integer, Integer> conds = new HashMap<>();
+			List<Integer> first = bl.nodeProp_getRangeItemIDs(deps[0]);
+			List<Integer> second = bl.nodeProp_getRangeItemIDs(deps[1]);
+			conds.put(deps[0], first.get(row / 5));
+			conds.put(deps[1], second.get(row % 5));
+			bl.scratch_addConditionalDistribution(conds, weightMap(rand, rids));
+		}
+		bl.scratch_setDefaultDistribution(weightMap(rand, rids));
+		bl.scratch_commit();
+
+		bl.save(name);
+		Path dir = JsonFileSerializer.savePath.resolve(name);
+		Map<Path, byte[]> saved = new HashMap<>();
+		for(Path p : entryFiles(dir)){
+			saved.put(p.getFileName(), Files.readAllBytes(p));
+		}
+		bl.load(name);
+		bl.save(name);
+		for(Path p : entryFiles(dir)){
+			byte[] before = saved.remove(p.getFileName());
+			if(!Arrays.equals(before, Files.readAllBytes(p))){
+				fail(name+": "+p.getFileName()
+						+" changed after loading and saving");
+			}
+		}
+		if(!saved.isEmpty()){
+			fail(name+": "+saved.keySet()+" missing after loading and saving");
+		}
+		delete(dir);
+	}
+
+	private static List<Path>
+	entryFiles(Path dir) throws IOException {
+		List<Path> files = new ArrayList<>();
+		try(Stream<Path> list = Files.list(dir)){
+			list.filter(p -> p.getFileName().toString().endsWith(".json")
+			                 && !p.getFileName().toString().startsWith("."))
+			    .forEach(files::add);
+		}
+		return files;
+	}
+
+	private static int[]
+	radices(List<ValuesListProperty<?>> deps){
+		int[] radices = new int[deps.size()];
+		for(int d = 0; d < radices.length; d++){
+			radices[d] = deps.get(d).getRangeIDBound();
+		}
+		return radices;
+	}
+
+	/**
+	 * @return The range ID of each dependency for a row, with the last
+	 * dependency changing fastest
+	 */
+	private static int[]
+	assignment(int row, int[] radices){
+		int[] rids = new int[radices.length];
+		for(int d = radices.length - 1; d >= 0; d--){
+			rids[d] = row % radices[d];
+			row /= radices[d];
+		}
+		return rids;
+	}
+
+	private static Map<Integer, Integer>
+	conditions(int row, int[] radices){
+		int[] rids = assignment(row, radices);
+		Map<Integer, Integer> conds = new HashMap<>();
+		for(int d = 0; d < rids.length; d++){
+			conds.put(d, rids[d]);
+		}
+		return conds;
+	}
+
+	private static float[]
+	weights(Random rand, int ranges){
+		float[] w = new float[ranges];
+		for(int r = 0; r < ranges; r++){
+			w[r] = 0.1f + rand.nextFloat() * 10;
+		}
+		return w;
+	}
+
+	private static Map<Integer, Float>
+	weightMap(Random rand, List<Integer> rids){
+		Map<Integer, Float> map = new HashMap<>();
+		for(int rid : rids){
+			map.put(rid, 0.1f + rand.nextFloat() * 10);
+		}
+		return map;
+	}
+
+	private static float[]
+	normalized(float[] weights){
+		return normalized(FloatBuffer.wrap(weights));
+	}
+
+	private static float[]
+	normalized(FloatBuffer weights){
+		double total = 0;
+		for(int r = 0; r < weights.limit(); r++){
+			total += weights.get(r);
+		}
+		float[] p = new float[weights.limit()];
+		for(int r = 0; r < p.length; r++){
+			p[r] = (float) (weights.get(r) / total);
+		}
+		return p;
+	}
+
+	private static void
+	fail(String message){
+		failures++;
+		System.out.println("FAILED: "+message);
+	}
+
+	private static void
+	delete(Path p) throws IOException {
+		if(!Files.exists(p)){
+			return;
+		}
+		if(Files.isDirectory(p)){
+			try(Stream<Path> files = Files.list(p)){
+				for(Path child : (Iterable<Path>) files::iterator){
+					delete(child);
+				}
+			}
+		}
+		Files.delete(p);
+	}
+}
@@ -0,0 +1,79 @@
+package org.snrg_nyc.test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.snrg_nyc.model.EditorException;
+import org.snrg_nyc.model.EditorTester;
+import org.snrg_nyc.model.NodeEditor;
+import org.snrg_nyc.model.PopulationSampler;
+
+/**
+ * Measures how fast a {@link PopulationSampler} draws nodes from a
+ * synthetic experiment with different numbers of threads, checks that
+ * every thread count gives the same nodes, and compares how often each
+ * range of the first property was drawn with its distribution.
+ * <p>
+ * Usage: <code>SamplerBenchmark [properties] [ranges] [nodes]</code>
+ * @author Devin Hastings
+ */
+public class SamplerBenchmark {
+
+	public static void
+	main(String[] args) throws EditorException, InterruptedException {
+		int props = 50;
+		int ranges = 8;
+		int nodes = 2000000;
+		if(args.length > 0){
+			props = Integer.parseInt(args[0]);
+		}
+		if(args.length > 1){
+			ranges = Integer.parseInt(args[1]);
+		}
+		if(args.length > 2){
+			nodes = Integer.parseInt(args[2]);
+		}
+		System.out.printf("Building experiment: %d properties, %d ranges\n",
+				props, ranges);
+		EditorTester bl = new NodeEditor();
+		PersistenceBenchmark.buildExperiment(bl, props, ranges, 42);
+		PopulationSampler sampler = bl.population_newSampler();
+
+		int[] expected = null;
+		int cores = Runtime.getRuntime().availableProcessors();
+		for(int threads = 1; threads <= cores; threads *= 2){
+			//Warm up
+			sampler.sample(7, nodes / 10, threads);
+			long t = System.nanoTime();
+			int[] population = sampler.sample(7, nodes, threads);
+			t = System.nanoTime() - t;
+			System.out.printf("%2d threads: %8.1f ms, %6.2f million nodes/s\n",
+					threads, t / 1e6, nodes / (t / 1e3));
+			if(expected == null){
+				expected = population;
+			}
+			else if(!Arrays.equals(expected, population)){
+				System.out.println("The nodes changed with the thread count!");
+			}
+		}
+
+		int pid = bl.nodeProp_getPropertyIDs().get(0);
+		Map<Integer, Float> dist = bl.nodeProp_getDefaultDistribution(pid);
+		float total = 0;
+		for(float p : dist.values()){
+			total += p;
+		}
+		int[] counts = new int[bl.nodeProp_getRangeItemIDs(pid).size()];
+		int width = sampler.columnCount();
+		for(int i = 0; i < nodes; i++){
+			counts[expected[i * width]]++;
+		}
+		double worst = 0;
+		for(int rid : dist.keySet()){
+			worst = Math.max(worst, Math.abs(
+					(double) counts[rid] / nodes - dist.get(rid) / total));
+		}
+		System.out.printf("Largest frequency error in '%s': %.5f\n",
+				sampler.getColumnName(0), worst);
+	}
+}
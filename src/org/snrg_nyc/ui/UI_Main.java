@@ -157,6 +157,10 @@ public class UI_Main extends Application{
 		loadDialog.setTitle("Load Experiment");
 		loadDialog.setHeaderText("Select an experiment to load");
 		loadDialog.setGraphic(null);
+		loadDialog.selectedItemProperty().addListener((obs, old, name)->{
+			loadDialog.setContentText(
+					name == null ? null : model.getExperimentSummary(name));
+		});
 		
 		load.setOnAction(event->{
 			loadDialog.getItems().setAll(model.getExperimentNames());
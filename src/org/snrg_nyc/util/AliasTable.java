@@ -0,0 +1,210 @@
+package org.snrg_nyc.util;
+
+import java.nio.FloatBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Draws outcomes from discrete distributions in constant time, using
+ * Vose's alias method.
+ * <p>
+ * Each distribution is given as a weight for each outcome, which do not
+ * have to add up to one.  Outcomes with a weight that is zero, negative or
+ * NaN are never drawn.  A distribution with no other outcomes is kept, so
+ * the others keep their indices, but cannot be drawn from.  A table can
+ * hold several distributions over the same outcomes, such as the
+ * conditional distributions of one property, packed into the same arrays
+ * so that choosing one takes no extra lookups.  A table can be shared
+ * between threads, as long as each thread uses its own random number
+ * generator.
+ * @author Devin Hastings
+ */
+public class AliasTable {
+	/**
+	 * The chance of keeping each column's own outcome, out of
+	 * 2<sup>24</sup>
+	 */
+	private final int[] keep;
+	/** The outcome each column gives otherwise */
+	private final int[] alias;
+	/** The outcome of each column */
+	private final int[] outcomes;
+	/**
+	 * The first column of each distribution, followed by the number of
+	 * columns
+	 */
+	private final int[] starts;
+
+	private static final int coinSides = 1 << 24;
+
+	private AliasTable(int columns, int distributions){
+		keep = new int[columns];
+		alias = new int[columns];
+		outcomes = new int[columns];
+		starts = new int[distributions * 2];
+	}
+
+	/**
+	 * Build a table from a weight for each outcome
+	 * @param weights The weights, indexed by outcome
+	 * @return The table, with a single distribution
+	 */
+	public static AliasTable
+	of(FloatBuffer weights){
+		return of(Collections.singletonList(weights));
+	}
+
+	/**
+	 * Build a table holding several distributions
+	 * @param distributions The weights of each distribution, indexed by
+	 * outcome
+	 * @return The table, where each distribution is known by its index in
+	 * the list
+	 */
+	public static AliasTable
+	of(List<FloatBuffer> distributions){
+		int columns = 0;
+		for(FloatBuffer weights : distributions){
+			columns += usableCount(weights);
+		}
+		AliasTable table = new AliasTable(columns, distributions.size());
+		int start = 0;
+		for(int d = 0; d < distributions.size(); d++){
+			start += table.fill(d, distributions.get(d), start);
+		}
+		return table;
+	}
+
+	private static int
+	usableCount(FloatBuffer weights){
+		int n = 0;
+		for(int i = 0; i < weights.limit(); i++){
+			if(usable(weights.get(i))){
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Write the columns of one distribution
+	 * @param d The index of the distribution
+	 * @param weights The weights of the distribution
+	 * @param start The first column to write
+	 * @return The number of columns written
+	 */
+	private int
+	fill(int d, FloatBuffer weights, int start){
+		int n = usableCount(weights);
+		starts[d * 2] = start;
+		starts[d * 2 + 1] = n;
+		double total = 0;
+		for(int i = 0; i < weights.limit(); i++){
+			if(usable(weights.get(i))){
+				total += weights.get(i);
+			}
+		}
+		double[] scaled = new double[n];
+		for(int i = 0, c = 0; i < weights.limit(); i++){
+			if(usable(weights.get(i))){
+				outcomes[start + c] = i;
+				scaled[c] = weights.get(i) * n / total;
+				c++;
+			}
+		}
+		//Pair each column below the average with one above it
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int s = 0, l = 0;
+		for(int c = 0; c < n; c++){
+			if(scaled[c] < 1){
+				small[s++] = c;
+			}
+			else {
+				large[l++] = c;
+			}
+		}
+		while(s > 0 && l > 0){
+			int less = small[--s];
+			int more = large[--l];
+			keep[start + less] = (int) (scaled[less] * coinSides);
+			alias[start + less] = outcomes[start + more];
+			scaled[more] = (scaled[more] + scaled[less]) - 1;
+			if(scaled[more] < 1){
+				small[s++] = more;
+			}
+			else {
+				large[l++] = more;
+			}
+		}
+		//Whatever is left is 1, give or take rounding
+		while(l > 0){
+			keep[start + large[--l]] = coinSides;
+		}
+		while(s > 0){
+			keep[start + small[--s]] = coinSides;
+		}
+		return n;
+	}
+
+	private static boolean
+	usable(float weight){
+		return weight > 0 && !Float.isInfinite(weight);
+	}
+
+	/**
+	 * Draw an outcome from the first distribution
+	 * @param random The random number generator
+	 * @return The outcome
+	 * @see #sample(int, SplittableRandom)
+	 */
+	public int
+	sample(SplittableRandom random){
+		return sample(0, random);
+	}
+
+	/**
+	 * Draw an outcome, using a single number from the generator
+	 * @param distribution The index of the distribution to draw from
+	 * @param random The random number generator
+	 * @return The outcome, which is an index into the weights the
+	 * distribution was built from
+	 * @throws IllegalStateException Thrown if the distribution has no
+	 * outcome with a positive, finite weight
+	 */
+	public int
+	sample(int distribution, SplittableRandom random){
+		if(starts[distribution * 2 + 1] == 0){
+			throw new IllegalStateException("Distribution "+distribution
+					+" has no outcomes with a positive weight");
+		}
+		long bits = random.nextLong();
+		//The high half picks the column, and the low 24 bits the coin
+		int c = starts[distribution * 2] + (int)
+				(((bits >>> 32) * starts[distribution * 2 + 1]) >>> 32);
+		int coin = (int) bits & (coinSides - 1);
+		//All ones if the column keeps its own outcome.  This is worked out
+		//without a branch, since the coin is too random to predict.
+		int own = (coin - keep[c]) >> 31;
+		return (outcomes[c] & own) | (alias[c] & ~own);
+	}
+
+	/**
+	 * @return The number of distributions in the table
+	 */
+	public int
+	distributionCount(){
+		return starts.length / 2;
+	}
+
+	/**
+	 * @param distribution The index of a distribution
+	 * @return The number of outcomes that can be drawn from it, which is 0
+	 * if it cannot be drawn from
+	 */
+	public int
+	size(int distribution){
+		return starts[distribution * 2 + 1];
+	}
+}
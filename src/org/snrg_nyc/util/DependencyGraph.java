@@ -0,0 +1,307 @@
+package org.snrg_nyc.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/**
+ * A directed acyclic graph that keeps a topological order of its vertices
+ * as edges are added, using the dynamic ordering of Pearce and Kelly.
+ * <p>
+ * An edge from <code>a</code> to <code>b</code> means <code>b</code>
+ * depends on <code>a</code>, so <code>a</code> comes first in the order.
+ * When an edge goes against the current order, only the vertices between
+ * its two ends are searched and reordered, so adding an edge usually takes
+ * much less than the size of the graph, and an edge that would make a
+ * cycle is found by the same search.
+ * <p>
+ * Each vertex also keeps its level: 0 if nothing points to it, or one
+ * more than the highest level of the vertices that do.  This is the lowest
+ * dependency level the vertex could be given.
+ * <p>
+ * Vertices are numbered from 0 in the order they are added, and cannot be
+ * removed.
+ * @author Devin Hastings
+ */
+public class DependencyGraph {
+	private int size = 0;
+	/** The position of each vertex in the order */
+	private int[] position = new int[8];
+	/** The vertex at each position of the order */
+	private int[] order = new int[8];
+	private int[] level = new int[8];
+	private int[][] out = new int[8][];
+	private int[] outCount = new int[8];
+	private int[][] in = new int[8][];
+	private int[] inCount = new int[8];
+
+	/** Marks and stacks for the searches, kept between edges */
+	private final BitSet visited = new BitSet();
+	private int[] stack = new int[8];
+	private int[] forward = new int[8];
+	private int[] backward = new int[8];
+
+	/**
+	 * Add a vertex with no edges, at the end of the order
+	 * @return The new vertex
+	 */
+	public int
+	addVertex(){
+		if(size == position.length){
+			int n = size * 2;
+			position = Arrays.copyOf(position, n);
+			order = Arrays.copyOf(order, n);
+			level = Arrays.copyOf(level, n);
+			out = Arrays.copyOf(out, n);
+			outCount = Arrays.copyOf(outCount, n);
+			in = Arrays.copyOf(in, n);
+			inCount = Arrays.copyOf(inCount, n);
+		}
+		int v = size++;
+		position[v] = v;
+		order[v] = v;
+		return v;
+	}
+
+	/**
+	 * Add an edge, so that <code>to</code> depends on <code>from</code>.
+	 * Adding an edge that is already there does nothing.
+	 * @param from The vertex depended on
+	 * @param to The dependent vertex
+	 * @return False if the edge would make a cycle, in which case the graph
+	 * is not changed
+	 * @throws IndexOutOfBoundsException Thrown if either vertex was not added
+	 */
+	public boolean
+	addEdge(int from, int to){
+		checkVertex(from);
+		checkVertex(to);
+		if(from == to){
+			return false;
+		}
+		if(hasEdge(from, to)){
+			return true;
+		}
+		int lower = position[to];
+		int upper = position[from];
+		if(lower < upper){
+			//Search forward from the dependent vertex for the other one
+			int f = search(to, upper, true, forward);
+			if(f < 0){
+				visited.clear();
+				return false;
+			}
+			int b = search(from, lower, false, backward);
+			reorder(f, b);
+			visited.clear();
+		}
+		out[from] = push(out[from], outCount[from]++, to);
+		in[to] = push(in[to], inCount[to]++, from);
+		raiseLevel(to, level[from] + 1);
+		return true;
+	}
+
+	/**
+	 * Collect the vertices reachable from a vertex (forward) or that reach it
+	 * (backward), within the part of the order an edge affects
+	 * @param start The vertex to start from
+	 * @param bound The position no vertex found may pass
+	 * @param forwards If the search follows edges forward
+	 * @param found The array to collect the vertices in
+	 * @return The number of vertices found, or -1 if a forward search
+	 * reached the vertex at <code>bound</code>
+	 */
+	private int
+	search(int start, int bound, boolean forwards, int[] found){
+		int count = 0;
+		int top = 0;
+		stack[top++] = start;
+		visited.set(start);
+		while(top > 0){
+			int v = stack[--top];
+			if(count == found.length){
+				found = Arrays.copyOf(found, count * 2);
+			}
+			found[count++] = v;
+			int[] edges = forwards ? out[v] : in[v];
+			int n = forwards ? outCount[v] : inCount[v];
+			for(int i = 0; i < n; i++){
+				int w = edges[i];
+				if(forwards && position[w] == bound){
+					return -1;
+				}
+				boolean inside = forwards ? position[w] < bound
+				                          : position[w] > bound;
+				if(inside && !visited.get(w)){
+					visited.set(w);
+					if(top == stack.length){
+						stack = Arrays.copyOf(stack, top * 2);
+					}
+					stack[top++] = w;
+				}
+			}
+		}
+		if(forwards){
+			forward = found;
+		}
+		else {
+			backward = found;
+		}
+		return count;
+	}
+
+	/**
+	 * Move the vertices found by the backward search ahead of the ones
+	 * found by the forward search, reusing the positions they had between
+	 * them
+	 */
+	private void
+	reorder(int f, int b){
+		sortByPosition(forward, f);
+		sortByPosition(backward, b);
+		int[] slots = new int[f + b];
+		for(int i = 0; i < b; i++){
+			slots[i] = position[backward[i]];
+		}
+		for(int i = 0; i < f; i++){
+			slots[b + i] = position[forward[i]];
+		}
+		Arrays.sort(slots);
+		for(int i = 0; i < b; i++){
+			place(backward[i], slots[i]);
+		}
+		for(int i = 0; i < f; i++){
+			place(forward[i], slots[b + i]);
+		}
+	}
+
+	private void
+	place(int v, int p){
+		position[v] = p;
+		order[p] = v;
+	}
+
+	private void
+	sortByPosition(int[] vertices, int n){
+		for(int i = 0; i < n; i++){
+			vertices[i] = position[vertices[i]];
+		}
+		Arrays.sort(vertices, 0, n);
+		for(int i = 0; i < n; i++){
+			vertices[i] = order[vertices[i]];
+		}
+	}
+
+	/**
+	 * Raise a vertex to at least a level, and the vertices that depend on
+	 * it after it
+	 */
+	private void
+	raiseLevel(int v, int min){
+		if(level[v] >= min){
+			return;
+		}
+		level[v] = min;
+		int top = 0;
+		stack[top++] = v;
+		while(top > 0){
+			int u = stack[--top];
+			for(int i = 0; i < outCount[u]; i++){
+				int w = out[u][i];
+				if(level[w] <= level[u]){
+					level[w] = level[u] + 1;
+					if(top == stack.length){
+						stack = Arrays.copyOf(stack, top * 2);
+					}
+					stack[top++] = w;
+				}
+			}
+		}
+	}
+
+	private static int[]
+	push(int[] edges, int n, int v){
+		if(edges == null){
+			edges = new int[2];
+		}
+		else if(n == edges.length){
+			edges = Arrays.copyOf(edges, n * 2);
+		}
+		edges[n] = v;
+		return edges;
+	}
+
+	private void
+	checkVertex(int v){
+		if(v < 0 || v >= size){
+			throw new IndexOutOfBoundsException(
+					"Vertex "+v+", with "+size+" vertices");
+		}
+	}
+
+	/**
+	 * @param from A vertex
+	 * @param to Another vertex
+	 * @return If there is an edge between them, in that direction
+	 */
+	public boolean
+	hasEdge(int from, int to){
+		checkVertex(from);
+		checkVertex(to);
+		for(int i = 0; i < outCount[from]; i++){
+			if(out[from][i] == to){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return The number of vertices
+	 */
+	public int
+	size(){
+		return size;
+	}
+
+	/**
+	 * @param v A vertex
+	 * @return The level of the vertex: 0 if it depends on nothing, or one
+	 * more than the highest level it depends on
+	 */
+	public int
+	level(int v){
+		checkVertex(v);
+		return level[v];
+	}
+
+	/**
+	 * @param v A vertex
+	 * @return The position of the vertex in the order
+	 */
+	public int
+	position(int v){
+		checkVertex(v);
+		return position[v];
+	}
+
+	/**
+	 * Visit every vertex in the order, so each one comes after all the
+	 * vertices it depends on
+	 * @param action The action to run on each vertex
+	 */
+	public void
+	forEachInOrder(IntConsumer action){
+		for(int p = 0; p < size; p++){
+			action.accept(order[p]);
+		}
+	}
+
+	/**
+	 * @return A copy of the order of the vertices
+	 */
+	public int[]
+	order(){
+		return Arrays.copyOf(order, size);
+	}
+}
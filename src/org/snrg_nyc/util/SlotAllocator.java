@@ -0,0 +1,174 @@
+package org.snrg_nyc.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Hands out the IDs of a list whose removed items are set to null, so the
+ * IDs of the other items do not change.  A freed ID is kept on a free list
+ * and given out again before the list grows, and the live IDs are kept in a
+ * {@link BitSet}, so allocating and freeing take constant time and the live
+ * IDs can be visited without building a list.
+ * <p>
+ * The allocator does not hold the list itself: the owner stores each item at
+ * the ID it was given, usually through {@link #store(List, Object)}.
+ * @author Devin Hastings
+ */
+public class SlotAllocator {
+	private final BitSet live = new BitSet();
+	private int[] free = new int[4];
+	private int freeCount = 0;
+	private int bound = 0;
+
+	/**
+	 * Make an allocator for a list that may already have null slots, such
+	 * as one that was just loaded
+	 * @param slots The list, where null items are free
+	 * @return The allocator
+	 */
+	public static SlotAllocator
+	of(List<?> slots){
+		SlotAllocator sa = new SlotAllocator();
+		sa.bound = slots.size();
+		//Free the highest slots first, so the lowest ones are reused first
+		for(int id = slots.size() - 1; id >= 0; id--){
+			if(slots.get(id) == null){
+				sa.pushFree(id);
+			}
+			else {
+				sa.live.set(id);
+			}
+		}
+		return sa;
+	}
+
+	/**
+	 * @return A free ID, which is now live: the most recently freed one,
+	 * or the end of the list if none are free
+	 */
+	public int
+	allocate(){
+		int id = freeCount > 0 ? free[--freeCount] : bound++;
+		live.set(id);
+		return id;
+	}
+
+	/**
+	 * @return The ID {@link #allocate()} would give next, without
+	 * allocating it
+	 */
+	public int
+	next(){
+		return freeCount > 0 ? free[freeCount - 1] : bound;
+	}
+
+	/**
+	 * Allocate an ID and put an item at it
+	 * @param slots The list the IDs are for
+	 * @param item The item to store
+	 * @return The ID of the item
+	 */
+	public <T> int
+	store(List<T> slots, T item){
+		int id = allocate();
+		if(id == slots.size()){
+			slots.add(item);
+		}
+		else {
+			slots.set(id, item);
+		}
+		return id;
+	}
+
+	/**
+	 * Make an ID free to be allocated again.  This does nothing if the ID
+	 * is not live.
+	 * @param id The ID
+	 */
+	public void
+	free(int id){
+		if(isLive(id)){
+			live.clear(id);
+			pushFree(id);
+		}
+	}
+
+	private void
+	pushFree(int id){
+		if(freeCount == free.length){
+			int[] grown = new int[free.length * 2];
+			System.arraycopy(free, 0, grown, 0, freeCount);
+			free = grown;
+		}
+		free[freeCount++] = id;
+	}
+
+	/**
+	 * Free every ID, and start again from zero
+	 */
+	public void
+	clear(){
+		live.clear();
+		freeCount = 0;
+		bound = 0;
+	}
+
+	/**
+	 * @param id An ID
+	 * @return If the ID has been allocated and not freed
+	 */
+	public boolean
+	isLive(int id){
+		return id >= 0 && live.get(id);
+	}
+
+	/**
+	 * @return The number of live IDs
+	 */
+	public int
+	size(){
+		return live.cardinality();
+	}
+
+	/**
+	 * @return One more than the highest ID ever allocated, which is the
+	 * size of the list
+	 */
+	public int
+	bound(){
+		return bound;
+	}
+
+	/**
+	 * @param from The ID to start from
+	 * @return The lowest live ID that is at least <code>from</code>,
+	 * or -1 if there is none
+	 */
+	public int
+	nextLive(int from){
+		return live.nextSetBit(from);
+	}
+
+	/**
+	 * Visit each live ID in ascending order, without boxing them
+	 * @param action The action to run on each ID
+	 */
+	public void
+	forEach(IntConsumer action){
+		for(int id = live.nextSetBit(0); id >= 0; id = live.nextSetBit(id + 1)){
+			action.accept(id);
+		}
+	}
+
+	/**
+	 * @return A new list of the live IDs, in ascending order
+	 */
+	public List<Integer>
+	ids(){
+		List<Integer> ids = new ArrayList<>(size());
+		forEach(ids::add);
+		return ids;
+	}
+}